@@ -0,0 +1,7 @@
+// A product store that products can be added to, such as the columns a text
+// catalog is loaded into. Read-only stores, such as a snapshot, only implement
+// ProductStore.
+public interface AppendableProductStore extends ProductStore {
+    // Appends a product and returns its row
+    int add(String name, long price, String description, String imagePath, float rating, int reviewCount);
+}
@@ -0,0 +1,265 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+
+// Not thread-safe: the window uses its cart on the EDT, and CartStore locks each
+// session's cart while it is used. Lines are priced by the cart's Pricing; call
+// reprice when its promotions may have changed.
+public class Cart {
+    // One row in the cart: a product and how many of it
+    public static class Line {
+        private final Product product;
+        private int quantity;
+        
+        // Offer the line was last priced with and the resulting total in paise
+        private Pricing.Offer offer;
+        private long lineTotal;
+        
+        // Formatted line total and the total it was built for
+        private String formattedTotal;
+        private long formattedLineTotal;
+        
+        Line(Product product) {
+            this.product = product;
+        }
+        
+        public Product getProduct() {
+            return product;
+        }
+        
+        public int getQuantity() {
+            return quantity;
+        }
+        
+        // Price of one unit after discounts, but before any bundle, in paise
+        public long getUnitPrice() {
+            return offer.getPrice();
+        }
+        
+        public Pricing.Offer getOffer() {
+            return offer;
+        }
+        
+        // In paise, with bundles applied
+        public long getLineTotal() {
+            return lineTotal;
+        }
+        
+        public String getFormattedLineTotal() {
+            if (formattedTotal == null || formattedLineTotal != lineTotal) {
+                formattedTotal = Money.format(lineTotal);
+                formattedLineTotal = lineTotal;
+            }
+            return formattedTotal;
+        }
+    }
+    
+    // Notified after every change so views can update just the affected row
+    public interface Listener {
+        void lineAdded(Line line);
+        
+        void lineUpdated(Line line);
+        
+        void lineRemoved(Line line);
+        
+        void cartCleared();
+    }
+    
+    // Lines keyed by product ID, in the order they were first added. Products that
+    // are not in a catalog all have ID -1 and are keyed by themselves instead.
+    private final LinkedHashMap<Object, Line> lines = new LinkedHashMap<>();
+    private final ArrayList<Listener> listeners = new ArrayList<>();
+    
+    private int itemCount = 0;
+    private long total = 0; // paise
+    
+    private final Pricing pricing;
+    private int pricingVersion;
+    
+    // A cart at list prices
+    public Cart() {
+        this(Pricing.LIST_PRICES);
+    }
+    
+    public Cart(Pricing pricing) {
+        this.pricing = pricing;
+        this.pricingVersion = pricing.getVersion();
+    }
+    
+    public Pricing getPricing() {
+        return pricing;
+    }
+    
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+    
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+    
+    private static Object key(Product product) {
+        return product.getId() >= 0 ? Integer.valueOf(product.getId()) : product;
+    }
+    
+    // Adds one unit of the product
+    public void add(Product product) {
+        Line line = lines.get(key(product));
+        boolean added = line == null;
+        if (added) {
+            line = new Line(product);
+            lines.put(key(product), line);
+        }
+        
+        line.quantity++;
+        itemCount++;
+        updateLineTotal(line);
+        
+        for (Listener listener : listeners) {
+            if (added) {
+                listener.lineAdded(line);
+            } else {
+                listener.lineUpdated(line);
+            }
+        }
+    }
+    
+    // Removes one unit of the product; returns false if it was not in the cart
+    public boolean remove(Product product) {
+        Line line = lines.get(key(product));
+        if (line == null) {
+            return false;
+        }
+        
+        line.quantity--;
+        itemCount--;
+        updateLineTotal(line);
+        
+        boolean removed = line.quantity == 0;
+        if (removed) {
+            lines.remove(key(product));
+        }
+        
+        for (Listener listener : listeners) {
+            if (removed) {
+                listener.lineRemoved(line);
+            } else {
+                listener.lineUpdated(line);
+            }
+        }
+        return true;
+    }
+    
+    // Sets how many units of the product are in the cart; 0 removes its line
+    public void setQuantity(Product product, int quantity) {
+        if (quantity < 0) {
+            throw new IllegalArgumentException("Negative quantity: " + quantity);
+        }
+        Line line = lines.get(key(product));
+        int change = quantity - (line != null ? line.quantity : 0);
+        if (change == 0) {
+            return;
+        }
+        
+        boolean added = line == null;
+        if (added) {
+            line = new Line(product);
+            lines.put(key(product), line);
+        }
+        
+        line.quantity = quantity;
+        itemCount += change;
+        updateLineTotal(line);
+        
+        boolean removed = quantity == 0;
+        if (removed) {
+            lines.remove(key(product));
+        }
+        
+        for (Listener listener : listeners) {
+            if (added) {
+                listener.lineAdded(line);
+            } else if (removed) {
+                listener.lineRemoved(line);
+            } else {
+                listener.lineUpdated(line);
+            }
+        }
+    }
+    
+    // Prices the line for its quantity and moves the running total by the difference.
+    // The offer is only looked up once per line unless the prices change.
+    private void updateLineTotal(Line line) {
+        if (line.offer == null) {
+            line.offer = pricing.getOffer(line.product);
+        }
+        long lineTotal = line.offer.getTotal(line.quantity);
+        total = Money.add(Money.subtract(total, line.lineTotal), lineTotal);
+        line.lineTotal = lineTotal;
+    }
+    
+    // Prices every line again if the promotions changed since the cart was last
+    // priced; returns true if they did
+    public boolean reprice() {
+        int version = pricing.getVersion();
+        if (version == pricingVersion) {
+            return false;
+        }
+        pricingVersion = version;
+        
+        for (Line line : lines.values()) {
+            line.offer = null;
+            updateLineTotal(line);
+            for (Listener listener : listeners) {
+                listener.lineUpdated(line);
+            }
+        }
+        return true;
+    }
+    
+    // Adds every unit in the other cart
+    public void addAll(Cart other) {
+        for (Line line : other.lines.values()) {
+            Line existing = lines.get(key(line.product));
+            setQuantity(line.product, Math.addExact(existing != null ? existing.quantity : 0, line.quantity));
+        }
+    }
+    
+    public void clear() {
+        lines.clear();
+        itemCount = 0;
+        total = 0;
+        
+        for (Listener listener : listeners) {
+            listener.cartCleared();
+        }
+    }
+    
+    public Line getLine(Product product) {
+        return lines.get(key(product));
+    }
+    
+    public Collection<Line> getLines() {
+        return Collections.unmodifiableCollection(lines.values());
+    }
+    
+    public boolean isEmpty() {
+        return lines.isEmpty();
+    }
+    
+    // Number of distinct products
+    public int getLineCount() {
+        return lines.size();
+    }
+    
+    // Number of units across all lines
+    public int getItemCount() {
+        return itemCount;
+    }
+    
+    // In paise; kept exact without summing the lines again
+    public long getTotal() {
+        return total;
+    }
+}
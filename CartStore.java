@@ -0,0 +1,177 @@
+import java.security.SecureRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+// Carts of many concurrent shoppers, one per session. Looking up a session never
+// locks, and each cart has a lock of its own, so shoppers only wait for requests
+// of their own session; thousands of them adding the same hot product do not
+// contend at all. Sessions left idle for -Dtechtrove.cartIdleMinutes (30 by
+// default) are dropped by a background sweep, so memory stays bounded by the
+// number of recently active shoppers. close stops the sweep thread.
+public class CartStore implements AutoCloseable {
+    // Callback run with a session's cart while its lock is held
+    public interface Action<T> {
+        T apply(Cart cart);
+    }
+    
+    public static final class Session {
+        private final String id;
+        private final Cart cart;
+        
+        // System.nanoTime of the last use; expired is only changed with the session locked
+        private volatile long lastUsed = System.nanoTime();
+        private boolean expired = false;
+        
+        private Session(String id, Pricing pricing) {
+            this.id = id;
+            this.cart = new Cart(pricing);
+        }
+        
+        public String getId() {
+            return id;
+        }
+    }
+    
+    private final ConcurrentHashMap<String, Session> sessions = new ConcurrentHashMap<>();
+    private final SecureRandom random = new SecureRandom();
+    private final long idleNanos;
+    private final ScheduledExecutorService sweeper;
+    private final Pricing pricing;
+    
+    public CartStore(Pricing pricing) {
+        this(pricing, TimeUnit.MINUTES.toMillis(Long.getLong("techtrove.cartIdleMinutes", 30)));
+    }
+    
+    // Carts are priced with pricing
+    public CartStore(Pricing pricing, long idleMillis) {
+        this.pricing = pricing;
+        this.idleNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, idleMillis));
+        
+        // Sweeps a few times per timeout, so a cart outlives it by a quarter at most
+        sweeper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable task) {
+                Thread thread = new Thread(task, "cart-expiry");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        long period = Math.max(1, idleMillis / 4);
+        sweeper.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                expireIdle();
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+    
+    // The session with this ID, or null if there is none or it has expired
+    public Session get(String id) {
+        return id != null ? sessions.get(id) : null;
+    }
+    
+    // A new session with an empty cart and a random, unguessable ID
+    public Session create() {
+        byte[] bytes = new byte[16];
+        random.nextBytes(bytes);
+        StringBuilder id = new StringBuilder(32);
+        for (byte b : bytes) {
+            id.append(Character.forDigit((b >> 4) & 15, 16)).append(Character.forDigit(b & 15, 16));
+        }
+        
+        Session session = new Session(id.toString(), pricing);
+        sessions.put(session.id, session);
+        return session;
+    }
+    
+    // Runs the action with the session's cart locked. A session that expired after
+    // it was looked up is brought back, so no update is lost.
+    public <T> T withCart(Session session, Action<T> action) {
+        synchronized (session) {
+            if (session.expired) {
+                session.expired = false;
+                sessions.put(session.id, session);
+            }
+            session.lastUsed = System.nanoTime();
+            return action.apply(session.cart);
+        }
+    }
+    
+    // Units of the product in the session's cart
+    public int getQuantity(Session session, final Product product) {
+        return withCart(session, new Action<Integer>() {
+            @Override
+            public Integer apply(Cart cart) {
+                Cart.Line line = cart.getLine(product);
+                return line != null ? line.getQuantity() : 0;
+            }
+        });
+    }
+    
+    // Adds units of the product; returns its new quantity
+    public int add(Session session, final Product product, final int quantity) {
+        return withCart(session, new Action<Integer>() {
+            @Override
+            public Integer apply(Cart cart) {
+                Cart.Line line = cart.getLine(product);
+                int updated = Math.addExact(line != null ? line.getQuantity() : 0, quantity);
+                cart.setQuantity(product, updated);
+                return updated;
+            }
+        });
+    }
+    
+    // Removes up to quantity units of the product; returns how many are left
+    public int remove(Session session, final Product product, final int quantity) {
+        return withCart(session, new Action<Integer>() {
+            @Override
+            public Integer apply(Cart cart) {
+                Cart.Line line = cart.getLine(product);
+                int left = line != null ? Math.max(0, line.getQuantity() - quantity) : 0;
+                cart.setQuantity(product, left);
+                return left;
+            }
+        });
+    }
+    
+    // Sets the quantity of the product, removing it from the cart at 0
+    public void setQuantity(Session session, final Product product, final int quantity) {
+        withCart(session, new Action<Void>() {
+            @Override
+            public Void apply(Cart cart) {
+                cart.setQuantity(product, quantity);
+                return null;
+            }
+        });
+    }
+    
+    public int size() {
+        return sessions.size();
+    }
+    
+    // Stops the background sweep. The carts can still be used, but idle ones are
+    // only dropped by calling expireIdle.
+    @Override
+    public void close() {
+        sweeper.shutdownNow();
+    }
+    
+    // Drops every session that has been idle for the whole timeout
+    public void expireIdle() {
+        long now = System.nanoTime();
+        for (Session session : sessions.values()) {
+            if (now - session.lastUsed < idleNanos) {
+                continue;
+            }
+            synchronized (session) {
+                if (now - session.lastUsed >= idleNanos) {
+                    session.expired = true;
+                    sessions.remove(session.id, session);
+                }
+            }
+        }
+    }
+}
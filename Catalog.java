@@ -0,0 +1,235 @@
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.RandomAccess;
+
+public class Catalog {
+    // Product fields live in columns; Product objects are created on demand
+    private final ProductStore store;
+    
+    // The same store when products can be added to it, null for a read-only one
+    private final AppendableProductStore appendableStore;
+    private final CategoryIndex categoryIndex;
+    private final FeatureSpecs featureSpecs;
+    private final SearchIndex searchIndex = new SearchIndex();
+    private final FacetEngine facets = new FacetEngine(this);
+    
+    // Category results are cached until the catalog changes
+    private final HashMap<String, List<Product>> categoryCache = new HashMap<>();
+    
+    // Feature spec ID + 1 per product ID, 0 until the product's name has been classified.
+    // Products read on other threads may be classified twice, which gives the same spec.
+    private volatile int[] specs;
+    
+    public Catalog(CategoryIndex categoryIndex, FeatureSpecs featureSpecs) {
+        this(categoryIndex, featureSpecs, new ColumnarProductStore(1024));
+    }
+    
+    // Products already in the store keep their rows as IDs but are not in any category
+    // or searchable until setCategoryMasks and indexForSearch are called
+    public Catalog(CategoryIndex categoryIndex, FeatureSpecs featureSpecs, AppendableProductStore store) {
+        this(categoryIndex, featureSpecs, store, store);
+    }
+    
+    // A catalog of a read-only store, such as a snapshot; nothing can be added to it
+    public Catalog(CategoryIndex categoryIndex, FeatureSpecs featureSpecs, ProductStore store) {
+        this(categoryIndex, featureSpecs, store, null);
+    }
+    
+    private Catalog(CategoryIndex categoryIndex, FeatureSpecs featureSpecs, ProductStore store,
+                    AppendableProductStore appendableStore) {
+        this.categoryIndex = categoryIndex;
+        this.featureSpecs = featureSpecs;
+        this.store = store;
+        this.appendableStore = appendableStore;
+        this.specs = new int[store.size()];
+    }
+    
+    // Copies the product into the store
+    public void add(Product product) {
+        add(product.getName(), product.getPrice(), product.getDescription(),
+            product.getImagePath(), (float) product.getRating(), product.getReviewCount());
+    }
+    
+    // Appends a product to the store and returns its ID. Its features are indexed for
+    // search along with the name and description.
+    public int add(String name, long price, String description, String imagePath, float rating, int reviewCount) {
+        int id = appendableStore().add(name, price, description, imagePath, rating, reviewCount);
+        if (id >= specs.length) {
+            specs = Arrays.copyOf(specs, Math.max(id + 1, specs.length + (specs.length >> 1) + 16));
+        }
+        specs[id] = featureSpecs.classify(name) + 1;
+        
+        Product added = get(id);
+        categoryIndex.add(added);
+        searchIndex.add(added, added.getFeatures());
+        categoryCache.clear();
+        return id;
+    }
+    
+    // Appends a product whose category mask and feature spec were computed earlier,
+    // off the EDT, by CategoryIndex.getMask and FeatureSpecs.classify. It is not
+    // searchable until indexForSearch is called for it, which may be done on another
+    // thread once this returns.
+    public int append(String name, long price, String description, String imagePath, float rating, int reviewCount,
+                      int categoryMask, int spec) {
+        int id = appendableStore().add(name, price, description, imagePath, rating, reviewCount);
+        if (id >= specs.length) {
+            specs = Arrays.copyOf(specs, Math.max(id + 1, specs.length + (specs.length >> 1) + 16));
+        }
+        specs[id] = spec + 1;
+        
+        // Rules beyond what a mask holds are matched here instead
+        if (categoryIndex.supportsMasks()) {
+            categoryIndex.add(id, categoryMask);
+        } else {
+            categoryIndex.add(get(id));
+        }
+        categoryCache.clear();
+        return id;
+    }
+    
+    private AppendableProductStore appendableStore() {
+        if (appendableStore == null) {
+            throw new UnsupportedOperationException("Products cannot be added to a catalog of a read-only store");
+        }
+        return appendableStore;
+    }
+    
+    // Category membership computed earlier by CategoryIndex.getMask
+    public void setCategoryMask(int id, int categoryMask) {
+        categoryIndex.add(id, categoryMask);
+        categoryCache.clear();
+    }
+    
+    // Category membership of products 0 to categoryMasks.length - 1 at once, such as
+    // the masks read from a snapshot
+    public void setCategoryMasks(int[] categoryMasks) {
+        categoryIndex.addAll(categoryMasks);
+        categoryCache.clear();
+    }
+    
+    // Safe to call from a background thread; the search index does its own locking
+    public void indexForSearch(Product product) {
+        searchIndex.add(product, product.getFeatures());
+    }
+    
+    // Like indexForSearch(Product), from the fields passed to append, so the store is
+    // not read while the EDT may be appending to it
+    public void indexForSearch(int id, String name, String description, float rating, int reviewCount, int spec) {
+        searchIndex.add(id, name, description, featureSpecs.getFeatures(spec), rating, reviewCount);
+    }
+    
+    public Product get(int id) {
+        if (id < 0 || id >= store.size()) {
+            throw new IndexOutOfBoundsException("Product " + id + " of " + store.size());
+        }
+        return new Product(store, id, id, featureSpecs.getFeatures(getSpec(id)));
+    }
+    
+    private int getSpec(int id) {
+        int[] ids = specs;
+        if (id < ids.length && ids[id] != 0) {
+            return ids[id] - 1;
+        }
+        
+        int spec = featureSpecs.classify(store.getName(id));
+        if (id < ids.length) {
+            ids[id] = spec + 1;
+        }
+        return spec;
+    }
+    
+    public FeatureSpecs getFeatureSpecs() {
+        return featureSpecs;
+    }
+    
+    public int size() {
+        return store.size();
+    }
+    
+    public ProductStore getStore() {
+        return store;
+    }
+    
+    // Every product in catalog order; the list grows as products are added
+    public List<Product> getProducts() {
+        return new ProductList(null, -1);
+    }
+    
+    public CategoryIndex getCategoryIndex() {
+        return categoryIndex;
+    }
+    
+    public SearchIndex getSearchIndex() {
+        return searchIndex;
+    }
+    
+    // Sorting and facet filtering; queries must start on the same thread that adds products
+    public FacetEngine getFacets() {
+        return facets;
+    }
+    
+    // Products for the given IDs, in the same order
+    public List<Product> getProducts(int[] ids) {
+        return new ProductList(ids, ids.length);
+    }
+    
+    // The first count IDs; later entries of ids may be filled in afterwards
+    public List<Product> getProducts(int[] ids, int count) {
+        return new ProductList(ids, count);
+    }
+    
+    // Products in the category in catalog order. The returned list must not be modified.
+    public List<Product> getProductsInCategory(String category) {
+        if (category.equals(CategoryIndex.ALL_CATEGORIES)) {
+            return getProducts();
+        }
+        
+        List<Product> result = categoryCache.get(category);
+        if (result != null) {
+            return result;
+        }
+        
+        int[] ids = new int[0];
+        BitSet members = categoryIndex.getProductIds(category);
+        if (members != null) {
+            ids = new int[members.cardinality()];
+            int count = 0;
+            for (int id = members.nextSetBit(0); id >= 0; id = members.nextSetBit(id + 1)) {
+                ids[count++] = id;
+            }
+        }
+        
+        result = new ProductList(ids, ids.length);
+        categoryCache.put(category, result);
+        return result;
+    }
+    
+    // Read-only list of product IDs that creates the Product views as they are read
+    private class ProductList extends AbstractList<Product> implements RandomAccess {
+        // Null for the whole catalog
+        private final int[] ids;
+        private final int size;
+        
+        ProductList(int[] ids, int size) {
+            this.ids = ids;
+            this.size = size;
+        }
+        
+        @Override
+        public Product get(int index) {
+            if (index < 0 || index >= size()) {
+                throw new IndexOutOfBoundsException("Index " + index + " of " + size());
+            }
+            return Catalog.this.get(ids != null ? ids[index] : index);
+        }
+        
+        @Override
+        public int size() {
+            return ids != null ? size : store.size();
+        }
+    }
+}
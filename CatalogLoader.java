@@ -0,0 +1,430 @@
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+// Reads products one at a time from a CSV or JSON-lines file, so the whole file
+// is never held in memory. Files ending in .jsonl or .json are read as JSON lines,
+// anything else as CSV with a header row. Both use the fields
+// name, price, description, image, rating and reviews; name and price are required.
+// Rows with a price below zero, a rating outside 0 to 5, a negative review count
+// or a number that is NaN or infinite are skipped like malformed ones.
+//
+// The loader is a cursor: next moves to the next product and the getters return
+// its fields, which the caller appends straight into its own store, so no Product
+// is created for a row.
+public class CatalogLoader implements Closeable {
+    // Fields of one product, for handing a row to another thread
+    public static final class Row {
+        final String name;
+        final long price;
+        final String description;
+        final String imagePath;
+        final float rating;
+        final int reviewCount;
+        
+        Row(String name, long price, String description, String imagePath, float rating, int reviewCount) {
+            this.name = name;
+            this.price = price;
+            this.description = description;
+            this.imagePath = imagePath;
+            this.rating = rating;
+            this.reviewCount = reviewCount;
+        }
+    }
+    
+    private static final String[] FIELDS = { "name", "price", "description", "image", "rating", "reviews" };
+    private static final int NAME = 0;
+    private static final int PRICE = 1;
+    private static final int DESCRIPTION = 2;
+    private static final int IMAGE = 3;
+    private static final int RATING = 4;
+    private static final int REVIEWS = 5;
+    
+    // Far below where a price in paise, or a cart of it, would overflow a long
+    private static final double MAX_PRICE_RUPEES = 1e12;
+    private static final float MAX_RATING = 5f;
+    
+    private final String path;
+    private final BufferedReader reader;
+    private final boolean jsonLines;
+    
+    // CSV column of each field, or -1 if the file has no such column
+    private final int[] columns = new int[FIELDS.length];
+    
+    // Reused for every row
+    private final String[] values = new String[FIELDS.length];
+    private final ArrayList<String> csvFields = new ArrayList<>();
+    private final StringBuilder token = new StringBuilder();
+    
+    // The current product
+    private String name;
+    private long price;
+    private String description;
+    private String imagePath;
+    private float rating;
+    private int reviewCount;
+    
+    private int lineNumber = 0;
+    private int productCount = 0;
+    private int skippedCount = 0;
+    private long charCount = 0;
+    private final long startTime;
+    private long endTime = -1;
+    
+    public CatalogLoader(String path) throws IOException {
+        this.path = path;
+        this.startTime = System.nanoTime();
+        this.reader = new BufferedReader(new InputStreamReader(new FileInputStream(path), StandardCharsets.UTF_8), 1 << 16);
+        
+        String lowerPath = path.toLowerCase();
+        this.jsonLines = lowerPath.endsWith(".jsonl") || lowerPath.endsWith(".json");
+        
+        if (!jsonLines) {
+            readHeader();
+        }
+    }
+    
+    // Moves to the next product; returns false at the end of the file. Invalid rows
+    // are reported and skipped.
+    public boolean next() throws IOException {
+        while (true) {
+            String line = readLine();
+            if (line == null) {
+                if (endTime < 0) {
+                    endTime = System.nanoTime();
+                }
+                return false;
+            }
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            
+            int rowLine = lineNumber;
+            boolean valid;
+            try {
+                valid = (jsonLines ? parseJson(line) : parseCsv(line)) && readFields();
+            } catch (IllegalArgumentException e) {
+                valid = false;
+            }
+            
+            if (!valid) {
+                skippedCount++;
+                System.err.println("Ignoring invalid product at " + path + ":" + rowLine);
+                continue;
+            }
+            
+            productCount++;
+            return true;
+        }
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    // In paise
+    public long getPrice() {
+        return price;
+    }
+    
+    public String getDescription() {
+        return description;
+    }
+    
+    // Null when the product has no image
+    public String getImagePath() {
+        return imagePath;
+    }
+    
+    public float getRating() {
+        return rating;
+    }
+    
+    public int getReviewCount() {
+        return reviewCount;
+    }
+    
+    // Appends the current product to the store and returns its row
+    public int addTo(AppendableProductStore store) {
+        return store.add(name, price, description, imagePath, rating, reviewCount);
+    }
+    
+    public Row getRow() {
+        return new Row(name, price, description, imagePath, rating, reviewCount);
+    }
+    
+    @Override
+    public void close() throws IOException {
+        if (endTime < 0) {
+            endTime = System.nanoTime();
+        }
+        reader.close();
+    }
+    
+    public int getProductCount() {
+        return productCount;
+    }
+    
+    public int getSkippedCount() {
+        return skippedCount;
+    }
+    
+    // Time since the loader was opened, up to the end of the file once it is reached
+    public long getElapsedMillis() {
+        long end = endTime < 0 ? System.nanoTime() : endTime;
+        return (end - startTime) / 1000000;
+    }
+    
+    public String getThroughputSummary() {
+        long millis = Math.max(1, getElapsedMillis());
+        return String.format("Loaded %d products (%d KB) from %s in %d ms: %d products/s, %.1f MB/s%s",
+            productCount, charCount / 1024, path, millis,
+            productCount * 1000L / millis, charCount / 1048576.0 * 1000 / millis,
+            skippedCount > 0 ? ", " + skippedCount + " invalid rows skipped" : "");
+    }
+    
+    private String readLine() throws IOException {
+        String line = reader.readLine();
+        if (line != null) {
+            lineNumber++;
+            charCount += line.length() + 1;
+        }
+        return line;
+    }
+    
+    private void readHeader() throws IOException {
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = -1;
+        }
+        
+        String header = readLine();
+        if (header == null || !parseCsv(header)) {
+            throw new IOException("Missing CSV header in " + path);
+        }
+        
+        for (int column = 0; column < csvFields.size(); column++) {
+            String fieldName = csvFields.get(column).trim().toLowerCase();
+            for (int field = 0; field < FIELDS.length; field++) {
+                if (FIELDS[field].equals(fieldName)) {
+                    columns[field] = column;
+                }
+            }
+        }
+        
+        if (columns[NAME] < 0 || columns[PRICE] < 0) {
+            throw new IOException("CSV header in " + path + " needs name and price columns");
+        }
+    }
+    
+    // Converts the parsed values into the current product's fields; false if a
+    // required one is missing or a number is out of range. The comparisons are
+    // written so that NaN fails them too.
+    private boolean readFields() {
+        if (values[NAME] == null || values[NAME].isEmpty() || values[PRICE] == null) {
+            return false;
+        }
+        
+        double rupees = Double.parseDouble(values[PRICE]);
+        float stars = values[RATING] != null && !values[RATING].isEmpty() ? Float.parseFloat(values[RATING]) : 0f;
+        int reviews = values[REVIEWS] != null && !values[REVIEWS].isEmpty() ? Integer.parseInt(values[REVIEWS]) : 0;
+        if (!(rupees >= 0 && rupees <= MAX_PRICE_RUPEES) || !(stars >= 0 && stars <= MAX_RATING) || reviews < 0) {
+            return false;
+        }
+        
+        name = values[NAME];
+        price = Money.fromRupees(rupees);
+        description = values[DESCRIPTION] != null ? values[DESCRIPTION] : "";
+        imagePath = values[IMAGE] != null && !values[IMAGE].isEmpty() ? values[IMAGE] : null;
+        rating = stars;
+        reviewCount = reviews;
+        return true;
+    }
+    
+    // Splits a CSV record into csvFields and copies the known columns into values.
+    // Quoted fields may contain commas, doubled quotes and line breaks.
+    private boolean parseCsv(String line) throws IOException {
+        csvFields.clear();
+        token.setLength(0);
+        
+        boolean quoted = false;
+        int i = 0;
+        while (true) {
+            if (i == line.length()) {
+                if (!quoted) {
+                    break;
+                }
+                
+                // A line break inside a quoted field; the record continues on the next line
+                line = readLine();
+                if (line == null) {
+                    return false;
+                }
+                token.append('\n');
+                i = 0;
+                continue;
+            }
+            
+            char c = line.charAt(i++);
+            if (quoted) {
+                if (c == '"') {
+                    if (i < line.length() && line.charAt(i) == '"') {
+                        token.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    token.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                csvFields.add(token.toString());
+                token.setLength(0);
+            } else {
+                token.append(c);
+            }
+        }
+        csvFields.add(token.toString());
+        
+        for (int field = 0; field < FIELDS.length; field++) {
+            int column = columns[field];
+            values[field] = column >= 0 && column < csvFields.size() ? csvFields.get(column).trim() : null;
+        }
+        return true;
+    }
+    
+    // Reads one flat JSON object such as {"name": "...", "price": 12999.99, ...}.
+    // Nested objects and arrays are not supported.
+    private boolean parseJson(String line) {
+        for (int field = 0; field < FIELDS.length; field++) {
+            values[field] = null;
+        }
+        
+        int[] position = { skipSpaces(line, 0) };
+        if (!expect(line, position, '{')) {
+            return false;
+        }
+        
+        position[0] = skipSpaces(line, position[0]);
+        if (position[0] < line.length() && line.charAt(position[0]) == '}') {
+            return true;
+        }
+        
+        while (true) {
+            String key = readJsonString(line, position);
+            if (key == null || !expect(line, position, ':')) {
+                return false;
+            }
+            
+            String value = readJsonValue(line, position);
+            if (value == null) {
+                return false;
+            }
+            
+            for (int field = 0; field < FIELDS.length; field++) {
+                if (FIELDS[field].equals(key)) {
+                    values[field] = value;
+                }
+            }
+            
+            position[0] = skipSpaces(line, position[0]);
+            if (position[0] >= line.length()) {
+                return false;
+            }
+            char c = line.charAt(position[0]++);
+            if (c == '}') {
+                return true;
+            }
+            if (c != ',') {
+                return false;
+            }
+        }
+    }
+    
+    private static int skipSpaces(String line, int i) {
+        while (i < line.length() && Character.isWhitespace(line.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+    
+    private static boolean expect(String line, int[] position, char expected) {
+        int i = skipSpaces(line, position[0]);
+        if (i >= line.length() || line.charAt(i) != expected) {
+            return false;
+        }
+        position[0] = i + 1;
+        return true;
+    }
+    
+    // A string, number, true or false; null becomes the empty string
+    private String readJsonValue(String line, int[] position) {
+        int i = skipSpaces(line, position[0]);
+        if (i >= line.length()) {
+            return null;
+        }
+        if (line.charAt(i) == '"') {
+            position[0] = i;
+            return readJsonString(line, position);
+        }
+        
+        int start = i;
+        while (i < line.length() && ",}".indexOf(line.charAt(i)) < 0 && !Character.isWhitespace(line.charAt(i))) {
+            i++;
+        }
+        position[0] = i;
+        
+        String literal = line.substring(start, i);
+        if (literal.equals("null")) {
+            return "";
+        }
+        return literal.isEmpty() || literal.charAt(0) == '{' || literal.charAt(0) == '[' ? null : literal;
+    }
+    
+    private String readJsonString(String line, int[] position) {
+        int i = skipSpaces(line, position[0]);
+        if (i >= line.length() || line.charAt(i) != '"') {
+            return null;
+        }
+        i++;
+        
+        token.setLength(0);
+        while (i < line.length()) {
+            char c = line.charAt(i++);
+            if (c == '"') {
+                position[0] = i;
+                return token.toString();
+            }
+            if (c != '\\') {
+                token.append(c);
+                continue;
+            }
+            
+            if (i >= line.length()) {
+                return null;
+            }
+            char escape = line.charAt(i++);
+            switch (escape) {
+                case 'n': token.append('\n'); break;
+                case 't': token.append('\t'); break;
+                case 'r': token.append('\r'); break;
+                case 'b': token.append('\b'); break;
+                case 'f': token.append('\f'); break;
+                case 'u':
+                    if (i + 4 > line.length()) {
+                        return null;
+                    }
+                    token.append((char) Integer.parseInt(line.substring(i, i + 4), 16));
+                    i += 4;
+                    break;
+                default: token.append(escape); break;
+            }
+        }
+        return null;
+    }
+}
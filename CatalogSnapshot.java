@@ -0,0 +1,294 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+
+// Binary copy of the product catalog that is memory-mapped instead of parsed.
+//
+// Layout (big-endian):
+//   header   32 bytes: magic, version, product count, category signature offset and
+//            length, records offset (long), 4 unused bytes
+//   heap     UTF-8 strings, addressed by offset from the end of the header
+//   records  RECORD_SIZE bytes per product: price in paise (long), rating (double),
+//            review count, category mask, then offset and length of the name,
+//            description and image path (image length -1 when there is none)
+//
+// As a ProductStore every field is read from the mapped record when it is asked
+// for, so nothing is decoded until a card or dialog needs it.
+//
+// Create a snapshot from a text catalog with:
+//   java CatalogSnapshot products.csv products.snapshot [categories.txt]
+public class CatalogSnapshot implements ProductStore {
+    private static final int MAGIC = 0x54544353; // "TTCS"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int RECORD_SIZE = 48;
+    
+    private static final int PRICE = 0;
+    private static final int RATING = 8;
+    private static final int REVIEWS = 16;
+    private static final int CATEGORY_MASK = 20;
+    private static final int NAME = 24;
+    private static final int DESCRIPTION = 32;
+    private static final int IMAGE = 40;
+    
+    private final MappedByteBuffer buffer;
+    private final int productCount;
+    private final int recordsOffset;
+    private final String categorySignature;
+    
+    private CatalogSnapshot(MappedByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a catalog snapshot");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported catalog snapshot version " + buffer.getInt(4));
+        }
+        
+        productCount = buffer.getInt(8);
+        long records = buffer.getLong(20);
+        if (productCount < 0 || records < HEADER_SIZE || records + (long) productCount * RECORD_SIZE > buffer.capacity()) {
+            throw new IOException("Truncated catalog snapshot");
+        }
+        recordsOffset = (int) records;
+        categorySignature = readString(buffer.getInt(12), buffer.getInt(16));
+    }
+    
+    // Maps the file; the mapping stays valid after the file is closed
+    public static CatalogSnapshot open(String path) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(path, "r");
+             FileChannel channel = file.getChannel()) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Catalog snapshot is larger than 2 GB: " + path);
+            }
+            return new CatalogSnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+    
+    @Override
+    public int size() {
+        return productCount;
+    }
+    
+    // Signature of the category rules the masks were computed with
+    public String getCategorySignature() {
+        return categorySignature;
+    }
+    
+    public int getCategoryMask(int index) {
+        return buffer.getInt(record(index) + CATEGORY_MASK);
+    }
+    
+    // Category masks of every product for the index's rules: the stored ones if they
+    // were computed with the same rules, otherwise computed again from the stored
+    // names and descriptions. Null when the rules do not fit in a mask. Safe to call
+    // from a background thread; nothing is added to the index.
+    public int[] readCategoryMasks(CategoryIndex categoryIndex) {
+        boolean stored = categorySignature.equals(categoryIndex.getSignature());
+        if (!stored) {
+            if (!categoryIndex.supportsMasks()) {
+                return null;
+            }
+            System.err.println("Category rules changed since the catalog snapshot was written; recomputing categories");
+        }
+        
+        int[] masks = new int[productCount];
+        for (int id = 0; id < productCount; id++) {
+            masks[id] = stored ? getCategoryMask(id) : categoryIndex.getMask(getName(id), getDescription(id));
+        }
+        return masks;
+    }
+    
+    private int record(int index) {
+        if (index < 0 || index >= productCount) {
+            throw new IndexOutOfBoundsException("Product " + index + " of " + productCount);
+        }
+        return recordsOffset + index * RECORD_SIZE;
+    }
+    
+    private String readString(int offset, int length) {
+        if (length < 0) {
+            return null;
+        }
+        // Absolute reads on a duplicate so products can be decoded from any thread
+        ByteBuffer view = buffer.duplicate();
+        view.position(HEADER_SIZE + offset);
+        byte[] bytes = new byte[length];
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    private String readField(int index, int field) {
+        int record = record(index);
+        return readString(buffer.getInt(record + field), buffer.getInt(record + field + 4));
+    }
+    
+    @Override
+    public String getName(int row) {
+        return readField(row, NAME);
+    }
+    
+    @Override
+    public long getPrice(int row) {
+        return buffer.getLong(record(row) + PRICE);
+    }
+    
+    @Override
+    public String getDescription(int row) {
+        return readField(row, DESCRIPTION);
+    }
+    
+    @Override
+    public String getImagePath(int row) {
+        return readField(row, IMAGE);
+    }
+    
+    @Override
+    public float getRating(int row) {
+        return (float) buffer.getDouble(record(row) + RATING);
+    }
+    
+    @Override
+    public int getReviewCount(int row) {
+        return buffer.getInt(record(row) + REVIEWS);
+    }
+    
+    // Streams the text catalog into a snapshot. Strings go straight to the heap in
+    // the file; only the fixed-width records are buffered until the end.
+    public static int write(String catalogPath, String snapshotPath, CategoryIndex categoryIndex) throws IOException {
+        try (CatalogLoader loader = new CatalogLoader(catalogPath);
+             RandomAccessFile file = new RandomAccessFile(snapshotPath, "rw");
+             FileChannel channel = file.getChannel()) {
+            channel.truncate(0);
+            HeapWriter heap = new HeapWriter(channel);
+            ByteArrayOutputStream recordBytes = new ByteArrayOutputStream();
+            DataOutputStream records = new DataOutputStream(recordBytes);
+            
+            // Masks are only stored when the rules fit in one; otherwise the signature never matches
+            boolean masks = categoryIndex.supportsMasks();
+            long signature = heap.add(masks ? categoryIndex.getSignature() : "");
+            
+            int count = 0;
+            while (loader.next()) {
+                records.writeLong(loader.getPrice());
+                records.writeDouble(loader.getRating());
+                records.writeInt(loader.getReviewCount());
+                records.writeInt(masks ? categoryIndex.getMask(loader.getName(), loader.getDescription()) : 0);
+                writeReference(records, heap.add(loader.getName()));
+                writeReference(records, heap.add(loader.getDescription()));
+                // Image paths repeat across products, so each is stored once
+                writeReference(records, heap.addShared(loader.getImagePath()));
+                count++;
+            }
+            System.out.println(loader.getThroughputSummary());
+            
+            long recordsOffset = HEADER_SIZE + heap.size();
+            if (recordsOffset + (long) count * RECORD_SIZE > Integer.MAX_VALUE) {
+                throw new IOException("Catalog is too large for a snapshot: " + catalogPath);
+            }
+            channel.write(ByteBuffer.wrap(recordBytes.toByteArray()), recordsOffset);
+            
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC);
+            header.putInt(VERSION);
+            header.putInt(count);
+            header.putInt((int) (signature >> 32));
+            header.putInt((int) signature);
+            header.putLong(recordsOffset);
+            header.flip();
+            channel.write(header, 0);
+            return count;
+        }
+    }
+    
+    private static void writeReference(DataOutputStream records, long reference) throws IOException {
+        records.writeInt((int) (reference >> 32));
+        records.writeInt((int) reference);
+    }
+    
+    // Appends strings after the header; add() returns the offset in the high and the
+    // length in the low 32 bits
+    private static class HeapWriter {
+        private final FileChannel channel;
+        private final ByteBuffer pending = ByteBuffer.allocate(1 << 16);
+        private final HashMap<String, Long> shared = new HashMap<>();
+        private long size = 0;
+        
+        HeapWriter(FileChannel channel) throws IOException {
+            this.channel = channel;
+            channel.position(HEADER_SIZE);
+        }
+        
+        long add(String text) throws IOException {
+            if (text == null) {
+                return -1L & 0xFFFFFFFFL;
+            }
+            
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            if (size + bytes.length > Integer.MAX_VALUE) {
+                throw new IOException("Catalog strings are larger than 2 GB");
+            }
+            long reference = (size << 32) | bytes.length;
+            size += bytes.length;
+            
+            int written = 0;
+            while (written < bytes.length) {
+                if (!pending.hasRemaining()) {
+                    flush();
+                }
+                int chunk = Math.min(pending.remaining(), bytes.length - written);
+                pending.put(bytes, written, chunk);
+                written += chunk;
+            }
+            return reference;
+        }
+        
+        long addShared(String text) throws IOException {
+            if (text == null) {
+                return add(null);
+            }
+            Long reference = shared.get(text);
+            if (reference == null) {
+                reference = add(text);
+                shared.put(text, reference);
+            }
+            return reference;
+        }
+        
+        long size() throws IOException {
+            flush();
+            return size;
+        }
+        
+        private void flush() throws IOException {
+            pending.flip();
+            while (pending.hasRemaining()) {
+                channel.write(pending);
+            }
+            pending.clear();
+        }
+    }
+    
+    public static void main(String[] args) {
+        if (args.length < 2 || args.length > 3) {
+            System.err.println("Usage: java CatalogSnapshot <catalog.csv|catalog.jsonl> <output.snapshot> [categories.txt]");
+            System.exit(1);
+        }
+        
+        CategoryIndex categoryIndex = CategoryIndex.load(args.length == 3 ? args[2] : "categories.txt");
+        try {
+            int count = write(args[0], args[1], categoryIndex);
+            System.out.println("Wrote " + count + " products to " + args[1]);
+        } catch (IOException e) {
+            System.err.println("Error writing catalog snapshot: " + args[1]);
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+}
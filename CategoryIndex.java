@@ -0,0 +1,225 @@
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+public class CategoryIndex {
+    public static final String ALL_CATEGORIES = "All Electronics";
+    public static final int MAX_MASK_RULES = 32;
+    
+    // Keyword rule deciding whether a product belongs to a category
+    public static class Rule {
+        private final String category;
+        private final String[] nameKeywords;
+        private final String[] descriptionKeywords;
+        
+        public Rule(String category, String[] nameKeywords, String[] descriptionKeywords) {
+            this.category = category;
+            this.nameKeywords = nameKeywords;
+            this.descriptionKeywords = descriptionKeywords;
+        }
+        
+        public String getCategory() {
+            return category;
+        }
+        
+        // Both arguments must already be lower case
+        public boolean matches(String name, String description) {
+            for (String keyword : nameKeywords) {
+                if (name.contains(keyword)) {
+                    return true;
+                }
+            }
+            for (String keyword : descriptionKeywords) {
+                if (description.contains(keyword)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+    
+    private final ArrayList<Rule> rules;
+    
+    // Category -> set of product IDs
+    private final LinkedHashMap<String, BitSet> members = new LinkedHashMap<>();
+    
+    // Product ID -> rule mask, so facet counts need one array read per product
+    private int[] masks = new int[0];
+    
+    public CategoryIndex(List<Rule> rules) {
+        this.rules = new ArrayList<>(rules);
+        for (Rule rule : rules) {
+            members.put(rule.getCategory(), new BitSet());
+        }
+    }
+    
+    // Reads rules in the format "Category | name keywords | description keywords"
+    public static CategoryIndex load(String path) {
+        ArrayList<Rule> rules = new ArrayList<>();
+        
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(path), StandardCharsets.UTF_8))) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                
+                String[] parts = line.split("\\|", -1);
+                if (parts.length != 3 || parts[0].trim().isEmpty()) {
+                    System.err.println("Ignoring invalid category rule at " + path + ":" + lineNumber);
+                    continue;
+                }
+                
+                rules.add(new Rule(parts[0].trim(), parseKeywords(parts[1]), parseKeywords(parts[2])));
+            }
+        } catch (IOException e) {
+            System.err.println("Error loading category rules: " + path);
+        }
+        
+        return new CategoryIndex(rules);
+    }
+    
+    private static String[] parseKeywords(String text) {
+        ArrayList<String> keywords = new ArrayList<>();
+        for (String keyword : text.split(",")) {
+            keyword = keyword.trim().toLowerCase();
+            if (!keyword.isEmpty()) {
+                keywords.add(keyword);
+            }
+        }
+        return keywords.toArray(new String[0]);
+    }
+    
+    // Computes category membership once, when the product is added to the catalog
+    public void add(Product product) {
+        String name = product.getName().toLowerCase();
+        String description = product.getDescription().toLowerCase();
+        
+        int mask = 0;
+        for (int i = 0; i < rules.size(); i++) {
+            Rule rule = rules.get(i);
+            if (rule.matches(name, description)) {
+                members.get(rule.getCategory()).set(product.getId());
+                if (i < MAX_MASK_RULES) {
+                    mask |= 1 << i;
+                }
+            }
+        }
+        setMask(product.getId(), mask);
+    }
+    
+    // Membership as a bit mask, bit i set when the i-th rule matches. Only available
+    // when there are at most MAX_MASK_RULES rules.
+    public int getMask(Product product) {
+        return getMask(product.getName(), product.getDescription());
+    }
+    
+    public int getMask(String name, String description) {
+        name = name.toLowerCase();
+        description = description.toLowerCase();
+        
+        int mask = 0;
+        for (int i = 0; i < rules.size() && i < MAX_MASK_RULES; i++) {
+            if (rules.get(i).matches(name, description)) {
+                mask |= 1 << i;
+            }
+        }
+        return mask;
+    }
+    
+    // Adds a product whose membership was computed earlier by getMask
+    public void add(int productId, int mask) {
+        for (int i = 0; i < rules.size() && i < MAX_MASK_RULES; i++) {
+            if ((mask & (1 << i)) != 0) {
+                members.get(rules.get(i).getCategory()).set(productId);
+            }
+        }
+        setMask(productId, mask);
+    }
+    
+    // Adds products 0 to masks.length - 1 with the masks computed earlier by getMask,
+    // without reading their names or descriptions
+    public void addAll(int[] productMasks) {
+        BitSet[] sets = new BitSet[Math.min(rules.size(), MAX_MASK_RULES)];
+        for (int i = 0; i < sets.length; i++) {
+            sets[i] = members.get(rules.get(i).getCategory());
+        }
+        
+        int[] updated = Arrays.copyOf(masks, Math.max(masks.length, productMasks.length));
+        for (int id = 0; id < productMasks.length; id++) {
+            int mask = productMasks[id];
+            updated[id] = mask;
+            for (int bits = mask; bits != 0; bits &= bits - 1) {
+                int rule = Integer.numberOfTrailingZeros(bits);
+                if (rule < sets.length) {
+                    sets[rule].set(id);
+                }
+            }
+        }
+        masks = updated;
+    }
+    
+    // Rule mask of a product, covering the first MAX_MASK_RULES rules
+    public int getMask(int productId) {
+        return productId < masks.length ? masks[productId] : 0;
+    }
+    
+    // Masks by product ID. A product's entry is written once, when it is added, and
+    // the array is replaced rather than changed when it grows, so readers on other
+    // threads can keep using the entries of the products added before they got it.
+    int[] getMasks() {
+        return masks;
+    }
+    
+    private void setMask(int productId, int mask) {
+        if (productId >= masks.length) {
+            masks = Arrays.copyOf(masks, Math.max(productId + 1, masks.length + (masks.length >> 1) + 16));
+        }
+        masks[productId] = mask;
+    }
+    
+    public boolean supportsMasks() {
+        return rules.size() <= MAX_MASK_RULES;
+    }
+    
+    // Changes whenever a rule changes, so stored masks can be checked before they are reused
+    public String getSignature() {
+        StringBuilder signature = new StringBuilder();
+        signature.append(rules.size());
+        for (Rule rule : rules) {
+            signature.append('|').append(rule.getCategory());
+            signature.append('|').append(String.join(",", rule.nameKeywords));
+            signature.append('|').append(String.join(",", rule.descriptionKeywords));
+        }
+        return signature.toString();
+    }
+    
+    // Category names in navigation order, starting with "All Electronics"
+    public List<String> getCategories() {
+        ArrayList<String> categories = new ArrayList<>();
+        categories.add(ALL_CATEGORIES);
+        categories.addAll(members.keySet());
+        return categories;
+    }
+    
+    // Returns the IDs of products in the category, or null for an unknown category.
+    // The returned set is shared and must not be modified.
+    public BitSet getProductIds(String category) {
+        return members.get(category);
+    }
+    
+    public boolean contains(String category, int productId) {
+        BitSet ids = members.get(category);
+        return ids != null && ids.get(productId);
+    }
+}
@@ -0,0 +1,219 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// Keeps each product field in its own primitive array. Strings are stored once
+// as UTF-8 in a shared byte heap, so repeated descriptions and image paths cost
+// a single int per row and there are no String objects until a field is read.
+public class ColumnarProductStore implements AppendableProductStore {
+    private long[] prices;
+    private float[] ratings;
+    private int[] reviewCounts;
+    
+    // String IDs in the heap; NO_STRING for a missing image
+    private int[] names;
+    private int[] descriptions;
+    private int[] imagePaths;
+    
+    private static final int NO_STRING = -1;
+    
+    private final StringHeap strings;
+    private int size = 0;
+    
+    public ColumnarProductStore(int initialCapacity) {
+        int capacity = Math.max(1, initialCapacity);
+        prices = new long[capacity];
+        ratings = new float[capacity];
+        reviewCounts = new int[capacity];
+        names = new int[capacity];
+        descriptions = new int[capacity];
+        imagePaths = new int[capacity];
+        strings = new StringHeap(capacity);
+    }
+    
+    @Override
+    public int size() {
+        return size;
+    }
+    
+    @Override
+    public int add(String name, long price, String description, String imagePath, float rating, int reviewCount) {
+        if (size == prices.length) {
+            int capacity = prices.length + (prices.length >> 1) + 1;
+            prices = Arrays.copyOf(prices, capacity);
+            ratings = Arrays.copyOf(ratings, capacity);
+            reviewCounts = Arrays.copyOf(reviewCounts, capacity);
+            names = Arrays.copyOf(names, capacity);
+            descriptions = Arrays.copyOf(descriptions, capacity);
+            imagePaths = Arrays.copyOf(imagePaths, capacity);
+        }
+        
+        int row = size++;
+        prices[row] = price;
+        ratings[row] = rating;
+        reviewCounts[row] = reviewCount;
+        names[row] = strings.add(name);
+        descriptions[row] = strings.add(description != null ? description : "");
+        imagePaths[row] = imagePath != null ? strings.add(imagePath) : NO_STRING;
+        return row;
+    }
+    
+    @Override
+    public String getName(int row) {
+        return strings.get(names[checkRow(row)]);
+    }
+    
+    @Override
+    public long getPrice(int row) {
+        return prices[checkRow(row)];
+    }
+    
+    @Override
+    public String getDescription(int row) {
+        return strings.get(descriptions[checkRow(row)]);
+    }
+    
+    @Override
+    public String getImagePath(int row) {
+        int id = imagePaths[checkRow(row)];
+        return id == NO_STRING ? null : strings.get(id);
+    }
+    
+    @Override
+    public float getRating(int row) {
+        return ratings[checkRow(row)];
+    }
+    
+    @Override
+    public int getReviewCount(int row) {
+        return reviewCounts[checkRow(row)];
+    }
+    
+    // Raw columns for scans such as filters and sorts; only the first size() entries
+    // are used and the arrays are replaced when the store grows
+    public long[] getPriceColumn() {
+        return prices;
+    }
+    
+    public float[] getRatingColumn() {
+        return ratings;
+    }
+    
+    public int[] getReviewCountColumn() {
+        return reviewCounts;
+    }
+    
+    // Approximate bytes held by the columns and the string heap
+    public long getMemoryUsage() {
+        return (long) prices.length * (8 + 4 + 4 + 4 + 4 + 4) + strings.getMemoryUsage();
+    }
+    
+    private int checkRow(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + " of " + size);
+        }
+        return row;
+    }
+    
+    // Deduplicated UTF-8 strings. An open-addressing table of string IDs finds an
+    // existing copy without keeping a HashMap entry per string.
+    private static class StringHeap {
+        private byte[] bytes;
+        private int byteCount = 0;
+        
+        // Start of each string in bytes; string i ends where string i + 1 starts
+        private int[] offsets;
+        private int count = 0;
+        
+        // String ID + 1 per slot, 0 for empty; at most half full
+        private int[] table;
+        
+        StringHeap(int expectedStrings) {
+            bytes = new byte[Math.max(16, expectedStrings * 32)];
+            offsets = new int[Math.max(2, expectedStrings + 1)];
+            table = new int[Integer.highestOneBit(Math.max(4, expectedStrings * 2 - 1)) << 1];
+        }
+        
+        int add(String text) {
+            byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+            int hash = hash(utf8, 0, utf8.length);
+            
+            int mask = table.length - 1;
+            int slot = hash & mask;
+            while (table[slot] != 0) {
+                int id = table[slot] - 1;
+                if (equals(id, utf8)) {
+                    return id;
+                }
+                slot = (slot + 1) & mask;
+            }
+            
+            if (byteCount + utf8.length > bytes.length) {
+                long capacity = Math.max((long) byteCount + utf8.length, (long) bytes.length + (bytes.length >> 1));
+                if (capacity > Integer.MAX_VALUE - 8) {
+                    throw new IllegalStateException("Product strings are larger than 2 GB");
+                }
+                bytes = Arrays.copyOf(bytes, (int) capacity);
+            }
+            if (count + 2 > offsets.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length + (offsets.length >> 1) + 1);
+            }
+            
+            System.arraycopy(utf8, 0, bytes, byteCount, utf8.length);
+            int id = count++;
+            offsets[id] = byteCount;
+            byteCount += utf8.length;
+            offsets[count] = byteCount;
+            
+            table[slot] = id + 1;
+            if (count * 2 > table.length) {
+                rehash();
+            }
+            return id;
+        }
+        
+        String get(int id) {
+            int start = offsets[id];
+            return new String(bytes, start, offsets[id + 1] - start, StandardCharsets.UTF_8);
+        }
+        
+        long getMemoryUsage() {
+            return bytes.length + (long) offsets.length * 4 + (long) table.length * 4;
+        }
+        
+        private boolean equals(int id, byte[] utf8) {
+            int start = offsets[id];
+            if (offsets[id + 1] - start != utf8.length) {
+                return false;
+            }
+            for (int i = 0; i < utf8.length; i++) {
+                if (bytes[start + i] != utf8[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        
+        private void rehash() {
+            int[] newTable = new int[table.length * 2];
+            int mask = newTable.length - 1;
+            for (int id = 0; id < count; id++) {
+                int start = offsets[id];
+                int slot = hash(bytes, start, offsets[id + 1] - start) & mask;
+                while (newTable[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                newTable[slot] = id + 1;
+            }
+            table = newTable;
+        }
+        
+        private static int hash(byte[] data, int start, int length) {
+            int hash = 1;
+            for (int i = start; i < start + length; i++) {
+                hash = 31 * hash + data[i];
+            }
+            // Spread the bits so the low ones used for the slot vary
+            return hash ^ (hash >>> 16);
+        }
+    }
+}
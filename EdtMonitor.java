@@ -0,0 +1,231 @@
+import javax.management.ObjectName;
+import java.awt.AWTEvent;
+import java.awt.EventQueue;
+import java.awt.Toolkit;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+
+// Event queue that times every event the Event Dispatch Thread handles. Handlers
+// tag their event with the user action behind it (tag("addToCart")), and each
+// action gets a histogram of how long its events kept the EDT busy. Time spent
+// waiting in a nested event loop, such as a modal dialog, is not counted.
+//
+// A watchdog thread prints the EDT's stack whenever it has been busy for longer
+// than -Dtechtrove.edtStallMs (100 ms by default). The histograms and counters are
+// registered as MXBeans under the "techtrove" domain for JConsole / VisualVM.
+public class EdtMonitor extends EventQueue implements EdtMonitorMXBean {
+    private static final String DOMAIN = "techtrove";
+    
+    private static EdtMonitor installed;
+    
+    // Event being dispatched; nested loops push further entries
+    private static class Dispatch {
+        String action;
+        long busyNanos = 0;
+        long segmentStart;
+        
+        Dispatch(long start) {
+            this.segmentStart = start;
+        }
+    }
+    
+    private final ArrayDeque<Dispatch> dispatches = new ArrayDeque<>();
+    private final LinkedHashMap<String, LatencyHistogram> histograms = new LinkedHashMap<>();
+    private final LatencyHistogram allEvents = new LatencyHistogram();
+    
+    // Read by the watchdog: when the EDT last picked up work (0 while it is waiting
+    // for events), the tagged action, and the EDT itself
+    private volatile long busySince = 0;
+    private volatile String busyAction;
+    private volatile Thread dispatchThread;
+    
+    private volatile long stallThresholdNanos;
+    private volatile long eventCount = 0;
+    private volatile long stallCount = 0;
+    
+    private EdtMonitor(long stallThresholdMillis) {
+        this.stallThresholdNanos = stallThresholdMillis * 1000000;
+    }
+    
+    // Replaces the system event queue; later calls return the monitor already installed
+    public static synchronized EdtMonitor install() {
+        if (installed != null) {
+            return installed;
+        }
+        
+        EdtMonitor monitor = new EdtMonitor(Long.getLong("techtrove.edtStallMs", 100));
+        Toolkit.getDefaultToolkit().getSystemEventQueue().push(monitor);
+        monitor.register(DOMAIN + ":type=EdtMonitor", monitor);
+        monitor.register(DOMAIN + ":type=EdtEvent,name=all", monitor.allEvents);
+        monitor.startWatchdog();
+        installed = monitor;
+        return monitor;
+    }
+    
+    // Tags the event being dispatched with the user action that it carries out; the
+    // first tag wins. Does nothing off the EDT or when no monitor is installed.
+    public static void tag(String action) {
+        EdtMonitor monitor = installed;
+        if (monitor == null || Thread.currentThread() != monitor.dispatchThread) {
+            return;
+        }
+        Dispatch dispatch = monitor.dispatches.peek();
+        if (dispatch != null && dispatch.action == null) {
+            dispatch.action = action;
+            monitor.busyAction = action;
+        }
+    }
+    
+    // Adds the time since start (from System.nanoTime) to the named latency histogram,
+    // such as a method's. Only kept when a monitor is installed.
+    public static void record(String name, long start) {
+        EdtMonitor monitor = installed;
+        if (monitor != null) {
+            monitor.histogram("Latency", name).record(System.nanoTime() - start);
+        }
+    }
+    
+    @Override
+    protected void dispatchEvent(AWTEvent event) {
+        long start = System.nanoTime();
+        dispatchThread = Thread.currentThread();
+        if (busySince == 0) {
+            busySince = start;
+        }
+        
+        Dispatch dispatch = new Dispatch(start);
+        dispatches.push(dispatch);
+        try {
+            super.dispatchEvent(event);
+        } finally {
+            long end = System.nanoTime();
+            dispatches.pop();
+            dispatch.busyNanos += end - dispatch.segmentStart;
+            
+            // The event that started a nested loop picks up its own time again from here
+            Dispatch outer = dispatches.peek();
+            if (outer != null) {
+                outer.segmentStart = end;
+            }
+            busyAction = outer != null ? outer.action : null;
+            
+            eventCount++;
+            allEvents.record(dispatch.busyNanos);
+            if (dispatch.action != null) {
+                histogram("EdtEvent", dispatch.action).record(dispatch.busyNanos);
+            }
+        }
+    }
+    
+    @Override
+    public AWTEvent getNextEvent() throws InterruptedException {
+        // Inside a nested loop the enclosing event stops being busy while we wait
+        Dispatch waiting = Thread.currentThread() == dispatchThread ? dispatches.peek() : null;
+        if (waiting != null) {
+            waiting.busyNanos += System.nanoTime() - waiting.segmentStart;
+        }
+        if (Thread.currentThread() == dispatchThread) {
+            busySince = 0;
+        }
+        
+        AWTEvent event = super.getNextEvent();
+        
+        if (Thread.currentThread() == dispatchThread) {
+            long now = System.nanoTime();
+            busySince = now;
+            if (waiting != null) {
+                waiting.segmentStart = now;
+            }
+        }
+        return event;
+    }
+    
+    private synchronized LatencyHistogram histogram(String type, String name) {
+        String key = type + "/" + name;
+        LatencyHistogram histogram = histograms.get(key);
+        if (histogram == null) {
+            histogram = new LatencyHistogram();
+            histograms.put(key, histogram);
+            register(DOMAIN + ":type=" + type + ",name=" + name, histogram);
+        }
+        return histogram;
+    }
+    
+    private void register(String name, Object bean) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(bean, new ObjectName(name));
+        } catch (Exception e) {
+            System.err.println("Error registering MXBean: " + name);
+            e.printStackTrace();
+        }
+    }
+    
+    // Checks a few times per threshold whether the EDT has been busy too long, and
+    // reports each stall once, with the stack trace at the time it was noticed
+    private void startWatchdog() {
+        Thread watchdog = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                long reported = 0;
+                while (true) {
+                    try {
+                        Thread.sleep(Math.max(10, stallThresholdNanos / 4000000));
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    
+                    long since = busySince;
+                    Thread edt = dispatchThread;
+                    if (since == 0 || since == reported || edt == null) {
+                        continue;
+                    }
+                    long busyMillis = (System.nanoTime() - since) / 1000000;
+                    if (busyMillis * 1000000 < stallThresholdNanos) {
+                        continue;
+                    }
+                    
+                    reported = since;
+                    stallCount++;
+                    String action = busyAction;
+                    StringBuilder report = new StringBuilder();
+                    report.append("EDT stalled for ").append(busyMillis).append(" ms");
+                    if (action != null) {
+                        report.append(" during ").append(action);
+                    }
+                    for (StackTraceElement element : edt.getStackTrace()) {
+                        report.append("\n\tat ").append(element);
+                    }
+                    System.err.println(report);
+                }
+            }
+        }, "edt-watchdog");
+        watchdog.setDaemon(true);
+        watchdog.start();
+    }
+    
+    @Override
+    public long getEventCount() {
+        return eventCount;
+    }
+    
+    @Override
+    public long getStallCount() {
+        return stallCount;
+    }
+    
+    @Override
+    public long getStallThresholdMillis() {
+        return stallThresholdNanos / 1000000;
+    }
+    
+    @Override
+    public void setStallThresholdMillis(long millis) {
+        stallThresholdNanos = Math.max(1, millis) * 1000000;
+    }
+    
+    @Override
+    public String getCurrentAction() {
+        return busyAction;
+    }
+}
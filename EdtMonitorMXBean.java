@@ -0,0 +1,13 @@
+// Counters of the EdtMonitor for JConsole / VisualVM
+public interface EdtMonitorMXBean {
+    long getEventCount();
+    
+    long getStallCount();
+    
+    long getStallThresholdMillis();
+    
+    void setStallThresholdMillis(long millis);
+    
+    // The action of the event being handled, if it has been tagged
+    String getCurrentAction();
+}
@@ -0,0 +1,547 @@
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+// Sorts and filters catalog products by price range, minimum rating and category,
+// and counts how many products each facet value would leave. Products are never
+// copied: sorting uses ID arrays ordered by each sort key, built once per catalog
+// size, and matches are read a page at a time through a Cursor, so the first page
+// costs the same however many products match.
+public class FacetEngine {
+    public enum Sort {
+        RELEVANCE("Featured"),
+        PRICE_LOW_TO_HIGH("Price: Low to High"),
+        PRICE_HIGH_TO_LOW("Price: High to Low"),
+        RATING("Avg. Customer Review"),
+        REVIEWS("Most Reviewed");
+        
+        private final String label;
+        
+        Sort(String label) {
+            this.label = label;
+        }
+        
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+    
+    // Price ranges in paise: range i is [PRICE_BOUNDS[i], PRICE_BOUNDS[i + 1])
+    private static final long[] PRICE_BOUNDS = { 0, 100000, 500000, 2000000, 5000000, Long.MAX_VALUE };
+    private static final String[] PRICE_LABELS = {
+        "Under ₹1,000", "₹1,000 - ₹5,000", "₹5,000 - ₹20,000", "₹20,000 - ₹50,000", "Over ₹50,000"
+    };
+    
+    public static final int ANY_PRICE = -1;
+    public static final int MAX_RATING = 5;
+    
+    // What the user picked; category is a name from CategoryIndex.getCategories()
+    public static class Filter {
+        public String category = CategoryIndex.ALL_CATEGORIES;
+        public int priceRange = ANY_PRICE;
+        public int minRating = 0;
+        public Sort sort = Sort.RELEVANCE;
+    }
+    
+    public static class Result {
+        private final int matchCount;
+        private final int[] categoryCounts;
+        private final int[] priceRangeCounts;
+        private final int[] ratingCounts;
+        
+        Result(int matchCount, int[] categoryCounts, int[] priceRangeCounts, int[] ratingCounts) {
+            this.matchCount = matchCount;
+            this.categoryCounts = categoryCounts;
+            this.priceRangeCounts = priceRangeCounts;
+            this.ratingCounts = ratingCounts;
+        }
+        
+        // Products matching every facet
+        public int getMatchCount() {
+            return matchCount;
+        }
+        
+        // Products each category would show with the other facets unchanged,
+        // indexed like CategoryIndex.getCategories() ("All Electronics" first)
+        public int[] getCategoryCounts() {
+            return categoryCounts;
+        }
+        
+        // Indexed by price range, with the count for any price last
+        public int[] getPriceRangeCounts() {
+            return priceRangeCounts;
+        }
+        
+        // Index r is the count for "r stars and up"; index 0 is any rating
+        public int[] getRatingCounts() {
+            return ratingCounts;
+        }
+    }
+    
+    // The matches of one filter, read a page at a time in the requested order.
+    // Create it on the thread that adds products. Everything it reads is captured
+    // then: the catalog size, the facet keys and category masks, copies of the
+    // categories without a mask bit and, for search results sorted by a key, the
+    // key of every result. Arrays are only appended to or replaced as products are
+    // added, so pages after the first and the facet counts can be computed on a
+    // background thread while products are still being added.
+    public static class Cursor {
+        private final int size;
+        private final int[] baseIds;
+        private final byte[] keys;
+        private final int[] masks;
+        private final int categoryCount;
+        private final int priceRange;
+        private final int minRating;
+        
+        // Category filter: a mask bit when the rule has one, otherwise a copy of its ID set
+        private final int categoryPosition;
+        private final int categoryBit;
+        private final BitSet categoryMembers;
+        
+        // Copies of the categories without a mask bit, for counting
+        private final BitSet[] unmaskedMembers;
+        
+        // IDs in the requested order, null for catalog order; positions from..to are read
+        private int[] order;
+        private int from;
+        private int to;
+        private boolean descending;
+        private int position = 0;
+        
+        // Search results sorted by a key other than relevance are ordered on the first
+        // page; these are the sort keys of baseIds, by position
+        private long[] pendingKeys;
+        
+        private Cursor(int[] baseIds, int size, byte[] keys, CategoryIndex categoryIndex, Filter filter) {
+            this.baseIds = baseIds;
+            this.size = size;
+            this.keys = keys;
+            this.masks = categoryIndex.getMasks();
+            this.priceRange = filter.priceRange;
+            this.minRating = filter.minRating;
+            
+            List<String> categories = categoryIndex.getCategories();
+            categoryCount = categories.size();
+            categoryPosition = categories.indexOf(filter.category);
+            
+            int bit = 0;
+            BitSet members = null;
+            if (categoryPosition > 0) {
+                if (categoryPosition - 1 < CategoryIndex.MAX_MASK_RULES) {
+                    bit = 1 << (categoryPosition - 1);
+                } else {
+                    members = copy(categoryIndex.getProductIds(filter.category));
+                }
+            }
+            categoryBit = bit;
+            categoryMembers = members;
+            
+            unmaskedMembers = new BitSet[Math.max(0, categoryCount - CategoryIndex.MAX_MASK_RULES - 1)];
+            for (int i = 0; i < unmaskedMembers.length; i++) {
+                unmaskedMembers[i] = copy(categoryIndex.getProductIds(categories.get(CategoryIndex.MAX_MASK_RULES + 1 + i)));
+            }
+        }
+        
+        private static BitSet copy(BitSet members) {
+            return members != null ? (BitSet) members.clone() : new BitSet();
+        }
+        
+        // Up to pageSize more matching IDs; empty once every match has been returned
+        public synchronized int[] next(int pageSize) {
+            if (pendingKeys != null) {
+                sortBase();
+            }
+            
+            int[] page = new int[pageSize];
+            int count = 0;
+            while (count < pageSize && position < to - from) {
+                int index = descending ? to - 1 - position : from + position;
+                position++;
+                int id = order != null ? order[index] : index;
+                if (id < size && matches(id)) {
+                    page[count++] = id;
+                }
+            }
+            return count == pageSize ? page : Arrays.copyOf(page, count);
+        }
+        
+        public synchronized boolean hasMore() {
+            return position < to - from;
+        }
+        
+        private boolean matches(int id) {
+            int key = keys[id];
+            if (priceRange != ANY_PRICE && (key & 7) != priceRange) {
+                return false;
+            }
+            if (key >>> 3 < minRating) {
+                return false;
+            }
+            return categoryMatches(id, mask(id));
+        }
+        
+        private int mask(int id) {
+            return id < masks.length ? masks[id] : 0;
+        }
+        
+        private boolean categoryMatches(int id, int mask) {
+            if (categoryPosition <= 0) {
+                return true;
+            }
+            return categoryMembers != null ? categoryMembers.get(id) : (mask & categoryBit) != 0;
+        }
+        
+        private void sortBase() {
+            // Only the matches are sorted, by their position so ties keep relevance order
+            int[] matching = new int[baseIds.length];
+            int matches = 0;
+            for (int i = 0; i < baseIds.length; i++) {
+                if (baseIds[i] < size && matches(baseIds[i])) {
+                    matching[matches++] = i;
+                }
+            }
+            
+            int[] positions = new int[matches];
+            long[] sortKeys = new long[matches];
+            for (int i = 0; i < matches; i++) {
+                positions[i] = i;
+                sortKeys[i] = pendingKeys[matching[i]];
+            }
+            sortIds(positions, 0, matches - 1, sortKeys);
+            
+            order = new int[matches];
+            for (int i = 0; i < matches; i++) {
+                order[i] = baseIds[matching[positions[i]]];
+            }
+            from = 0;
+            to = matches;
+            pendingKeys = null;
+        }
+        
+        // One pass over every candidate. Counts for each facet ignore that facet's own
+        // selection, so every option shows what picking it would leave.
+        public Result count() {
+            int[] categoryCounts = new int[categoryCount];
+            int ranges = PRICE_LABELS.length;
+            int[] priceRangeCounts = new int[ranges + 1];
+            int[] ratingBuckets = new int[MAX_RATING + 1];
+            int anyPrice = priceRange == ANY_PRICE ? 1 : 0;
+            
+            int count = baseIds != null ? baseIds.length : size;
+            for (int i = 0; i < count; i++) {
+                int id = baseIds != null ? baseIds[i] : i;
+                if (id >= size) {
+                    continue;
+                }
+                
+                int key = keys[id];
+                int range = key & 7;
+                int stars = key >>> 3;
+                int mask = mask(id);
+                
+                // 1 or 0, so the counts below are additions rather than branches
+                int priceMatches = anyPrice | (range == priceRange ? 1 : 0);
+                int ratingMatches = stars >= minRating ? 1 : 0;
+                int categoryMatches = categoryMatches(id, mask) ? 1 : 0;
+                
+                if ((priceMatches & ratingMatches) != 0) {
+                    categoryCounts[0]++;
+                    for (int bits = mask; bits != 0; bits &= bits - 1) {
+                        categoryCounts[Integer.numberOfTrailingZeros(bits) + 1]++;
+                    }
+                    for (int c = 0; c < unmaskedMembers.length; c++) {
+                        if (unmaskedMembers[c].get(id)) {
+                            categoryCounts[CategoryIndex.MAX_MASK_RULES + 1 + c]++;
+                        }
+                    }
+                }
+                ratingBuckets[stars] += priceMatches & categoryMatches;
+                priceRangeCounts[range] += ratingMatches & categoryMatches;
+            }
+            for (int range = 0; range < ranges; range++) {
+                priceRangeCounts[ranges] += priceRangeCounts[range];
+            }
+            
+            // "r stars and up" is the sum of the buckets from r to 5
+            int[] ratingCounts = new int[MAX_RATING + 1];
+            int total = 0;
+            for (int r = MAX_RATING; r >= 0; r--) {
+                total += ratingBuckets[r];
+                ratingCounts[r] = total;
+            }
+            
+            // Every facet is applied exactly when the price range count is taken
+            int matchCount = priceRangeCounts[priceRange == ANY_PRICE ? ranges : priceRange];
+            return new Result(matchCount, categoryCounts, priceRangeCounts, ratingCounts);
+        }
+    }
+    
+    private final Catalog catalog;
+    
+    // Live ratings including reviews received since startup; null for the catalog's own
+    private Reviews reviews;
+    
+    // IDs ordered by each sort key, and the catalog size they were built for
+    private int[] byPrice;
+    private int[] byRating;
+    private int[] byReviews;
+    private int byPriceSize = -1;
+    private int byRatingSize = -1;
+    private int byReviewsSize = -1;
+    
+    // See facetKeys()
+    private byte[] facetKeys;
+    private int facetKeysSize = 0;
+    
+    public FacetEngine(Catalog catalog) {
+        this.catalog = catalog;
+    }
+    
+    // Rates and sorts products by the ratings shown to the user, which include the
+    // reviews received since startup. Call ratingsChanged as reviews arrive.
+    public void setReviews(Reviews reviews) {
+        this.reviews = reviews;
+        facetKeys = null;
+        facetKeysSize = 0;
+        byRatingSize = -1;
+        byReviewsSize = -1;
+    }
+    
+    // Recomputes the rating facet of the products and sorts by rating or reviews
+    // again on their next use. The keys are copied rather than changed, so cursors
+    // keep the ones they captured. Call on the thread that adds products.
+    public void ratingsChanged(BitSet productIds) {
+        if (facetKeys != null) {
+            ProductStore store = catalog.getStore();
+            byte[] updated = facetKeys.clone();
+            for (int id = productIds.nextSetBit(0); id >= 0 && id < facetKeysSize; id = productIds.nextSetBit(id + 1)) {
+                updated[id] = facetKey(store, id);
+            }
+            facetKeys = updated;
+        }
+        byRatingSize = -1;
+        byReviewsSize = -1;
+    }
+    
+    public static int getPriceRangeCount() {
+        return PRICE_LABELS.length;
+    }
+    
+    public static String getPriceRangeLabel(int range) {
+        return PRICE_LABELS[range];
+    }
+    
+    // Starts reading the products of baseIds in their given order (search results,
+    // best first), or of the whole catalog when baseIds is null, that match the filter.
+    // Only the work that does not depend on the number of matches happens here.
+    public Cursor query(int[] baseIds, Filter filter) {
+        ProductStore store = catalog.getStore();
+        int size = store.size();
+        Cursor cursor = new Cursor(baseIds, size, facetKeys(store, size), catalog.getCategoryIndex(), filter);
+        
+        if (baseIds != null) {
+            cursor.from = 0;
+            cursor.to = baseIds.length;
+            cursor.order = baseIds;
+            if (filter.sort != Sort.RELEVANCE) {
+                // Read now: the store's columns are not safe to read while products are added
+                long[] sortKeys = new long[baseIds.length];
+                for (int i = 0; i < baseIds.length; i++) {
+                    sortKeys[i] = baseIds[i] < size ? sortKey(filter.sort, store, baseIds[i]) : 0;
+                }
+                cursor.pendingKeys = sortKeys;
+            }
+            return cursor;
+        }
+        
+        cursor.from = 0;
+        cursor.to = size;
+        if (filter.sort != Sort.RELEVANCE) {
+            cursor.order = sortedIds(filter.sort, store, size);
+            cursor.descending = filter.sort == Sort.PRICE_HIGH_TO_LOW;
+            if (filter.sort == Sort.PRICE_LOW_TO_HIGH || cursor.descending) {
+                // Only the slice inside the price range is walked
+                long minPrice = filter.priceRange == ANY_PRICE ? 0 : PRICE_BOUNDS[filter.priceRange];
+                long maxPrice = filter.priceRange == ANY_PRICE ? Long.MAX_VALUE : PRICE_BOUNDS[filter.priceRange + 1];
+                cursor.from = lowerBound(cursor.order, store, minPrice);
+                cursor.to = lowerBound(cursor.order, store, maxPrice);
+            }
+        }
+        return cursor;
+    }
+    
+    // Price range in the low 3 bits and whole stars above them, one byte per product,
+    // so the counting pass reads a single small column. New products are added as the
+    // catalog grows; existing ones only change in copies made by ratingsChanged.
+    private byte[] facetKeys(ProductStore store, int size) {
+        if (facetKeys == null || facetKeys.length < size) {
+            byte[] grown = new byte[Math.max(size, facetKeysSize + (facetKeysSize >> 1) + 16)];
+            if (facetKeys != null) {
+                System.arraycopy(facetKeys, 0, grown, 0, facetKeysSize);
+            }
+            facetKeys = grown;
+        }
+        for (int id = facetKeysSize; id < size; id++) {
+            facetKeys[id] = facetKey(store, id);
+        }
+        facetKeysSize = Math.max(facetKeysSize, size);
+        return facetKeys;
+    }
+    
+    private byte facetKey(ProductStore store, int id) {
+        int stars = Math.max(0, Math.min(MAX_RATING, (int) rating(store, id)));
+        return (byte) (priceRange(store.getPrice(id)) | stars << 3);
+    }
+    
+    private double rating(ProductStore store, int id) {
+        return reviews != null ? reviews.getRating(id, store.getRating(id), store.getReviewCount(id)) : store.getRating(id);
+    }
+    
+    private int reviewCount(ProductStore store, int id) {
+        return reviews != null ? reviews.getReviewCount(id, store.getReviewCount(id)) : store.getReviewCount(id);
+    }
+    
+    private static int priceRange(long price) {
+        int range = 0;
+        while (range < PRICE_LABELS.length - 1 && price >= PRICE_BOUNDS[range + 1]) {
+            range++;
+        }
+        return range;
+    }
+    
+    // First position in the price-ordered IDs whose price is at least the given one
+    private static int lowerBound(int[] byPrice, ProductStore store, long price) {
+        int low = 0;
+        int high = byPrice.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (store.getPrice(byPrice[middle]) < price) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+    
+    // All IDs ordered by the sort key, rebuilt only when the catalog has grown
+    private int[] sortedIds(Sort sort, ProductStore store, int size) {
+        switch (sort) {
+            case RATING:
+                if (byRatingSize != size) {
+                    byRating = sortAll(Sort.RATING, store, size);
+                    byRatingSize = size;
+                }
+                return byRating;
+            case REVIEWS:
+                if (byReviewsSize != size) {
+                    byReviews = sortAll(Sort.REVIEWS, store, size);
+                    byReviewsSize = size;
+                }
+                return byReviews;
+            default:
+                // Price high to low walks the same array backwards
+                if (byPriceSize != size) {
+                    byPrice = sortAll(Sort.PRICE_LOW_TO_HIGH, store, size);
+                    byPriceSize = size;
+                }
+                return byPrice;
+        }
+    }
+    
+    private int[] sortAll(Sort sort, ProductStore store, int size) {
+        int[] ids = new int[size];
+        for (int id = 0; id < size; id++) {
+            ids[id] = id;
+        }
+        sortIds(ids, 0, size - 1, sortKeys(sort, store, size));
+        return ids;
+    }
+    
+    // Ascending sort keys by product ID
+    private long[] sortKeys(Sort sort, ProductStore store, int size) {
+        long[] keys = new long[size];
+        for (int id = 0; id < size; id++) {
+            keys[id] = sortKey(sort, store, id);
+        }
+        return keys;
+    }
+    
+    private long sortKey(Sort sort, ProductStore store, int id) {
+        switch (sort) {
+            case PRICE_LOW_TO_HIGH:
+                return store.getPrice(id);
+            case PRICE_HIGH_TO_LOW:
+                return -store.getPrice(id);
+            case RATING:
+                // Best rated first, then most reviewed
+                return -((Math.round(rating(store, id) * 100) << 32) | reviewCount(store, id));
+            case REVIEWS:
+                return -reviewCount(store, id);
+            default:
+                return 0;
+        }
+    }
+    
+    // Quicksort of IDs by keys[id], ties broken by ID so the order is stable across rebuilds
+    private static void sortIds(int[] ids, int low, int high, long[] keys) {
+        while (high - low > 16) {
+            int middle = (low + high) >>> 1;
+            if (less(ids[middle], ids[low], keys)) {
+                swap(ids, middle, low);
+            }
+            if (less(ids[high], ids[low], keys)) {
+                swap(ids, high, low);
+            }
+            if (less(ids[high], ids[middle], keys)) {
+                swap(ids, high, middle);
+            }
+            int pivot = ids[middle];
+            
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (less(ids[i], pivot, keys)) {
+                    i++;
+                }
+                while (less(pivot, ids[j], keys)) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(ids, i++, j--);
+                }
+            }
+            
+            // Recurse into the smaller half to bound the stack depth
+            if (j - low < high - i) {
+                sortIds(ids, low, j, keys);
+                low = i;
+            } else {
+                sortIds(ids, i, high, keys);
+                high = j;
+            }
+        }
+        
+        for (int i = low + 1; i <= high; i++) {
+            int id = ids[i];
+            int j = i - 1;
+            while (j >= low && less(id, ids[j], keys)) {
+                ids[j + 1] = ids[j];
+                j--;
+            }
+            ids[j + 1] = id;
+        }
+    }
+    
+    private static boolean less(int a, int b, long[] keys) {
+        return keys[a] < keys[b] || (keys[a] == keys[b] && a < b);
+    }
+    
+    private static void swap(int[] ids, int i, int j) {
+        int id = ids[i];
+        ids[i] = ids[j];
+        ids[j] = id;
+    }
+}
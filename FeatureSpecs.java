@@ -0,0 +1,155 @@
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+// Key features of each product type, read from features.txt. A product gets the
+// features of the first type that has one of its keywords among the words of the
+// product name, or of the type without keywords. Classifying a name costs a hash
+// lookup per word however many types there are, and is done once per product;
+// after that the features are one array read. Types with identical features share
+// a single array, which callers must not modify.
+public class FeatureSpecs {
+    private static final String[] NO_FEATURES = new String[0];
+    
+    // Distinct feature lists, indexed by spec ID
+    private final ArrayList<String[]> specs = new ArrayList<>();
+    private final HashMap<List<String>, Integer> specIds = new HashMap<>();
+    
+    // Keyword (lower-case words separated by single spaces) -> position of the first
+    // type listing it; the type at the lowest position wins
+    private final HashMap<String, Integer> keywordTypes = new HashMap<>();
+    private int[] typeSpecs = new int[0];
+    private int maxKeywordWords = 1;
+    
+    // Spec for names that match no keyword; no features until a type without keywords is added
+    private int defaultSpec;
+    private boolean hasDefault = false;
+    
+    public FeatureSpecs() {
+        defaultSpec = addSpec(NO_FEATURES);
+    }
+    
+    // Reads product types in the format "Type | name keywords", each followed by its
+    // features on lines starting with "-"
+    public static FeatureSpecs load(String path) {
+        FeatureSpecs featureSpecs = new FeatureSpecs();
+        
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(path), StandardCharsets.UTF_8))) {
+            String[] keywords = null;
+            ArrayList<String> features = new ArrayList<>();
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                
+                if (line.startsWith("-")) {
+                    if (keywords == null) {
+                        System.err.println("Ignoring feature outside a product type at " + path + ":" + lineNumber);
+                    } else {
+                        features.add(line.substring(1).trim());
+                    }
+                    continue;
+                }
+                
+                String[] parts = line.split("\\|", -1);
+                if (parts.length != 2 || parts[0].trim().isEmpty()) {
+                    System.err.println("Ignoring invalid product type at " + path + ":" + lineNumber);
+                    keywords = null;
+                    continue;
+                }
+                
+                if (keywords != null) {
+                    featureSpecs.addType(keywords, features.toArray(new String[0]));
+                }
+                keywords = parts[1].split(",");
+                features.clear();
+            }
+            if (keywords != null) {
+                featureSpecs.addType(keywords, features.toArray(new String[0]));
+            }
+        } catch (IOException e) {
+            System.err.println("Error loading feature specs: " + path);
+        }
+        
+        return featureSpecs;
+    }
+    
+    // Adds a type after the ones already added. A type without keywords becomes the
+    // default, unless an earlier one already is.
+    public void addType(String[] keywords, String[] features) {
+        int spec = addSpec(features);
+        int type = typeSpecs.length;
+        typeSpecs = Arrays.copyOf(typeSpecs, type + 1);
+        typeSpecs[type] = spec;
+        
+        boolean hasKeywords = false;
+        for (String keyword : keywords) {
+            ArrayList<String> words = SearchIndex.tokenize(keyword);
+            if (words.isEmpty()) {
+                continue;
+            }
+            hasKeywords = true;
+            maxKeywordWords = Math.max(maxKeywordWords, words.size());
+            String phrase = String.join(" ", words);
+            if (!keywordTypes.containsKey(phrase)) {
+                keywordTypes.put(phrase, type);
+            }
+        }
+        
+        if (!hasKeywords && !hasDefault) {
+            defaultSpec = spec;
+            hasDefault = true;
+        }
+    }
+    
+    private int addSpec(String[] features) {
+        Integer spec = specIds.get(Arrays.asList(features));
+        if (spec == null) {
+            spec = specs.size();
+            specs.add(features);
+            specIds.put(Arrays.asList(features), spec);
+        }
+        return spec;
+    }
+    
+    // Spec ID for a product name
+    public int classify(String name) {
+        ArrayList<String> words = SearchIndex.tokenize(name);
+        int best = Integer.MAX_VALUE;
+        StringBuilder phrase = new StringBuilder();
+        for (int start = 0; start < words.size(); start++) {
+            phrase.setLength(0);
+            for (int end = start; end < words.size() && end - start < maxKeywordWords; end++) {
+                if (end > start) {
+                    phrase.append(' ');
+                }
+                phrase.append(words.get(end));
+                Integer type = keywordTypes.get(phrase.toString());
+                if (type != null && type < best) {
+                    best = type;
+                }
+            }
+        }
+        return best == Integer.MAX_VALUE ? defaultSpec : typeSpecs[best];
+    }
+    
+    // Features for a spec ID; the array is shared and must not be modified
+    public String[] getFeatures(int spec) {
+        return specs.get(spec);
+    }
+    
+    // Number of distinct feature lists
+    public int size() {
+        return specs.size();
+    }
+}
@@ -0,0 +1,173 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.imageio.ImageIO;
+import javax.swing.ImageIcon;
+import java.io.File;
+import java.io.IOException;
+
+public class ImageCache {
+    // Default memory budget for decoded images (32 MB)
+    public static final long DEFAULT_MAX_BYTES = 32L * 1024 * 1024;
+    
+    private final long maxBytes;
+    private long currentBytes = 0;
+    
+    // Access-ordered map gives us LRU iteration order
+    private final LinkedHashMap<String, BufferedImage> images = new LinkedHashMap<>(64, 0.75f, true);
+    
+    // Statistics
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+    
+    public ImageCache() {
+        this(Long.getLong("techtrove.imageCacheBytes", DEFAULT_MAX_BYTES));
+    }
+    
+    public ImageCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+    
+    // Returns the image scaled to fit inside maxWidth x maxHeight, keeping its aspect ratio
+    public BufferedImage getFitted(String path, int maxWidth, int maxHeight) throws IOException {
+        return get(path, maxWidth, maxHeight, true);
+    }
+    
+    // Returns the image stretched to exactly width x height
+    public BufferedImage getScaled(String path, int width, int height) throws IOException {
+        return get(path, width, height, false);
+    }
+    
+    // Returns the cached image without touching the disk, or null if it has not been loaded yet
+    public BufferedImage peek(String path, int width, int height, boolean keepAspect) {
+        return lookup(keyFor(path, width, height, keepAspect));
+    }
+    
+    public BufferedImage get(String path, int width, int height, boolean keepAspect) throws IOException {
+        String key = keyFor(path, width, height, keepAspect);
+        
+        BufferedImage image = lookup(key);
+        if (image != null) {
+            return image;
+        }
+        recordMiss();
+        
+        // Decode outside the lock so background loaders can work in parallel
+        BufferedImage originalImage = ImageIO.read(new File(path));
+        if (originalImage == null) {
+            throw new IOException("Unsupported image format: " + path);
+        }
+        
+        int targetWidth = width;
+        int targetHeight = height;
+        if (keepAspect) {
+            // Calculate dimensions while maintaining aspect ratio
+            double aspectRatio = (double) originalImage.getWidth() / originalImage.getHeight();
+            targetHeight = (int) (width / aspectRatio);
+            
+            // If height is too large, scale based on height instead
+            if (targetHeight > height) {
+                targetHeight = height;
+                targetWidth = (int) (height * aspectRatio);
+            }
+        }
+        
+        image = scale(originalImage, Math.max(1, targetWidth), Math.max(1, targetHeight));
+        put(key, image);
+        return image;
+    }
+    
+    private static String keyFor(String path, int width, int height, boolean keepAspect) {
+        return path + (keepAspect ? "@fit:" : "@size:") + width + "x" + height;
+    }
+    
+    private synchronized BufferedImage lookup(String key) {
+        BufferedImage image = images.get(key);
+        if (image != null) {
+            hits++;
+        }
+        return image;
+    }
+    
+    private synchronized void recordMiss() {
+        misses++;
+    }
+    
+    private synchronized void put(String key, BufferedImage image) {
+        long size = sizeOf(image);
+        
+        // Don't let a single oversized image flush the whole cache
+        if (size > maxBytes) {
+            return;
+        }
+        
+        BufferedImage previous = images.put(key, image);
+        if (previous != null) {
+            // Another loader decoded the same image concurrently
+            currentBytes -= sizeOf(previous);
+        }
+        currentBytes += size;
+        
+        // Evict least recently used images until we are back under budget
+        Iterator<Map.Entry<String, BufferedImage>> iterator = images.entrySet().iterator();
+        while (currentBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, BufferedImage> eldest = iterator.next();
+            currentBytes -= sizeOf(eldest.getValue());
+            iterator.remove();
+            evictions++;
+        }
+    }
+    
+    private static BufferedImage scale(BufferedImage source, int width, int height) {
+        // ImageIcon waits for the smooth scaling filter to finish producing pixels
+        Image scaledImage = new ImageIcon(source.getScaledInstance(width, height, Image.SCALE_SMOOTH)).getImage();
+        
+        BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = result.createGraphics();
+        g.drawImage(scaledImage, 0, 0, null);
+        g.dispose();
+        return result;
+    }
+    
+    private static long sizeOf(BufferedImage image) {
+        return (long) image.getWidth() * image.getHeight() * 4;
+    }
+    
+    public synchronized void clear() {
+        images.clear();
+        currentBytes = 0;
+    }
+    
+    public synchronized long getHits() {
+        return hits;
+    }
+    
+    public synchronized long getMisses() {
+        return misses;
+    }
+    
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+    
+    public synchronized long getCurrentBytes() {
+        return currentBytes;
+    }
+    
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+    
+    public synchronized int size() {
+        return images.size();
+    }
+    
+    @Override
+    public synchronized String toString() {
+        return String.format("ImageCache[entries=%d, bytes=%d/%d, hits=%d, misses=%d, evictions=%d]",
+                             images.size(), currentBytes, maxBytes, hits, misses, evictions);
+    }
+}
@@ -0,0 +1,130 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.swing.Icon;
+import javax.swing.SwingUtilities;
+
+public class ImageLoader {
+    // Receives the decoded image on the Event Dispatch Thread
+    public interface Callback {
+        void imageLoaded(BufferedImage image);
+    }
+    
+    private final ImageCache cache;
+    private final ThreadPoolExecutor executor;
+    
+    public ImageLoader(ImageCache cache) {
+        this(cache, Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1)));
+    }
+    
+    public ImageLoader(ImageCache cache, int threads) {
+        this.cache = cache;
+        
+        final AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(),
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "image-loader-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.NORM_PRIORITY - 1);
+                    return thread;
+                }
+            });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+    
+    public ImageCache getCache() {
+        return cache;
+    }
+    
+    // Loads the image scaled to fit inside width x height.
+    // Returns null if the image was already cached and the callback ran immediately.
+    public Future<?> loadFitted(String path, int width, int height, Callback callback) {
+        return load(path, width, height, true, callback);
+    }
+    
+    // Loads the image stretched to exactly width x height
+    public Future<?> loadScaled(String path, int width, int height, Callback callback) {
+        return load(path, width, height, false, callback);
+    }
+    
+    private Future<?> load(final String path, final int width, final int height, final boolean keepAspect, final Callback callback) {
+        BufferedImage cached = cache.peek(path, width, height, keepAspect);
+        if (cached != null) {
+            callback.imageLoaded(cached);
+            return null;
+        }
+        
+        FutureTask<BufferedImage> task = new FutureTask<BufferedImage>(new Callable<BufferedImage>() {
+            @Override
+            public BufferedImage call() throws Exception {
+                return cache.get(path, width, height, keepAspect);
+            }
+        }) {
+            @Override
+            protected void done() {
+                // Cards scrolled out of view cancel their loads; a cancelled task would
+                // otherwise stay queued until a worker reached it
+                if (isCancelled()) {
+                    executor.remove(this);
+                    return;
+                }
+                
+                final BufferedImage image;
+                try {
+                    image = get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (ExecutionException e) {
+                    System.err.println("Error loading image: " + path);
+                    e.getCause().printStackTrace();
+                    return;
+                }
+                
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        // The view may have been replaced while we were decoding
+                        if (!isCancelled()) {
+                            callback.imageLoaded(image);
+                        }
+                    }
+                });
+            }
+        };
+        
+        executor.execute(task);
+        return task;
+    }
+    
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+    
+    // Lightweight stand-in shown while the real image is decoded
+    public static Icon placeholder(final int width, final int height) {
+        return new Icon() {
+            @Override
+            public void paintIcon(Component c, Graphics g, int x, int y) {
+                g.setColor(new Color(238, 238, 238));
+                g.fillRect(x, y, width, height);
+                g.setColor(new Color(222, 222, 222));
+                g.drawRect(x, y, width - 1, height - 1);
+            }
+            
+            @Override
+            public int getIconWidth() {
+                return width;
+            }
+            
+            @Override
+            public int getIconHeight() {
+                return height;
+            }
+        };
+    }
+}
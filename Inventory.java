@@ -0,0 +1,242 @@
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+// Units in stock of each product, by catalog ID, and the reservations that hold
+// units while orders are placed. Counters are only changed by compare-and-set and
+// never locked, so buyers of a hot product in a flash sale do not queue behind one
+// another, and a counter can never go below zero, so stock is never oversold.
+//
+// Checkout reserves the units of every line of the cart, marks the reservation as
+// being placed just before the order is written, and then either confirms it once
+// the order is saved or releases it if saving failed. A reservation still held
+// after -Dtechtrove.reservationSeconds (60 by default) expires and its units go
+// back on sale; one being placed never expires, however slow the write. Products start with
+// -Dtechtrove.stock units (100 by default); stock is not persisted. close stops the
+// expiry thread.
+public class Inventory implements AutoCloseable {
+    public static final class Reservation {
+        private static final int HELD = 0;
+        private static final int PLACING = 1;
+        private static final int CONFIRMED = 2;
+        private static final int RELEASED = 3;
+        
+        private final int[] productIds;
+        private final int[] quantities;
+        private final long deadline;
+        private final AtomicInteger state = new AtomicInteger(HELD);
+        
+        private Reservation(int[] productIds, int[] quantities, long deadline) {
+            this.productIds = productIds;
+            this.quantities = quantities;
+            this.deadline = deadline;
+        }
+        
+        // True until the reservation is confirmed or released
+        public boolean isHeld() {
+            int current = state.get();
+            return current == HELD || current == PLACING;
+        }
+    }
+    
+    // Units of one product that can still be reserved
+    private static final class Sku {
+        private static final AtomicIntegerFieldUpdater<Sku> AVAILABLE = AtomicIntegerFieldUpdater.newUpdater(Sku.class, "available");
+        
+        volatile int available;
+        
+        Sku(int available) {
+            this.available = available;
+        }
+        
+        // Takes the units if there are enough; retries only when another buyer
+        // changed the counter in between
+        boolean take(int quantity) {
+            while (true) {
+                int current = available;
+                if (current < quantity) {
+                    return false;
+                }
+                if (AVAILABLE.compareAndSet(this, current, current - quantity)) {
+                    return true;
+                }
+            }
+        }
+        
+        void give(int quantity) {
+            AVAILABLE.addAndGet(this, quantity);
+        }
+    }
+    
+    private final ConcurrentHashMap<Integer, Sku> skus = new ConcurrentHashMap<>();
+    private final Set<Reservation> held = ConcurrentHashMap.newKeySet();
+    private final int initialStock;
+    private final long timeoutNanos;
+    private final ScheduledExecutorService sweeper;
+    
+    public Inventory() {
+        this(Integer.getInteger("techtrove.stock", 100),
+             TimeUnit.SECONDS.toMillis(Long.getLong("techtrove.reservationSeconds", 60)));
+    }
+    
+    public Inventory(int initialStock, long timeoutMillis) {
+        this.initialStock = Math.max(0, initialStock);
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, timeoutMillis));
+        
+        // Sweeps a few times per timeout, so units come back at most a quarter late
+        sweeper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable task) {
+                Thread thread = new Thread(task, "reservation-expiry");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        long period = Math.max(1, timeoutMillis / 4);
+        sweeper.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                expireReservations();
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+    
+    private Sku sku(int productId) {
+        Sku sku = skus.get(productId);
+        if (sku == null) {
+            Sku created = new Sku(initialStock);
+            sku = skus.putIfAbsent(productId, created);
+            if (sku == null) {
+                sku = created;
+            }
+        }
+        return sku;
+    }
+    
+    // Units of the product that are neither sold nor reserved
+    public int getAvailable(Product product) {
+        Sku sku = skus.get(product.getId());
+        return sku != null ? sku.available : initialStock;
+    }
+    
+    // Sets the units of the product available for reservation, not counting any
+    // reserved now; for stocking a product before it goes on sale
+    public void setStock(Product product, int units) {
+        sku(product.getId()).available = Math.max(0, units);
+    }
+    
+    // Adds units to the product's stock; safe while it is on sale
+    public void addStock(Product product, int units) {
+        sku(product.getId()).give(units);
+    }
+    
+    // Reserves units of one product, or returns null if there are not enough left
+    public Reservation reserve(Product product, int quantity) {
+        return reserve(new int[] { product.getId() }, new int[] { quantity });
+    }
+    
+    // Reserves every line of the cart, or nothing and returns null if any product
+    // has too few units left. Call with the cart locked.
+    public Reservation reserve(Cart cart) {
+        int[] productIds = new int[cart.getLineCount()];
+        int[] quantities = new int[productIds.length];
+        int i = 0;
+        for (Cart.Line line : cart.getLines()) {
+            productIds[i] = line.getProduct().getId();
+            quantities[i++] = line.getQuantity();
+        }
+        return reserve(productIds, quantities);
+    }
+    
+    private Reservation reserve(int[] productIds, int[] quantities) {
+        if (!take(productIds, quantities)) {
+            return null;
+        }
+        Reservation reservation = new Reservation(productIds, quantities, System.nanoTime() + timeoutNanos);
+        held.add(reservation);
+        return reservation;
+    }
+    
+    // Takes the units of every line, or none of them
+    private boolean take(int[] productIds, int[] quantities) {
+        for (int i = 0; i < productIds.length; i++) {
+            if (!sku(productIds[i]).take(quantities[i])) {
+                give(productIds, quantities, i);
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private void give(int[] productIds, int[] quantities, int count) {
+        for (int i = 0; i < count; i++) {
+            sku(productIds[i]).give(quantities[i]);
+        }
+    }
+    
+    // Keeps the units reserved until the order is confirmed or released, even past
+    // the timeout. Call before writing the order; returns false if the reservation
+    // has already expired, and the order must then not be placed.
+    public boolean place(Reservation reservation) {
+        return reservation.state.compareAndSet(Reservation.HELD, Reservation.PLACING);
+    }
+    
+    // Marks the reserved units as sold; returns false if the reservation was
+    // released, in which case the units may have been sold to someone else
+    public boolean confirm(Reservation reservation) {
+        if (reservation.state.compareAndSet(Reservation.PLACING, Reservation.CONFIRMED)
+                || reservation.state.compareAndSet(Reservation.HELD, Reservation.CONFIRMED)) {
+            held.remove(reservation);
+            return true;
+        }
+        return reservation.state.get() == Reservation.CONFIRMED;
+    }
+    
+    // Puts the reserved units back on sale, unless they were confirmed
+    public void release(Reservation reservation) {
+        if (reservation.state.compareAndSet(Reservation.PLACING, Reservation.RELEASED)) {
+            giveBack(reservation);
+        } else {
+            expire(reservation);
+        }
+    }
+    
+    private void expire(Reservation reservation) {
+        if (reservation.state.compareAndSet(Reservation.HELD, Reservation.RELEASED)) {
+            giveBack(reservation);
+        }
+    }
+    
+    private void giveBack(Reservation reservation) {
+        held.remove(reservation);
+        give(reservation.productIds, reservation.quantities, reservation.productIds.length);
+    }
+    
+    // Number of reservations neither confirmed nor released, including those being placed
+    public int getHeldCount() {
+        return held.size();
+    }
+    
+    // Stops the background sweep. Stock can still be reserved, but held
+    // reservations only expire by calling expireReservations.
+    @Override
+    public void close() {
+        sweeper.shutdownNow();
+    }
+    
+    // Releases every reservation that has been held for the whole timeout and is
+    // not being placed
+    public void expireReservations() {
+        long now = System.nanoTime();
+        for (Reservation reservation : held) {
+            if (now - reservation.deadline >= 0) {
+                expire(reservation);
+            }
+        }
+    }
+}
@@ -0,0 +1,103 @@
+import java.util.Arrays;
+
+// Counts durations in power-of-two microsecond buckets: bucket 0 is under 2 us,
+// bucket i covers [2^i, 2^(i+1)) us and the last one everything from about 67 s up.
+// Recorded from the EDT and read over JMX, so every method is synchronized.
+public class LatencyHistogram implements LatencyHistogramMXBean {
+    private static final int BUCKETS = 27;
+    
+    private final long[] buckets = new long[BUCKETS];
+    private long count = 0;
+    private long totalNanos = 0;
+    private long maxNanos = 0;
+    
+    public synchronized void record(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        int bucket = micros < 2 ? 0 : Math.min(BUCKETS - 1, 63 - Long.numberOfLeadingZeros(micros));
+        buckets[bucket]++;
+        count++;
+        totalNanos += nanos;
+        maxNanos = Math.max(maxNanos, nanos);
+    }
+    
+    @Override
+    public synchronized long getCount() {
+        return count;
+    }
+    
+    @Override
+    public synchronized double getMeanMillis() {
+        return count == 0 ? 0 : totalNanos / 1e6 / count;
+    }
+    
+    @Override
+    public synchronized double getMaxMillis() {
+        return maxNanos / 1e6;
+    }
+    
+    @Override
+    public double getMedianMillis() {
+        return getPercentileMillis(50);
+    }
+    
+    @Override
+    public double get95thPercentileMillis() {
+        return getPercentileMillis(95);
+    }
+    
+    @Override
+    public double get99thPercentileMillis() {
+        return getPercentileMillis(99);
+    }
+    
+    public synchronized double getPercentileMillis(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        
+        long rank = (long) Math.ceil(count * percentile / 100);
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += buckets[bucket];
+            if (seen >= rank) {
+                // The top bucket has no upper bound; the largest value seen is the best guess
+                return bucket == BUCKETS - 1 ? maxNanos / 1e6 : Math.min(upperBoundMicros(bucket) / 1000.0, maxNanos / 1e6);
+            }
+        }
+        return maxNanos / 1e6;
+    }
+    
+    @Override
+    public String[] getBucketLabels() {
+        String[] labels = new String[BUCKETS];
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            labels[bucket] = bucket == BUCKETS - 1
+                ? ">= " + (upperBoundMicros(bucket - 1)) + " us"
+                : "< " + upperBoundMicros(bucket) + " us";
+        }
+        return labels;
+    }
+    
+    @Override
+    public synchronized long[] getBucketCounts() {
+        return Arrays.copyOf(buckets, BUCKETS);
+    }
+    
+    @Override
+    public synchronized void reset() {
+        Arrays.fill(buckets, 0);
+        count = 0;
+        totalNanos = 0;
+        maxNanos = 0;
+    }
+    
+    private static long upperBoundMicros(int bucket) {
+        return 2L << bucket;
+    }
+    
+    @Override
+    public synchronized String toString() {
+        return String.format("%d calls, mean %.1f ms, p50 %.1f ms, p95 %.1f ms, p99 %.1f ms, max %.1f ms",
+            count, getMeanMillis(), getMedianMillis(), get95thPercentileMillis(), get99thPercentileMillis(), getMaxMillis());
+    }
+}
@@ -0,0 +1,21 @@
+// View of a LatencyHistogram for JConsole / VisualVM; reset() starts it over
+public interface LatencyHistogramMXBean {
+    long getCount();
+    
+    double getMeanMillis();
+    
+    double getMaxMillis();
+    
+    // Percentiles are the upper bound of the bucket they fall in
+    double getMedianMillis();
+    
+    double get95thPercentileMillis();
+    
+    double get99thPercentileMillis();
+    
+    String[] getBucketLabels();
+    
+    long[] getBucketCounts();
+    
+    void reset();
+}
@@ -0,0 +1,60 @@
+// Rupee amounts as a whole number of paise, so sums stay exact however many
+// times they are added to and subtracted from. All methods work on plain longs
+// and allocate nothing except the formatted strings.
+public final class Money {
+    public static final long PAISE_PER_RUPEE = 100;
+    
+    private static final String SYMBOL = "₹";
+    
+    private Money() {
+    }
+    
+    // Rounds to the nearest paisa; only for literal prices such as 44999.99
+    public static long fromRupees(double rupees) {
+        return Math.round(rupees * PAISE_PER_RUPEE);
+    }
+    
+    public static long add(long a, long b) {
+        return Math.addExact(a, b);
+    }
+    
+    public static long subtract(long a, long b) {
+        return Math.subtractExact(a, b);
+    }
+    
+    public static long multiply(long paise, int quantity) {
+        return Math.multiplyExact(paise, (long) quantity);
+    }
+    
+    // percent / 100 of the amount, rounded half up to the nearest paisa
+    public static long percent(long paise, int percent) {
+        long scaled = Math.multiplyExact(paise, (long) percent);
+        long result = scaled / 100;
+        long remainder = Math.abs(scaled % 100);
+        if (remainder >= 50) {
+            result += scaled < 0 ? -1 : 1;
+        }
+        return result;
+    }
+    
+    // Same text as String.format("₹%.2f", rupees) without going through Formatter
+    public static String format(long paise) {
+        StringBuilder text = new StringBuilder(24);
+        text.append(SYMBOL);
+        if (paise < 0) {
+            text.append('-');
+        }
+        
+        // Work with the negative value so Long.MIN_VALUE does not overflow
+        long negative = paise < 0 ? paise : -paise;
+        long rupees = -(negative / PAISE_PER_RUPEE);
+        int fraction = (int) -(negative % PAISE_PER_RUPEE);
+        
+        text.append(rupees).append('.');
+        if (fraction < 10) {
+            text.append('0');
+        }
+        text.append(fraction);
+        return text.toString();
+    }
+}
@@ -1,10 +1,30 @@
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.BiConsumer;
 import javax.swing.border.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import java.awt.image.BufferedImage;
-import javax.imageio.ImageIO;
 import java.io.File;
 import java.io.IOException;
 
@@ -14,20 +34,123 @@ public class OnlineShopApp {
     
     // Panels
     private JPanel productPanel;
+    private JScrollPane productScrollPane;
+    private ProductGrid productGrid;
+    private JPanel bannerSlot;
+    private final HashMap<String, JPanel> categoryBanners = new HashMap<>();
     private JPanel cartPanel;
+    private JPanel cartItemsPanel;
+    private JPanel emptyCartPanel;
+    private final HashMap<Integer, CartRow> cartRows = new HashMap<>();
     
     // Components
+    private JLabel titleLabel;
+    private JLabel subtitleLabel;
+    private JLabel itemsValueLabel;
     private JLabel totalLabel;
     private JButton checkoutButton;
     
     // Data
-    private ArrayList<Product> products;
-    private ArrayList<Product> cart;
-    private double totalAmount = 0.0;
+    private Catalog catalog;
+    
+    // Prices after the promotions in promotions.txt, and the cart priced with them.
+    // The timer shows the new prices when a promotion starts or ends.
+    private Pricing pricing;
+    private Cart cart;
+    private Timer pricingTimer;
+    private int shownPricingVersion;
+    
+    // Decoded and scaled images shared by cards, cart rows, banners and dialogs
+    private final ImageCache imageCache = new ImageCache();
+    
+    // Decodes images off the EDT; cards cancel their load when they are recycled
+    private final ImageLoader imageLoader = new ImageLoader(imageCache);
+    
+    // Catalog file, CSV or JSON lines; override with -Dtechtrove.catalog=path.
+    // A snapshot next to it (products.snapshot) is opened instead when it is up to date.
+    static final String CATALOG_FILE = System.getProperty("techtrove.catalog", "products.csv");
+    
+    // Journal of placed orders; override with -Dtechtrove.orders=path
+    static final String ORDERS_FILE = System.getProperty("techtrove.orders", "orders.journal");
+    
+    // Null when the journal could not be opened; checkout is refused then
+    private OrderJournal orderJournal;
+    
+    // Units in stock; checkout reserves the cart's units until the order is saved
+    private final Inventory inventory = new Inventory();
+    private static final int LOW_STOCK = 10;
+    
+    // Review stream, one "productId,stars" line per review; override with
+    // -Dtechtrove.reviews=path. Ratings count every review read so far.
+    static final String REVIEWS_FILE = System.getProperty("techtrove.reviews", "reviews.log");
+    private final Reviews reviews = new Reviews(REVIEWS_FILE, new Reviews.Listener() {
+        @Override
+        public void ratingsChanged(final BitSet productIds) {
+            SwingUtilities.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                    showRatings(productIds);
+                }
+            });
+        }
+    });
+    
+    // While the catalog is loading the product panel is refreshed at most this often
+    private static final long CATALOG_REFRESH_MS = 500;
+    
+    // Products read before they are handed to the EDT together
+    private static final int CATALOG_BATCH_SIZE = 1000;
     
     // Current category
     private String currentCategory = "All Electronics";
     
+    // Current search query, or null when browsing a category
+    private String currentQuery = null;
+    private static final int SEARCH_RESULT_LIMIT = 200;
+    
+    // Live search: keystrokes are debounced and queries run on a background thread
+    private static final int SEARCH_DEBOUNCE_MS = 250;
+    private Timer searchDebounceTimer;
+    private final ExecutorService searchExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "search");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    private Future<?> pendingSearch;
+    private int searchGeneration = 0;
+    private SearchIndex.Result lastSearchResult;
+    
+    // Sort order and facet filters applied to the category or search results
+    private final FacetEngine.Filter facetFilter = new FacetEngine.Filter();
+    private JComboBox<FacetEngine.Sort> sortCombo;
+    private JComboBox<String> departmentCombo;
+    private JComboBox<String> priceCombo;
+    private JComboBox<String> ratingCombo;
+    private boolean updatingFacets = false;
+    
+    // Facet counts are taken in the background; the last ones stay up until then
+    private FacetEngine.Result facetCounts;
+    
+    // Products are shown a page at a time; the next page is read in the background
+    // when the grid scrolls near the end of the loaded ones
+    private static final int PAGE_SIZE = 20;
+    private FacetEngine.Cursor productCursor;
+    private int[] loadedIds = new int[0];
+    private int loadedCount = 0;
+    private boolean loadingPage = false;
+    
+    // Detail dialog, reused for every product, and the views most recently shown in it
+    // (least recent first). Views are prebuilt while the pointer rests on a card.
+    private static final int DETAIL_CACHE_SIZE = Integer.getInteger("techtrove.detailCacheSize", 16);
+    private static final int DETAIL_PREWARM_DELAY_MS = 150;
+    private JDialog detailDialog;
+    private final LinkedHashMap<Product, DetailView> detailViews = new LinkedHashMap<>(16, 0.75f, true);
+    private Timer prewarmTimer;
+    private Product prewarmProduct;
+    
     // Colors
     private final Color AMAZON_BLUE = new Color(19, 25, 33);
     private final Color AMAZON_LIGHT_BLUE = new Color(35, 47, 62);
@@ -36,6 +159,24 @@ public class OnlineShopApp {
     private final Color BACKGROUND_COLOR = new Color(243, 243, 243);
     private final Color CARD_COLOR = Color.WHITE;
     
+    // Without a window, for building cards and order summaries off-screen
+    // (see the benchmarks module)
+    OnlineShopApp(Catalog catalog) {
+        this.catalog = catalog;
+        catalog.getFacets().setReviews(reviews);
+        this.pricing = Pricing.load("promotions.txt", catalog.getCategoryIndex());
+        this.cart = new Cart(pricing);
+    }
+    
+    // Stops the inventory, review, image and search threads of an app built without
+    // a window; the window's app runs until the process exits
+    void close() {
+        inventory.close();
+        reviews.close();
+        imageLoader.shutdown();
+        searchExecutor.shutdownNow();
+    }
+    
     public OnlineShopApp() {
         // Initialize data
         initializeData();
@@ -65,8 +206,10 @@ public class OnlineShopApp {
         
         // Add panels to frame
         // Create split pane for products and cart
-        JSplitPane splitPane = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT, 
-                                             new JScrollPane(productPanel), 
+        productScrollPane = new JScrollPane(productPanel);
+        productScrollPane.getVerticalScrollBar().setUnitIncrement(16);
+        JSplitPane splitPane = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT,
+                                             productScrollPane,
                                              new JScrollPane(cartPanel));
         splitPane.setDividerLocation(700);
         splitPane.setDividerSize(5);
@@ -76,9 +219,14 @@ public class OnlineShopApp {
         // Create footer
         createFooter();
         
+        schedulePriceChange();
+        
         // Show the window
         frame.setLocationRelativeTo(null);
         frame.setVisible(true);
+        
+        loadCatalog(CATALOG_FILE);
+        reviews.start();
     }
     
     private void createHeader() {
@@ -94,6 +242,7 @@ public class OnlineShopApp {
         headerLabel.addMouseListener(new MouseAdapter() {
             @Override
             public void mouseClicked(MouseEvent e) {
+                EdtMonitor.tag("categoryClick");
                 showCategory("All Electronics");
             }
         });
@@ -109,6 +258,43 @@ public class OnlineShopApp {
         searchPanel.add(searchField, BorderLayout.CENTER);
         searchPanel.add(searchButton, BorderLayout.EAST);
         
+        // Search as the user types, once they pause
+        searchDebounceTimer = new Timer(SEARCH_DEBOUNCE_MS, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                startSearch(searchField.getText());
+            }
+        });
+        searchDebounceTimer.setRepeats(false);
+        
+        searchField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                searchDebounceTimer.restart();
+            }
+            
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                searchDebounceTimer.restart();
+            }
+            
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                searchDebounceTimer.restart();
+            }
+        });
+        
+        // Search right away on button click or Enter
+        ActionListener searchListener = new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                searchDebounceTimer.stop();
+                startSearch(searchField.getText());
+            }
+        };
+        searchField.addActionListener(searchListener);
+        searchButton.addActionListener(searchListener);
+        
         // Navigation links
         JPanel navPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
         navPanel.setOpaque(false);
@@ -120,6 +306,12 @@ public class OnlineShopApp {
         JLabel ordersLabel = new JLabel("Returns & Orders");
         ordersLabel.setForeground(Color.WHITE);
         ordersLabel.setCursor(new Cursor(Cursor.HAND_CURSOR));
+        ordersLabel.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                showOrderHistory();
+            }
+        });
         
         navPanel.add(accountLabel);
         navPanel.add(Box.createHorizontalStrut(20));
@@ -135,7 +327,7 @@ public class OnlineShopApp {
         navBarPanel.setBackground(AMAZON_LIGHT_BLUE);
         navBarPanel.setBorder(BorderFactory.createEmptyBorder(5, 15, 5, 15));
         
-        String[] categories = {"All Electronics", "Smartphones", "Laptops", "Audio", "Headphones", "Speakers", "Cameras", "Wearables", "Gaming"};
+        List<String> categories = catalog.getCategoryIndex().getCategories();
         for (String category : categories) {
             JLabel categoryLabel = new JLabel(category);
             categoryLabel.setForeground(Color.WHITE);
@@ -157,6 +349,7 @@ public class OnlineShopApp {
                 
                 @Override
                 public void mouseClicked(MouseEvent e) {
+                    EdtMonitor.tag("categoryClick");
                     showCategory(category);
                 }
             });
@@ -173,31 +366,102 @@ public class OnlineShopApp {
     }
     
     private void showCategory(String category) {
+        long start = System.nanoTime();
         currentCategory = category;
+        currentQuery = null;
+        facetFilter.category = category;
         refreshProductPanel();
         
         // Update title based on category
         frame.setTitle(" TechTrove - " + category + " ");
+        EdtMonitor.record("showCategory", start);
     }
     
-    private void refreshProductPanel() {
-        // Remove the current product panel from the frame
-        Component[] components = frame.getContentPane().getComponents();
-        for (Component component : components) {
-            if (component instanceof JSplitPane) {
-                JSplitPane splitPane = (JSplitPane) component;
-                JScrollPane scrollPane = (JScrollPane) splitPane.getLeftComponent();
-                
-                // Create a new product panel
-                createProductPanel();
+    private void startSearch(String text) {
+        final String query = text.trim();
+        
+        // A newer keystroke supersedes any search that is still running
+        if (pendingSearch != null) {
+            pendingSearch.cancel(true);
+            pendingSearch = null;
+        }
+        final int generation = ++searchGeneration;
+        
+        if (query.isEmpty()) {
+            lastSearchResult = null;
+            if (currentQuery != null) {
+                showCategory(currentCategory);
+            }
+            return;
+        }
+        
+        // When the query only got longer, the index narrows down the previous matches
+        final SearchIndex.Result previous = lastSearchResult;
+        final SearchIndex searchIndex = catalog.getSearchIndex();
+        pendingSearch = searchExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                final SearchIndex.Result result;
+                try {
+                    result = searchIndex.search(query, SEARCH_RESULT_LIMIT, previous);
+                } catch (CancellationException e) {
+                    return;
+                }
                 
-                // Update the scroll pane with the new product panel
-                scrollPane.setViewportView(productPanel);
-                scrollPane.revalidate();
-                scrollPane.repaint();
-                break;
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation == searchGeneration) {
+                            pendingSearch = null;
+                            showSearchResults(query, result);
+                        }
+                    }
+                });
             }
+        });
+    }
+    
+    private void showSearchResults(String query, SearchIndex.Result result) {
+        // A new search covers every department until one is picked from the facets
+        if (currentQuery == null) {
+            facetFilter.category = CategoryIndex.ALL_CATEGORIES;
         }
+        currentQuery = query;
+        lastSearchResult = result;
+        refreshProductPanel();
+        
+        frame.setTitle(" TechTrove - Search: " + query + " ");
+    }
+    
+    private void refreshProductPanel() {
+        updateProductPanel();
+        
+        // Start the new listing from the top
+        productScrollPane.getViewport().setViewPosition(new Point(0, 0));
+        productPanel.revalidate();
+        productPanel.repaint();
+    }
+    
+    // Creates a label that shows a placeholder until the image has been decoded in the background
+    private JLabel createImageLabel(String imagePath, int width, int height, boolean keepAspect, ArrayList<Future<?>> loads) {
+        final JLabel imageLabel = new JLabel(ImageLoader.placeholder(Math.min(width, height), height));
+        
+        ImageLoader.Callback callback = new ImageLoader.Callback() {
+            @Override
+            public void imageLoaded(BufferedImage image) {
+                imageLabel.setIcon(new ImageIcon(image));
+                imageLabel.revalidate();
+            }
+        };
+        
+        Future<?> load = keepAspect
+            ? imageLoader.loadFitted(imagePath, width, height, callback)
+            : imageLoader.loadScaled(imagePath, width, height, callback);
+        if (load != null && loads != null) {
+            loads.add(load);
+        }
+        
+        return imageLabel;
     }
     
     private void createFooter() {
@@ -213,25 +477,285 @@ public class OnlineShopApp {
     }
     
     private void initializeData() {
-        // Initialize product list with electronics products
-        products = new ArrayList<>();
-        products.add(new Product("Premium Wireless Headphones", 12999.99, "Experience immersive sound with our noise-cancelling wireless headphones featuring 30-hour battery life, premium sound quality, and comfortable over-ear design. Perfect for music lovers and travelers.", "images/headphones.jpeg", 4.7, 328));
-        products.add(new Product("Ultra HD Smart TV 55\"", 49999.99, "Transform your living room with this 55-inch 4K Ultra HD Smart TV featuring HDR, Dolby Vision, built-in voice assistant and seamless streaming. Experience cinema-quality viewing with vibrant colors and crystal-clear clarity.", "images/tablet.jpeg", 4.5, 156));
-        products.add(new Product("Professional Gaming Laptop", 78999.99, "Dominate the competition with this high-performance gaming laptop featuring 16GB RAM, 512GB SSD, dedicated RTX graphics card and 15.6\" 144Hz display. Perfect for serious gamers and content creators.", "images/laptop.jpg", 4.8, 412));
-        products.add(new Product("Smart Fitness Tracker", 8499.99, "Monitor your health 24/7 with this water-resistant fitness tracker featuring heart rate monitor, sleep tracking, GPS, and 7-day battery life. Stay fit and connected with smartphone notifications.", "images/smartphone.jpg", 4.3, 275));
-        products.add(new Product("Waterproof Bluetooth Speaker", 5999.99, "Take your music anywhere with this waterproof portable speaker featuring 24-hour battery life, deep bass, and 360° sound. Perfect for outdoor adventures, beach trips, and pool parties.", "images/speaker.jpeg", 4.6, 189));
-        products.add(new Product("Digital Drawing Tablet", 15999.99, "Unleash your creativity with this professional drawing tablet featuring pressure-sensitive pen, customizable shortcuts, and large active area. Perfect for digital artists, designers, and photographers.", "images/drawing table.jpeg", 4.4, 97));
-        products.add(new Product("4K Security Camera System", 24999.99, "Protect your home with this advanced security camera system featuring 4K resolution, night vision, motion detection, two-way audio, and cloud storage. Monitor your property from anywhere.", "images/camera.jpeg", 4.2, 143));
-        products.add(new Product("Wireless Charging Pad", 2499.99, "Eliminate cable clutter with this fast wireless charging pad compatible with all Qi-enabled devices. Features LED indicators and overheating protection for safe, efficient charging.", "images/charging-pod.jpeg", 4.5, 211));
-        products.add(new Product("Smart Home Hub", 7999.99, "Control your entire smart home ecosystem with this central hub featuring voice control, automation capabilities, and compatibility with thousands of smart devices from leading brands.", "images/alexa.jpeg", 4.3, 112));
-        products.add(new Product("True Wireless Earbuds", 9999.99, "Experience freedom with these true wireless earbuds featuring active noise cancellation, sweat resistance, touch controls, and 24-hour battery life with premium charging case.", "images/earbuds.jpeg", 4.6, 247));
-        products.add(new Product("Gaming Console Pro", 44999.99, "Level up your gaming experience with this next-gen console featuring 1TB storage, 4K gaming at 120fps, ray tracing, fast loading times, and an exclusive game library.", "images/Gaming Console Pro.jpg", 4.9, 321));
-        products.add(new Product("Professional DSLR Camera", 89999.99, "Capture perfect moments with this 24.1MP DSLR camera featuring 4K video recording, interchangeable lenses, advanced autofocus system, and professional-grade image quality.", "images/dslr.jpeg", 4.8, 68));
-        products.add(new Product("Mechanical Gaming Keyboard", 8999.99, "Gain a competitive edge with this mechanical gaming keyboard featuring customizable RGB lighting, programmable macro keys, anti-ghosting technology, and durable construction.", "images/keyboard.png", 4.7, 184));
-        products.add(new Product("Wireless Gaming Mouse", 6499.99, "Achieve precision control with this wireless gaming mouse featuring adjustable DPI settings, programmable buttons, ergonomic design, and ultra-low latency for competitive gaming.", "images/mouse.jpeg", 4.5, 94));
-        
-        // Initialize empty cart
-        cart = new ArrayList<>();
+        // Products are streamed in from the catalog file once the window is showing
+        catalog = new Catalog(CategoryIndex.load("categories.txt"), FeatureSpecs.load("features.txt"));
+        catalog.getFacets().setReviews(reviews);
+        pricing = Pricing.load("promotions.txt", catalog.getCategoryIndex());
+        cart = new Cart(pricing);
+        shownPricingVersion = pricing.getVersion();
+        
+        // Replaying the journal rebuilds the order history
+        try {
+            long start = System.nanoTime();
+            orderJournal = OrderJournal.open(ORDERS_FILE);
+            System.err.println("Read " + orderJournal.size() + " orders from " + ORDERS_FILE + " in "
+                + (System.nanoTime() - start) / 1000000 + " ms");
+        } catch (IOException e) {
+            System.err.println("Error opening order journal: " + ORDERS_FILE);
+            e.printStackTrace();
+        }
+    }
+    
+    // Opens the catalog snapshot if there is an up-to-date one, otherwise streams the text file
+    private void loadCatalog(String path) {
+        String snapshotPath = findSnapshot(path);
+        if (snapshotPath != null) {
+            loadSnapshot(snapshotPath, path);
+        } else {
+            streamCatalog(path);
+        }
+    }
+    
+    // "products.csv" -> "products.snapshot", if it exists and is not older than the text file
+    static String findSnapshot(String path) {
+        if (path.endsWith(".snapshot")) {
+            return path;
+        }
+        
+        int dot = path.lastIndexOf('.');
+        String snapshotPath = (dot > path.lastIndexOf(File.separatorChar) ? path.substring(0, dot) : path) + ".snapshot";
+        File snapshot = new File(snapshotPath);
+        if (snapshot.isFile() && snapshot.lastModified() >= new File(path).lastModified()) {
+            return snapshotPath;
+        }
+        return null;
+    }
+    
+    // Maps the snapshot and reads its category masks on a background thread, then
+    // shows the products; only the search index is built after that. Falls back to
+    // the text file if the snapshot cannot be used.
+    private void loadSnapshot(final String path, final String catalogPath) {
+        final long start = System.nanoTime();
+        final CategoryIndex categoryIndex = catalog.getCategoryIndex();
+        SwingWorker<int[], Void> worker = new SwingWorker<int[], Void>() {
+            private CatalogSnapshot snapshot;
+            
+            @Override
+            protected int[] doInBackground() throws IOException {
+                snapshot = CatalogSnapshot.open(path);
+                return snapshot.readCategoryMasks(categoryIndex);
+            }
+            
+            @Override
+            protected void done() {
+                int[] masks = null;
+                try {
+                    masks = get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    System.err.println("Error loading catalog snapshot: " + path);
+                    e.getCause().printStackTrace();
+                }
+                if (masks == null) {
+                    streamCatalog(catalogPath);
+                    return;
+                }
+                
+                // The snapshot becomes the catalog's store, so no product is copied or decoded here
+                Catalog snapshotCatalog = new Catalog(categoryIndex, catalog.getFeatureSpecs(), snapshot);
+                snapshotCatalog.setCategoryMasks(masks);
+                snapshotCatalog.getFacets().setReviews(reviews);
+                catalog = snapshotCatalog;
+                pricing.invalidate();
+                catalogChanged();
+                System.err.println("Opened " + snapshot.size() + " products from " + path + " in "
+                    + (System.nanoTime() - start) / 1000000 + " ms");
+                indexSnapshot(snapshotCatalog, path);
+            }
+        };
+        worker.execute();
+    }
+    
+    // Builds the search index of a catalog opened from a snapshot
+    private void indexSnapshot(final Catalog snapshotCatalog, final String path) {
+        SwingWorker<String, Void> worker = new SwingWorker<String, Void>() {
+            @Override
+            protected String doInBackground() {
+                long indexStart = System.nanoTime();
+                for (int id = 0; id < snapshotCatalog.size(); id++) {
+                    snapshotCatalog.indexForSearch(snapshotCatalog.get(id));
+                }
+                return "Indexed " + snapshotCatalog.size() + " products for search in "
+                    + (System.nanoTime() - indexStart) / 1000000 + " ms";
+            }
+            
+            @Override
+            protected void done() {
+                try {
+                    System.err.println(get());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    System.err.println("Error indexing catalog snapshot: " + path);
+                    e.getCause().printStackTrace();
+                }
+                
+                // Search again so results include products indexed after the last search
+                if (currentQuery != null) {
+                    startSearch(currentQuery);
+                }
+            }
+        };
+        worker.execute();
+    }
+    
+    // Reads the catalog file on a background thread, which also works out each
+    // product's categories and features and indexes it for search. The EDT only
+    // appends each batch to the store, so the first page is shown while the rest
+    // of the file is loading and the window stays responsive however large it is.
+    private void streamCatalog(final String path) {
+        final Catalog loading = catalog;
+        final CategoryIndex categoryIndex = loading.getCategoryIndex();
+        final FeatureSpecs featureSpecs = loading.getFeatureSpecs();
+        SwingWorker<String, Void> worker = new SwingWorker<String, Void>() {
+            // Only used on the EDT
+            private long lastRefresh = 0;
+            
+            @Override
+            protected String doInBackground() throws Exception {
+                boolean masks = categoryIndex.supportsMasks();
+                CatalogLoader.Row[] rows = new CatalogLoader.Row[CATALOG_BATCH_SIZE];
+                int[] categoryMasks = new int[CATALOG_BATCH_SIZE];
+                int[] specs = new int[CATALOG_BATCH_SIZE];
+                try (CatalogLoader loader = new CatalogLoader(path)) {
+                    int count = 0;
+                    boolean more = true;
+                    while (more) {
+                        more = loader.next();
+                        if (more) {
+                            rows[count] = loader.getRow();
+                            categoryMasks[count] = masks ? categoryIndex.getMask(loader.getName(), loader.getDescription()) : 0;
+                            specs[count] = featureSpecs.classify(loader.getName());
+                            count++;
+                        }
+                        if (count == CATALOG_BATCH_SIZE || (!more && count > 0)) {
+                            addBatch(rows, categoryMasks, specs, count);
+                            count = 0;
+                        }
+                    }
+                    return loader.getThroughputSummary();
+                }
+            }
+            
+            // Appends the batch on the EDT and waits for it, then indexes the products
+            // here, so a search never returns a product the catalog does not have yet
+            private void addBatch(final CatalogLoader.Row[] rows, final int[] categoryMasks, final int[] specs,
+                                  final int count) throws Exception {
+                final int[] ids = new int[count];
+                SwingUtilities.invokeAndWait(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (int i = 0; i < count; i++) {
+                            CatalogLoader.Row row = rows[i];
+                            ids[i] = loading.append(row.name, row.price, row.description, row.imagePath,
+                                                    row.rating, row.reviewCount, categoryMasks[i], specs[i]);
+                        }
+                        
+                        // Show the first batch right away, then refresh at most every CATALOG_REFRESH_MS
+                        long now = System.currentTimeMillis();
+                        if (now - lastRefresh >= CATALOG_REFRESH_MS) {
+                            lastRefresh = now;
+                            catalogChanged();
+                        }
+                    }
+                });
+                
+                for (int i = 0; i < count; i++) {
+                    CatalogLoader.Row row = rows[i];
+                    loading.indexForSearch(ids[i], row.name, row.description, row.rating, row.reviewCount, specs[i]);
+                }
+            }
+            
+            @Override
+            protected void done() {
+                try {
+                    System.err.println(get());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    System.err.println("Error loading catalog: " + path);
+                    e.getCause().printStackTrace();
+                }
+                
+                catalogChanged();
+                
+                // Search again so results include products indexed after the last search
+                if (currentQuery != null) {
+                    startSearch(currentQuery);
+                }
+            }
+        };
+        worker.execute();
+    }
+    
+    // Shows newly loaded products without moving the current scroll position
+    private void catalogChanged() {
+        if (currentQuery == null) {
+            // Keep as many products loaded as before so the grid does not get shorter
+            updateProductPanel(loadedCount);
+            productPanel.revalidate();
+            productPanel.repaint();
+        }
+    }
+    
+    // Wakes up when the next promotion starts or ends; timers cannot wait longer
+    // than Integer.MAX_VALUE ms, so a later change is waited for in steps
+    private void schedulePriceChange() {
+        long delay = pricing.getNextChange() - System.currentTimeMillis();
+        if (pricingTimer == null) {
+            pricingTimer = new Timer(0, new ActionListener() {
+                @Override
+                public void actionPerformed(ActionEvent e) {
+                    pricesChanged();
+                    schedulePriceChange();
+                }
+            });
+            pricingTimer.setRepeats(false);
+        }
+        pricingTimer.setInitialDelay((int) Math.max(0, Math.min(delay, Integer.MAX_VALUE)));
+        pricingTimer.restart();
+    }
+    
+    // Reprices the cart and rebuilds whatever shows a price
+    private void pricesChanged() {
+        int version = pricing.getVersion();
+        if (version == shownPricingVersion) {
+            return;
+        }
+        shownPricingVersion = version;
+        
+        cart.reprice();
+        for (DetailView view : detailViews.values()) {
+            view.cancelImageLoads();
+        }
+        detailViews.clear();
+        productGrid.releaseCards();
+        productGrid.setProducts(productGrid.getProducts());
+    }
+    
+    // Redraws the ratings of the cards in view and the cached detail views whose
+    // products have new reviews; cards bound later read the current ratings. The
+    // rating facet and sorts pick up the new ratings on the next query.
+    private void showRatings(BitSet productIds) {
+        catalog.getFacets().ratingsChanged(productIds);
+        for (Map.Entry<Integer, JComponent> entry : productGrid.getBoundCards().entrySet()) {
+            if (entry.getKey() >= 0 && productIds.get(entry.getKey())) {
+                ((ProductCard) entry.getValue()).showRating();
+            }
+        }
+        for (Map.Entry<Product, DetailView> entry : detailViews.entrySet()) {
+            if (entry.getKey().getId() >= 0 && productIds.get(entry.getKey().getId())) {
+                showRating(entry.getValue(), entry.getKey());
+            }
+        }
+    }
+    
+    // Fills the first stars for a rating; part of a star shows as empty
+    private static void setStars(JLabel[] starLabels, double rating) {
+        for (int i = 1; i <= starLabels.length; i++) {
+            starLabels[i - 1].setText(i <= Math.floor(rating) ? "★" : "☆");
+        }
     }
     
     private void createProductPanel() {
@@ -244,16 +768,11 @@ public class OnlineShopApp {
         JPanel titlePanel = new JPanel(new BorderLayout());
         titlePanel.setOpaque(false);
         
-        JLabel titleLabel = new JLabel(currentCategory);
+        titleLabel = new JLabel();
         titleLabel.setFont(new Font("Arial", Font.BOLD, 24));
         titleLabel.setForeground(new Color(17, 17, 17));
         
-        String subtitleText = "Top-rated tech products at amazing prices";
-        if (!currentCategory.equals("All Electronics")) {
-            subtitleText = "Browse our selection of premium " + currentCategory.toLowerCase();
-        }
-        
-        JLabel subtitleLabel = new JLabel(subtitleText);
+        subtitleLabel = new JLabel();
         subtitleLabel.setFont(new Font("Arial", Font.PLAIN, 14));
         subtitleLabel.setForeground(new Color(86, 86, 86));
         
@@ -262,31 +781,273 @@ public class OnlineShopApp {
         titlePanel.setAlignmentX(Component.LEFT_ALIGNMENT);
         titlePanel.setMaximumSize(new Dimension(Integer.MAX_VALUE, 60));
         productPanel.add(titlePanel);
-        productPanel.add(Box.createRigidArea(new Dimension(0, 20)));
+        productPanel.add(Box.createRigidArea(new Dimension(0, 10)));
+        
+        productPanel.add(createFacetBar());
+        productPanel.add(Box.createRigidArea(new Dimension(0, 15)));
+        
+        // Slot for the category banner; banners are built once per category and reused
+        bannerSlot = new JPanel(new BorderLayout());
+        bannerSlot.setOpaque(false);
+        bannerSlot.setBorder(BorderFactory.createEmptyBorder(0, 0, 20, 0));
+        bannerSlot.setAlignmentX(Component.LEFT_ALIGNMENT);
+        productPanel.add(bannerSlot);
+        
+        // Virtualized grid: only cards in view are built, and they are recycled while scrolling
+        productGrid = new ProductGrid(cardFactory, 2, 15, 15, 260, 480);
+        productGrid.setAlignmentX(Component.LEFT_ALIGNMENT);
+        productGrid.setNearEndListener(new Runnable() {
+            @Override
+            public void run() {
+                loadNextPage();
+            }
+        });
+        productPanel.add(productGrid);
         
-        // Add category banner if not showing all products
-        if (!currentCategory.equals("All Electronics")) {
-            JPanel bannerPanel = createCategoryBanner(currentCategory);
-            productPanel.add(bannerPanel);
-            productPanel.add(Box.createRigidArea(new Dimension(0, 20)));
+        updateProductPanel();
+    }
+    
+    private JPanel createFacetBar() {
+        JPanel facetBar = new JPanel(new FlowLayout(FlowLayout.LEFT, 6, 0));
+        facetBar.setOpaque(false);
+        facetBar.setAlignmentX(Component.LEFT_ALIGNMENT);
+        
+        sortCombo = new JComboBox<>(FacetEngine.Sort.values());
+        departmentCombo = new JComboBox<>();
+        priceCombo = new JComboBox<>();
+        ratingCombo = new JComboBox<>();
+        
+        ActionListener facetListener = new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                if (updatingFacets) {
+                    return;
+                }
+                
+                facetFilter.sort = (FacetEngine.Sort) sortCombo.getSelectedItem();
+                facetFilter.priceRange = priceCombo.getSelectedIndex() - 1;
+                // Options are "Any", then 4 down to 1 stars and up
+                int ratingIndex = ratingCombo.getSelectedIndex();
+                facetFilter.minRating = ratingIndex <= 0 ? 0 : FacetEngine.MAX_RATING - ratingIndex;
+                
+                String department = catalog.getCategoryIndex().getCategories().get(Math.max(0, departmentCombo.getSelectedIndex()));
+                if (currentQuery == null && !department.equals(currentCategory)) {
+                    // Same as picking the category from the header
+                    showCategory(department);
+                } else {
+                    facetFilter.category = department;
+                    refreshProductPanel();
+                }
+            }
+        };
+        
+        addFacet(facetBar, "Sort by:", sortCombo, facetListener);
+        addFacet(facetBar, "Department:", departmentCombo, facetListener);
+        addFacet(facetBar, "Price:", priceCombo, facetListener);
+        addFacet(facetBar, "Customer Review:", ratingCombo, facetListener);
+        
+        facetBar.setMaximumSize(new Dimension(Integer.MAX_VALUE, facetBar.getPreferredSize().height));
+        return facetBar;
+    }
+    
+    private void addFacet(JPanel facetBar, String title, JComboBox<?> combo, ActionListener listener) {
+        JLabel label = new JLabel(title);
+        label.setFont(new Font("Arial", Font.PLAIN, 13));
+        combo.setFont(new Font("Arial", Font.PLAIN, 13));
+        combo.addActionListener(listener);
+        facetBar.add(label);
+        facetBar.add(combo);
+        facetBar.add(Box.createHorizontalStrut(8));
+    }
+    
+    // Refills the facet options with the counts each one would leave; without counts
+    // only the selections are brought up to date
+    private void updateFacetBar(FacetEngine.Result facets) {
+        updatingFacets = true;
+        
+        sortCombo.setSelectedItem(facetFilter.sort);
+        
+        List<String> categories = catalog.getCategoryIndex().getCategories();
+        String[] departments = new String[categories.size()];
+        for (int i = 0; i < departments.length; i++) {
+            departments[i] = categories.get(i) + countSuffix(facets != null ? facets.getCategoryCounts() : null, i);
+        }
+        departmentCombo.setModel(new DefaultComboBoxModel<>(departments));
+        departmentCombo.setSelectedIndex(Math.max(0, categories.indexOf(facetFilter.category)));
+        
+        int[] priceCounts = facets != null ? facets.getPriceRangeCounts() : null;
+        String[] prices = new String[FacetEngine.getPriceRangeCount() + 1];
+        prices[0] = "Any price" + countSuffix(priceCounts, FacetEngine.getPriceRangeCount());
+        for (int range = 0; range < FacetEngine.getPriceRangeCount(); range++) {
+            prices[range + 1] = FacetEngine.getPriceRangeLabel(range) + countSuffix(priceCounts, range);
         }
+        priceCombo.setModel(new DefaultComboBoxModel<>(prices));
+        priceCombo.setSelectedIndex(facetFilter.priceRange + 1);
+        
+        int[] ratingCounts = facets != null ? facets.getRatingCounts() : null;
+        String[] ratings = new String[FacetEngine.MAX_RATING];
+        ratings[0] = "Any rating" + countSuffix(ratingCounts, 0);
+        for (int i = 1; i < ratings.length; i++) {
+            int stars = FacetEngine.MAX_RATING - i;
+            ratings[i] = stars + "★ & up" + countSuffix(ratingCounts, stars);
+        }
+        ratingCombo.setModel(new DefaultComboBoxModel<>(ratings));
+        ratingCombo.setSelectedIndex(facetFilter.minRating == 0 ? 0 : FacetEngine.MAX_RATING - facetFilter.minRating);
         
-        // Grid layout for products
-        JPanel productsGrid = new JPanel(new GridLayout(0, 2, 15, 15));
-        productsGrid.setOpaque(false);
+        updatingFacets = false;
+    }
+    
+    private static String countSuffix(int[] counts, int index) {
+        return counts != null && index < counts.length ? " (" + counts[index] + ")" : "";
+    }
+    
+    // Updates the existing product panel for the current category or search in place.
+    // Only the first page is read here, at least minimumCount products when refreshing
+    // a listing that has already been scrolled.
+    private void updateProductPanel() {
+        updateProductPanel(0);
+    }
+    
+    private void updateProductPanel(int minimumCount) {
+        // Sort and filter the category or search results; only product IDs are moved around
+        FacetEngine.Cursor cursor = catalog.getFacets().query(
+            currentQuery != null ? lastSearchResult.getProductIds() : null, facetFilter);
+        productCursor = cursor;
+        loadingPage = false;
+        loadedIds = cursor.next(Math.max(PAGE_SIZE, minimumCount));
+        loadedCount = loadedIds.length;
+        
+        updateFacetBar(facetCounts);
+        countFacets(cursor);
+        
+        boolean inDepartment = !facetFilter.category.equals(CategoryIndex.ALL_CATEGORIES);
+        if (currentQuery != null) {
+            titleLabel.setText("Results for \"" + currentQuery + "\"" + (inDepartment ? " in " + facetFilter.category : ""));
+        } else {
+            titleLabel.setText(currentCategory);
+        }
+        updateSubtitle(-1);
         
-        // Filter products by category
-        ArrayList<Product> filteredProducts = filterProductsByCategory(currentCategory);
+        // Add category banner if not showing all products
+        bannerSlot.removeAll();
+        if (currentQuery == null && !currentCategory.equals("All Electronics")) {
+            JPanel bannerPanel = categoryBanners.get(currentCategory);
+            if (bannerPanel == null) {
+                bannerPanel = createCategoryBanner(currentCategory);
+                categoryBanners.put(currentCategory, bannerPanel);
+            }
+            bannerSlot.add(bannerPanel, BorderLayout.CENTER);
+            bannerSlot.setMaximumSize(new Dimension(Integer.MAX_VALUE, bannerPanel.getMaximumSize().height + 20));
+        }
+        bannerSlot.setVisible(bannerSlot.getComponentCount() > 0);
+        
+        // Cards for products in both the old and the new list are kept as they are
+        productGrid.setProducts(catalog.getProducts(loadedIds, loadedCount));
+    }
+    
+    // matchCount is -1 until the facet counts are in
+    private void updateSubtitle(int matchCount) {
+        boolean narrowed = facetFilter.priceRange != FacetEngine.ANY_PRICE || facetFilter.minRating > 0;
+        boolean inDepartment = !facetFilter.category.equals(CategoryIndex.ALL_CATEGORIES);
         
-        // Add products to grid
-        for (Product product : filteredProducts) {
-            JPanel productCard = createProductCard(product);
-            productsGrid.add(productCard);
+        String subtitleText = "Top-rated tech products at amazing prices";
+        if (currentQuery != null) {
+            // The search itself counts every match; once facets narrow it, count what is shown
+            if (!narrowed && !inDepartment) {
+                matchCount = lastSearchResult.getMatchCount();
+            }
+            String order = facetFilter.sort == FacetEngine.Sort.RELEVANCE ? ", best matches first" : "";
+            if (loadedCount == 0) {
+                subtitleText = "No products matched your search";
+            } else if (matchCount >= 0) {
+                subtitleText = matchCount + " matching products" + order;
+            } else {
+                subtitleText = "Matching products" + order;
+            }
+        } else if (narrowed) {
+            subtitleText = matchCount >= 0
+                ? matchCount + " products match your filters"
+                : "Products matching your filters";
+        } else if (!currentCategory.equals("All Electronics")) {
+            subtitleText = "Browse our selection of premium " + currentCategory.toLowerCase();
         }
+        subtitleLabel.setText(subtitleText);
+    }
+    
+    // Counts every facet option in the background and shows the counts if the
+    // listing has not changed in the meantime
+    private void countFacets(final FacetEngine.Cursor cursor) {
+        SwingWorker<FacetEngine.Result, Void> worker = new SwingWorker<FacetEngine.Result, Void>() {
+            @Override
+            protected FacetEngine.Result doInBackground() {
+                return cursor.count();
+            }
+            
+            @Override
+            protected void done() {
+                if (cursor != productCursor) {
+                    return;
+                }
+                try {
+                    facetCounts = get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (ExecutionException e) {
+                    System.err.println("Error counting product filters");
+                    e.getCause().printStackTrace();
+                    return;
+                }
+                updateFacetBar(facetCounts);
+                updateSubtitle(facetCounts.getMatchCount());
+            }
+        };
+        worker.execute();
+    }
+    
+    // Reads the next page of the current listing in the background and appends it
+    private void loadNextPage() {
+        if (loadingPage || productCursor == null || !productCursor.hasMore()) {
+            return;
+        }
+        loadingPage = true;
         
-        // Make grid scrollable
-        productsGrid.setAlignmentX(Component.LEFT_ALIGNMENT);
-        productPanel.add(productsGrid);
+        final FacetEngine.Cursor cursor = productCursor;
+        SwingWorker<int[], Void> worker = new SwingWorker<int[], Void>() {
+            @Override
+            protected int[] doInBackground() {
+                return cursor.next(PAGE_SIZE);
+            }
+            
+            @Override
+            protected void done() {
+                if (cursor != productCursor) {
+                    return;
+                }
+                loadingPage = false;
+                
+                int[] page;
+                try {
+                    page = get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (ExecutionException e) {
+                    System.err.println("Error loading products");
+                    e.getCause().printStackTrace();
+                    return;
+                }
+                
+                // Lists already handed to the grid only read up to their own count
+                if (loadedCount + page.length > loadedIds.length) {
+                    loadedIds = Arrays.copyOf(loadedIds, Math.max(loadedCount + page.length, loadedIds.length * 2));
+                }
+                System.arraycopy(page, 0, loadedIds, loadedCount, page.length);
+                loadedCount += page.length;
+                productGrid.setProducts(catalog.getProducts(loadedIds, loadedCount));
+            }
+        };
+        worker.execute();
     }
     
     private JPanel createCategoryBanner(String category) {
@@ -339,291 +1100,299 @@ public class OnlineShopApp {
         
         // Add category image if available
         if (imageIconPath != null) {
-            try {
-                BufferedImage originalImage = ImageIO.read(new File(imageIconPath));
-                
-                // Resize image
-                int targetHeight = 70;
-                double aspectRatio = (double) originalImage.getWidth() / originalImage.getHeight();
-                int width = (int) (targetHeight * aspectRatio);
-                
-                Image scaledImage = originalImage.getScaledInstance(width, targetHeight, Image.SCALE_SMOOTH);
-                ImageIcon imageIcon = new ImageIcon(scaledImage);
-                
-                JLabel imageLabel = new JLabel(imageIcon);
-                imageLabel.setBorder(BorderFactory.createEmptyBorder(0, 0, 0, 15));
-                bannerPanel.add(imageLabel, BorderLayout.WEST);
-                
-            } catch (IOException e) {
-                System.err.println("Error loading banner image: " + imageIconPath);
-            }
+            // Resize image to a fixed height
+            JLabel imageLabel = createImageLabel(imageIconPath, Integer.MAX_VALUE, 70, true, null);
+            imageLabel.setBorder(BorderFactory.createEmptyBorder(0, 0, 0, 15));
+            bannerPanel.add(imageLabel, BorderLayout.WEST);
         }
         
         return bannerPanel;
     }
     
-    private ArrayList<Product> filterProductsByCategory(String category) {
-        if (category.equals("All Electronics")) {
-            return products;
+    ProductGrid.CardFactory getCardFactory() {
+        return cardFactory;
+    }
+    
+    // Card components are created by the grid on demand and re-bound while scrolling
+    private final ProductGrid.CardFactory cardFactory = new ProductGrid.CardFactory() {
+        @Override
+        public JComponent createCard() {
+            return new ProductCard();
         }
         
-        ArrayList<Product> filteredProducts = new ArrayList<>();
-        
-        for (Product product : products) {
-            String name = product.getName().toLowerCase();
-            String desc = product.getDescription().toLowerCase();
-            category = category.toLowerCase();
-            
-            if (category.equals("headphones") && (name.contains("headphones") || name.contains("earbuds") || desc.contains("headphones") || desc.contains("earbuds"))) {
-                filteredProducts.add(product);
-            } else if (category.equals("smartphones") && (name.contains("smartphone") || name.contains("phone") || desc.contains("smartphone"))) {
-                filteredProducts.add(product);
-            } else if (category.equals("speakers") && (name.contains("speaker") || desc.contains("speaker"))) {
-                filteredProducts.add(product);
-            } else if (category.equals("laptops") && (name.contains("laptop") || desc.contains("laptop"))) {
-                filteredProducts.add(product);
-            } else if (category.equals("cameras") && (name.contains("camera") || name.contains("dslr") || desc.contains("camera"))) {
-                filteredProducts.add(product);
-            } else if (category.equals("wearables") && (name.contains("fitness") || name.contains("tracker") || name.contains("watch") || desc.contains("fitness tracker"))) {
-                filteredProducts.add(product);
-            } else if (category.equals("gaming") && (name.contains("gaming") || name.contains("console") || desc.contains("gaming"))) {
-                filteredProducts.add(product);
-            } else if (category.equals("audio") && (name.contains("headphones") || name.contains("earbuds") || name.contains("speaker") || desc.contains("audio"))) {
-                filteredProducts.add(product);
-            }
+        @Override
+        public void bindCard(JComponent card, Product product) {
+            ((ProductCard) card).bind(product);
         }
         
-        return filteredProducts;
-    }
+        @Override
+        public void unbindCard(JComponent card) {
+            ((ProductCard) card).unbind();
+        }
+    };
     
-    private JPanel createProductCard(Product product) {
-        JPanel card = new JPanel();
-        card.setLayout(new BoxLayout(card, BoxLayout.Y_AXIS));
-        card.setBackground(CARD_COLOR);
-        card.setBorder(BorderFactory.createCompoundBorder(
-            new LineBorder(new Color(222, 222, 222), 1, true),
-            BorderFactory.createEmptyBorder(15, 15, 15, 15)
-        ));
-        
-        // Make the entire card clickable
-        card.setCursor(new Cursor(Cursor.HAND_CURSOR));
-        card.addMouseListener(new MouseAdapter() {
-            @Override
-            public void mouseClicked(MouseEvent e) {
-                showProductDetails(product);
-            }
+    // Product card that can be re-bound to another product when the grid recycles it
+    @SuppressWarnings("serial")
+    private class ProductCard extends JPanel {
+        private Product product;
+        private Future<?> imageLoad;
+        
+        private final JPanel imagePanel;
+        private final JLabel imageLabel;
+        private final JLabel nameLabel;
+        private final JLabel[] starLabels = new JLabel[5];
+        private final JLabel reviewsLabel;
+        private final JLabel priceLabel;
+        private final JLabel originalPriceLabel;
+        private final StrikethroughLabel strikethroughLabel;
+        private final JLabel discountLabel;
+        private final JLabel descLabel;
+        
+        public ProductCard() {
+            final JPanel card = this;
+            card.setLayout(new BoxLayout(card, BoxLayout.Y_AXIS));
+            card.setBackground(CARD_COLOR);
+            card.setBorder(BorderFactory.createCompoundBorder(
+                new LineBorder(new Color(222, 222, 222), 1, true),
+                BorderFactory.createEmptyBorder(15, 15, 15, 15)
+            ));
             
-            @Override
-            public void mouseEntered(MouseEvent e) {
-                card.setBorder(BorderFactory.createCompoundBorder(
-                    new LineBorder(AMAZON_ORANGE, 2, true),
-                    BorderFactory.createEmptyBorder(14, 14, 14, 14)
-                ));
-            }
-            
-            @Override
-            public void mouseExited(MouseEvent e) {
-                card.setBorder(BorderFactory.createCompoundBorder(
-                    new LineBorder(new Color(222, 222, 222), 1, true),
-                    BorderFactory.createEmptyBorder(15, 15, 15, 15)
-                ));
-            }
-        });
-        
-        // Product image
-        if (product.getImagePath() != null) {
-            try {
-                BufferedImage originalImage = ImageIO.read(new File(product.getImagePath()));
-                
-                // Resize image to fit card
-                int targetWidth = 150;
-                int targetHeight = 150;
-                
-                // Calculate dimensions while maintaining aspect ratio
-                double aspectRatio = (double) originalImage.getWidth() / originalImage.getHeight();
-                int width = targetWidth;
-                int height = (int) (targetWidth / aspectRatio);
-                
-                // If height is too large, scale based on height instead
-                if (height > targetHeight) {
-                    height = targetHeight;
-                    width = (int) (targetHeight * aspectRatio);
+            // Make the entire card clickable
+            card.setCursor(new Cursor(Cursor.HAND_CURSOR));
+            card.addMouseListener(new MouseAdapter() {
+                @Override
+                public void mouseClicked(MouseEvent e) {
+                    if (product != null) {
+                        showProductDetails(product);
+                    }
                 }
                 
-                // Create scaled image
-                Image scaledImage = originalImage.getScaledInstance(width, height, Image.SCALE_SMOOTH);
-                ImageIcon imageIcon = new ImageIcon(scaledImage);
-                
-                // Create image panel
-                JLabel imageLabel = new JLabel(imageIcon);
-                imageLabel.setAlignmentX(Component.CENTER_ALIGNMENT);
-                
-                // Add to panel with padding
-                JPanel imagePanel = new JPanel();
-                imagePanel.setLayout(new BoxLayout(imagePanel, BoxLayout.Y_AXIS));
-                imagePanel.setOpaque(false);
-                imagePanel.add(Box.createVerticalGlue());
-                imagePanel.add(imageLabel);
-                imagePanel.add(Box.createVerticalGlue());
-                imagePanel.setMaximumSize(new Dimension(Integer.MAX_VALUE, 170));
-                imagePanel.setAlignmentX(Component.LEFT_ALIGNMENT);
-                
-                card.add(imagePanel);
-                card.add(Box.createRigidArea(new Dimension(0, 10)));
+                @Override
+                public void mouseEntered(MouseEvent e) {
+                    card.setBorder(BorderFactory.createCompoundBorder(
+                        new LineBorder(AMAZON_ORANGE, 2, true),
+                        BorderFactory.createEmptyBorder(14, 14, 14, 14)
+                    ));
+                    prewarmDetails(product);
+                }
                 
-            } catch (IOException e) {
-                System.err.println("Error loading image: " + product.getImagePath());
-                e.printStackTrace();
+                @Override
+                public void mouseExited(MouseEvent e) {
+                    card.setBorder(BorderFactory.createCompoundBorder(
+                        new LineBorder(new Color(222, 222, 222), 1, true),
+                        BorderFactory.createEmptyBorder(15, 15, 15, 15)
+                    ));
+                    cancelPrewarm();
+                }
+            });
+            
+            // Product image, filled in when the card is bound
+            imageLabel = new JLabel();
+            imageLabel.setAlignmentX(Component.CENTER_ALIGNMENT);
+            
+            // Add to panel with padding
+            imagePanel = new JPanel();
+            imagePanel.setLayout(new BoxLayout(imagePanel, BoxLayout.Y_AXIS));
+            imagePanel.setOpaque(false);
+            imagePanel.setBorder(BorderFactory.createEmptyBorder(0, 0, 10, 0));
+            imagePanel.add(Box.createVerticalGlue());
+            imagePanel.add(imageLabel);
+            imagePanel.add(Box.createVerticalGlue());
+            imagePanel.setMaximumSize(new Dimension(Integer.MAX_VALUE, 180));
+            imagePanel.setAlignmentX(Component.LEFT_ALIGNMENT);
+            
+            // Product name
+            nameLabel = new JLabel();
+            nameLabel.setFont(new Font("Arial", Font.BOLD, 16));
+            nameLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
+            
+            // Rating stars
+            JPanel ratingPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 2, 0));
+            ratingPanel.setOpaque(false);
+            
+            for (int i = 0; i < starLabels.length; i++) {
+                starLabels[i] = new JLabel("☆");
+                starLabels[i].setForeground(AMAZON_ORANGE);
+                ratingPanel.add(starLabels[i]);
             }
+            
+            reviewsLabel = new JLabel();
+            reviewsLabel.setFont(new Font("Arial", Font.PLAIN, 12));
+            reviewsLabel.setForeground(new Color(0, 113, 133)); // Amazon link blue
+            ratingPanel.add(reviewsLabel);
+            
+            ratingPanel.setAlignmentX(Component.LEFT_ALIGNMENT);
+            
+            // Price with discount styling
+            JPanel pricePanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 0));
+            pricePanel.setOpaque(false);
+            
+            priceLabel = new JLabel();
+            priceLabel.setFont(new Font("Arial", Font.BOLD, 18));
+            priceLabel.setForeground(new Color(177, 39, 4)); // Amazon red price
+            
+            originalPriceLabel = new JLabel();
+            originalPriceLabel.setFont(new Font("Arial", Font.PLAIN, 14));
+            originalPriceLabel.setForeground(Color.GRAY);
+            
+            // Strike through the list price when there is a discount
+            strikethroughLabel = new StrikethroughLabel(originalPriceLabel);
+            
+            pricePanel.add(priceLabel);
+            pricePanel.add(strikethroughLabel);
+            pricePanel.setAlignmentX(Component.LEFT_ALIGNMENT);
+            
+            // Promotion badge, hidden without a promotion
+            discountLabel = new JLabel();
+            discountLabel.setFont(new Font("Arial", Font.BOLD, 12));
+            discountLabel.setOpaque(true);
+            discountLabel.setBackground(new Color(204, 12, 57)); // Amazon deal badge color
+            discountLabel.setForeground(Color.WHITE);
+            discountLabel.setBorder(BorderFactory.createEmptyBorder(2, 5, 2, 5));
+            discountLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
+            
+            // Tech specs badge
+            JLabel techSpecsLabel = new JLabel("Tech Specs");
+            techSpecsLabel.setFont(new Font("Arial", Font.BOLD, 11));
+            techSpecsLabel.setOpaque(true);
+            techSpecsLabel.setBackground(new Color(0, 113, 133));
+            techSpecsLabel.setForeground(Color.WHITE);
+            techSpecsLabel.setBorder(BorderFactory.createEmptyBorder(2, 5, 2, 5));
+            techSpecsLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
+            
+            // Product description
+            descLabel = new JLabel();
+            descLabel.setFont(new Font("Arial", Font.PLAIN, 12));
+            descLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
+            
+            // Prime badge
+            JLabel primeLabel = new JLabel("Prime");
+            primeLabel.setFont(new Font("Arial", Font.BOLD, 11));
+            primeLabel.setOpaque(true);
+            primeLabel.setBackground(AMAZON_BLUE);
+            primeLabel.setForeground(AMAZON_ORANGE);
+            primeLabel.setBorder(BorderFactory.createEmptyBorder(1, 3, 1, 3));
+            primeLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
+            
+            // Delivery info
+            JLabel deliveryLabel = new JLabel("Get it by Tomorrow, FREE Delivery");
+            deliveryLabel.setFont(new Font("Arial", Font.PLAIN, 11));
+            deliveryLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
+            
+            // Add to cart button
+            JButton addButton = new JButton("Add to Cart");
+            addButton.setBackground(AMAZON_YELLOW);
+            addButton.setFocusPainted(false);
+            addButton.setBorderPainted(false);
+            addButton.setCursor(new Cursor(Cursor.HAND_CURSOR));
+            addButton.setAlignmentX(Component.LEFT_ALIGNMENT);
+            addButton.addActionListener(new ActionListener() {
+                @Override
+                public void actionPerformed(ActionEvent e) {
+                    if (product != null) {
+                        addToCart(product);
+                    }
+                }
+            });
+            
+            // Buy now button
+            JButton buyButton = new JButton("Buy Now");
+            buyButton.setBackground(AMAZON_ORANGE);
+            buyButton.setForeground(Color.WHITE);
+            buyButton.setFocusPainted(false);
+            buyButton.setBorderPainted(false);
+            buyButton.setCursor(new Cursor(Cursor.HAND_CURSOR));
+            buyButton.setAlignmentX(Component.LEFT_ALIGNMENT);
+            
+            // Add all components to card with spacing
+            card.add(imagePanel);
+            card.add(nameLabel);
+            card.add(Box.createRigidArea(new Dimension(0, 5)));
+            card.add(ratingPanel);
+            card.add(Box.createRigidArea(new Dimension(0, 5)));
+            card.add(pricePanel);
+            card.add(Box.createRigidArea(new Dimension(0, 3)));
+            card.add(discountLabel);
+            card.add(Box.createRigidArea(new Dimension(0, 5)));
+            
+            // Add tech specs badge
+            JPanel badgePanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 0));
+            badgePanel.setOpaque(false);
+            badgePanel.add(primeLabel);
+            badgePanel.add(techSpecsLabel);
+            badgePanel.setAlignmentX(Component.LEFT_ALIGNMENT);
+            card.add(badgePanel);
+            
+            card.add(Box.createRigidArea(new Dimension(0, 3)));
+            card.add(deliveryLabel);
+            card.add(Box.createRigidArea(new Dimension(0, 5)));
+            card.add(descLabel);
+            card.add(Box.createRigidArea(new Dimension(0, 10)));
+            
+            // Button panel for layout
+            JPanel buttonPanel = new JPanel();
+            buttonPanel.setLayout(new BoxLayout(buttonPanel, BoxLayout.X_AXIS));
+            buttonPanel.setOpaque(false);
+            buttonPanel.add(addButton);
+            buttonPanel.add(Box.createRigidArea(new Dimension(5, 0)));
+            buttonPanel.add(buyButton);
+            buttonPanel.setAlignmentX(Component.LEFT_ALIGNMENT);
+            buttonPanel.setMaximumSize(new Dimension(Integer.MAX_VALUE, 30));
+            
+            card.add(buttonPanel);
         }
         
-        // Product name
-        JLabel nameLabel = new JLabel(product.getName());
-        nameLabel.setFont(new Font("Arial", Font.BOLD, 16));
-        nameLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
-        
-        // Rating stars
-        JPanel ratingPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 2, 0));
-        ratingPanel.setOpaque(false);
-        
-        // Add stars based on rating
-        double rating = product.getRating();
-        for (int i = 1; i <= 5; i++) {
-            JLabel starLabel;
-            if (i <= Math.floor(rating)) {
-                starLabel = new JLabel("★"); // Full star
-            } else if (i - rating < 1 && i - rating > 0) {
-                starLabel = new JLabel("☆"); // Half star
-            } else {
-                starLabel = new JLabel("☆"); // Empty star
+        public void bind(final Product product) {
+            this.product = product;
+            
+            nameLabel.setText(product.getName());
+            
+            showRating();
+            
+            Pricing.Offer offer = pricing.getOffer(product);
+            priceLabel.setText(offer.getFormattedPrice());
+            originalPriceLabel.setText(offer.getFormattedListPrice());
+            strikethroughLabel.setVisible(offer.isDiscounted());
+            discountLabel.setText(offer.getBadge());
+            discountLabel.setVisible(offer.hasPromotion());
+            descLabel.setText("<html><body width='200px'>" + product.getDescription() + "</body></html>");
+            
+            // Product image
+            cancelImageLoad();
+            imagePanel.setVisible(product.getImagePath() != null);
+            if (product.getImagePath() != null) {
+                imageLabel.setIcon(ImageLoader.placeholder(150, 150));
+                imageLoad = imageLoader.loadFitted(product.getImagePath(), 150, 150, new ImageLoader.Callback() {
+                    @Override
+                    public void imageLoaded(BufferedImage image) {
+                        // The card may have been recycled for another product in the meantime
+                        if (ProductCard.this.product == product) {
+                            imageLabel.setIcon(new ImageIcon(image));
+                        }
+                    }
+                });
             }
-            starLabel.setForeground(AMAZON_ORANGE);
-            ratingPanel.add(starLabel);
         }
         
-        JLabel reviewsLabel = new JLabel("(" + product.getReviewCount() + ")");
-        reviewsLabel.setFont(new Font("Arial", Font.PLAIN, 12));
-        reviewsLabel.setForeground(new Color(0, 113, 133)); // Amazon link blue
-        ratingPanel.add(reviewsLabel);
-        
-        ratingPanel.setAlignmentX(Component.LEFT_ALIGNMENT);
-        
-        // Price with discount styling
-        JPanel pricePanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 0));
-        pricePanel.setOpaque(false);
-        
-        JLabel priceLabel = new JLabel(String.format("₹%.2f", product.getPrice()));
-        priceLabel.setFont(new Font("Arial", Font.BOLD, 18));
-        priceLabel.setForeground(new Color(177, 39, 4)); // Amazon red price
-        
-        JLabel originalPriceLabel = new JLabel(String.format("₹%.2f", product.getPrice() * 1.2));
-        originalPriceLabel.setFont(new Font("Arial", Font.PLAIN, 14));
-        originalPriceLabel.setForeground(Color.GRAY);
-        
-        // Strike through the original price
-        StrikethroughLabel strikethroughLabel = new StrikethroughLabel(originalPriceLabel);
-        
-        pricePanel.add(priceLabel);
-        pricePanel.add(strikethroughLabel);
-        pricePanel.setAlignmentX(Component.LEFT_ALIGNMENT);
-        
-        // Discount badge
-        JLabel discountLabel = new JLabel("Save 20%");
-        discountLabel.setFont(new Font("Arial", Font.BOLD, 12));
-        discountLabel.setOpaque(true);
-        discountLabel.setBackground(new Color(204, 12, 57)); // Amazon deal badge color
-        discountLabel.setForeground(Color.WHITE);
-        discountLabel.setBorder(BorderFactory.createEmptyBorder(2, 5, 2, 5));
-        discountLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
-        
-        // Tech specs badge
-        JLabel techSpecsLabel = new JLabel("Tech Specs");
-        techSpecsLabel.setFont(new Font("Arial", Font.BOLD, 11));
-        techSpecsLabel.setOpaque(true);
-        techSpecsLabel.setBackground(new Color(0, 113, 133));
-        techSpecsLabel.setForeground(Color.WHITE);
-        techSpecsLabel.setBorder(BorderFactory.createEmptyBorder(2, 5, 2, 5));
-        techSpecsLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
-        
-        // Product description
-        JLabel descLabel = new JLabel("<html><body width='200px'>" + product.getDescription() + "</body></html>");
-        descLabel.setFont(new Font("Arial", Font.PLAIN, 12));
-        descLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
-        
-        // Prime badge
-        JLabel primeLabel = new JLabel("Prime");
-        primeLabel.setFont(new Font("Arial", Font.BOLD, 11));
-        primeLabel.setOpaque(true);
-        primeLabel.setBackground(AMAZON_BLUE);
-        primeLabel.setForeground(AMAZON_ORANGE);
-        primeLabel.setBorder(BorderFactory.createEmptyBorder(1, 3, 1, 3));
-        primeLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
-        
-        // Delivery info
-        JLabel deliveryLabel = new JLabel("Get it by Tomorrow, FREE Delivery");
-        deliveryLabel.setFont(new Font("Arial", Font.PLAIN, 11));
-        deliveryLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
-        
-        // Add to cart button
-        JButton addButton = new JButton("Add to Cart");
-        addButton.setBackground(AMAZON_YELLOW);
-        addButton.setFocusPainted(false);
-        addButton.setBorderPainted(false);
-        addButton.setCursor(new Cursor(Cursor.HAND_CURSOR));
-        addButton.setAlignmentX(Component.LEFT_ALIGNMENT);
-        addButton.addActionListener(new ActionListener() {
-            @Override
-            public void actionPerformed(ActionEvent e) {
-                addToCart(product);
+        // Shows the product's rating with every review read so far
+        public void showRating() {
+            if (product != null) {
+                setStars(starLabels, reviews.getRating(product));
+                reviewsLabel.setText("(" + reviews.getReviewCount(product) + ")");
             }
-        });
-        
-        // Buy now button
-        JButton buyButton = new JButton("Buy Now");
-        buyButton.setBackground(AMAZON_ORANGE);
-        buyButton.setForeground(Color.WHITE);
-        buyButton.setFocusPainted(false);
-        buyButton.setBorderPainted(false);
-        buyButton.setCursor(new Cursor(Cursor.HAND_CURSOR));
-        buyButton.setAlignmentX(Component.LEFT_ALIGNMENT);
-        
-        // Add all components to card with spacing
-        card.add(nameLabel);
-        card.add(Box.createRigidArea(new Dimension(0, 5)));
-        card.add(ratingPanel);
-        card.add(Box.createRigidArea(new Dimension(0, 5)));
-        card.add(pricePanel);
-        card.add(Box.createRigidArea(new Dimension(0, 3)));
-        card.add(discountLabel);
-        card.add(Box.createRigidArea(new Dimension(0, 5)));
-        
-        // Add tech specs badge
-        JPanel badgePanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 0));
-        badgePanel.setOpaque(false);
-        badgePanel.add(primeLabel);
-        badgePanel.add(techSpecsLabel);
-        badgePanel.setAlignmentX(Component.LEFT_ALIGNMENT);
-        card.add(badgePanel);
-        
-        card.add(Box.createRigidArea(new Dimension(0, 3)));
-        card.add(deliveryLabel);
-        card.add(Box.createRigidArea(new Dimension(0, 5)));
-        card.add(descLabel);
-        card.add(Box.createRigidArea(new Dimension(0, 10)));
-        
-        // Button panel for layout
-        JPanel buttonPanel = new JPanel();
-        buttonPanel.setLayout(new BoxLayout(buttonPanel, BoxLayout.X_AXIS));
-        buttonPanel.setOpaque(false);
-        buttonPanel.add(addButton);
-        buttonPanel.add(Box.createRigidArea(new Dimension(5, 0)));
-        buttonPanel.add(buyButton);
-        buttonPanel.setAlignmentX(Component.LEFT_ALIGNMENT);
-        buttonPanel.setMaximumSize(new Dimension(Integer.MAX_VALUE, 30));
+        }
         
-        card.add(buttonPanel);
+        public void unbind() {
+            cancelImageLoad();
+            product = null;
+        }
         
-        return card;
+        private void cancelImageLoad() {
+            if (imageLoad != null) {
+                imageLoad.cancel(false);
+                imageLoad = null;
+            }
+        }
     }
     
     // Custom component for strikethrough text
@@ -658,11 +1427,15 @@ public class OnlineShopApp {
         
         cartHeaderPanel.add(cartTitleLabel, BorderLayout.WEST);
         
-        // Cart items container
-        JPanel cartItemsPanel = new JPanel();
+        // Cart items container; rows are added and removed as the cart changes
+        cartItemsPanel = new JPanel();
         cartItemsPanel.setLayout(new BoxLayout(cartItemsPanel, BoxLayout.Y_AXIS));
         cartItemsPanel.setOpaque(false);
         
+        emptyCartPanel = createEmptyCartPanel();
+        cartItemsPanel.add(emptyCartPanel);
+        cart.addListener(cartListener);
+        
         // Cart summary panel
         JPanel summaryPanel = new JPanel();
         summaryPanel.setLayout(new BoxLayout(summaryPanel, BoxLayout.Y_AXIS));
@@ -684,14 +1457,14 @@ public class OnlineShopApp {
         priceDetailsPanel.setOpaque(false);
         
         priceDetailsPanel.add(new JLabel("Items:"));
-        JLabel itemsValueLabel = new JLabel("₹0.00");
+        itemsValueLabel = new JLabel(Money.format(0));
         priceDetailsPanel.add(itemsValueLabel);
         
         priceDetailsPanel.add(new JLabel("Shipping:"));
         priceDetailsPanel.add(new JLabel("FREE"));
         
         priceDetailsPanel.add(new JLabel("Total:"));
-        totalLabel = new JLabel("₹0.00");
+        totalLabel = new JLabel(Money.format(0));
         totalLabel.setFont(new Font("Arial", Font.BOLD, 16));
         totalLabel.setForeground(new Color(177, 39, 4)); // Amazon red price
         priceDetailsPanel.add(totalLabel);
@@ -707,6 +1480,7 @@ public class OnlineShopApp {
         checkoutButton.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
+                EdtMonitor.tag("checkout");
                 checkout();
             }
         });
@@ -724,159 +1498,217 @@ public class OnlineShopApp {
         cartPanel.add(summaryPanel, BorderLayout.SOUTH);
     }
     
-    private void updateCartPanel() {
-        // Remove all components from cart panel except the title and bottom panel
-        Component[] components = cartPanel.getComponents();
-        JScrollPane scrollPane = (JScrollPane) components[1];
-        JPanel cartItemsPanel = new JPanel();
-        cartItemsPanel.setLayout(new BoxLayout(cartItemsPanel, BoxLayout.Y_AXIS));
-        cartItemsPanel.setOpaque(false);
+    private void updateCartSummary() {
+        String total = Money.format(cart.getTotal());
+        itemsValueLabel.setText(total);
+        totalLabel.setText(total);
         
-        // Add cart items
-        if (cart.isEmpty()) {
-            JPanel emptyCartPanel = new JPanel(new BorderLayout());
-            emptyCartPanel.setOpaque(false);
-            emptyCartPanel.setBorder(BorderFactory.createEmptyBorder(30, 0, 0, 0));
-            
-            JLabel emptyLabel = new JLabel("Your TechTrove Cart is empty");
-            emptyLabel.setFont(new Font("Arial", Font.BOLD, 16));
-            emptyLabel.setHorizontalAlignment(JLabel.CENTER);
-            
-            JLabel suggestLabel = new JLabel("Shop today's deals");
-            suggestLabel.setFont(new Font("Arial", Font.PLAIN, 14));
-            suggestLabel.setForeground(new Color(0, 113, 133)); // Amazon link blue
-            suggestLabel.setHorizontalAlignment(JLabel.CENTER);
-            suggestLabel.setCursor(new Cursor(Cursor.HAND_CURSOR));
-            
-            emptyCartPanel.add(emptyLabel, BorderLayout.NORTH);
-            emptyCartPanel.add(Box.createRigidArea(new Dimension(0, 10)), BorderLayout.CENTER);
-            emptyCartPanel.add(suggestLabel, BorderLayout.SOUTH);
-            
-            cartItemsPanel.add(emptyCartPanel);
-        } else {
-            for (Product product : cart) {
-                JPanel cartItemPanel = createCartItemPanel(product);
-                cartItemsPanel.add(cartItemPanel);
-                cartItemsPanel.add(Box.createRigidArea(new Dimension(0, 10)));
+        // Enable checkout button if cart is not empty
+        checkoutButton.setEnabled(!cart.isEmpty());
+    }
+    
+    // Adds, updates or removes only the row of the line that changed
+    private final Cart.Listener cartListener = new Cart.Listener() {
+        @Override
+        public void lineAdded(Cart.Line line) {
+            long start = System.nanoTime();
+            if (cartRows.isEmpty()) {
+                cartItemsPanel.remove(emptyCartPanel);
             }
+            
+            CartRow row = new CartRow(line.getProduct());
+            row.update(line);
+            cartRows.put(line.getProduct().getId(), row);
+            cartItemsPanel.add(row);
+            cartChanged();
+            EdtMonitor.record("updateCartPanel", start);
         }
         
-        // Update scroll pane
-        scrollPane.setViewportView(cartItemsPanel);
-        
-        // Update total
-        totalLabel.setText(String.format("₹%.2f", totalAmount));
-        
-        // Update price details
-        Component[] summaryComponents = ((JPanel)components[2]).getComponents();
-        JPanel priceDetailsPanel = (JPanel)summaryComponents[2];
-        ((JLabel)priceDetailsPanel.getComponent(1)).setText(String.format("₹%.2f", totalAmount));
+        @Override
+        public void lineUpdated(Cart.Line line) {
+            long start = System.nanoTime();
+            CartRow row = cartRows.get(line.getProduct().getId());
+            if (row != null) {
+                row.update(line);
+            }
+            updateCartSummary();
+            EdtMonitor.record("updateCartPanel", start);
+        }
         
-        // Enable checkout button if cart is not empty
-        checkoutButton.setEnabled(!cart.isEmpty());
+        @Override
+        public void lineRemoved(Cart.Line line) {
+            long start = System.nanoTime();
+            CartRow row = cartRows.remove(line.getProduct().getId());
+            if (row != null) {
+                cartItemsPanel.remove(row);
+            }
+            if (cartRows.isEmpty()) {
+                cartItemsPanel.add(emptyCartPanel);
+            }
+            cartChanged();
+            EdtMonitor.record("updateCartPanel", start);
+        }
         
-        // Refresh panel
-        cartPanel.revalidate();
-        cartPanel.repaint();
+        @Override
+        public void cartCleared() {
+            long start = System.nanoTime();
+            cartItemsPanel.removeAll();
+            cartRows.clear();
+            cartItemsPanel.add(emptyCartPanel);
+            cartChanged();
+            EdtMonitor.record("updateCartPanel", start);
+        }
+    };
+    
+    private void cartChanged() {
+        updateCartSummary();
+        cartItemsPanel.revalidate();
+        cartItemsPanel.repaint();
     }
     
-    private JPanel createCartItemPanel(Product product) {
-        JPanel panel = new JPanel(new BorderLayout(10, 0));
-        panel.setBorder(BorderFactory.createCompoundBorder(
-            new MatteBorder(0, 0, 1, 0, new Color(222, 222, 222)),
-            BorderFactory.createEmptyBorder(10, 0, 10, 0)
-        ));
-        panel.setOpaque(false);
-        panel.setMaximumSize(new Dimension(Integer.MAX_VALUE, 80));
-        
-        // Product image (small thumbnail)
-        if (product.getImagePath() != null) {
-            try {
-                BufferedImage originalImage = ImageIO.read(new File(product.getImagePath()));
-                
+    private JPanel createEmptyCartPanel() {
+        JPanel emptyCartPanel = new JPanel(new BorderLayout());
+        emptyCartPanel.setOpaque(false);
+        emptyCartPanel.setBorder(BorderFactory.createEmptyBorder(30, 0, 0, 0));
+        
+        JLabel emptyLabel = new JLabel("Your TechTrove Cart is empty");
+        emptyLabel.setFont(new Font("Arial", Font.BOLD, 16));
+        emptyLabel.setHorizontalAlignment(JLabel.CENTER);
+        
+        JLabel suggestLabel = new JLabel("Shop today's deals");
+        suggestLabel.setFont(new Font("Arial", Font.PLAIN, 14));
+        suggestLabel.setForeground(new Color(0, 113, 133)); // Amazon link blue
+        suggestLabel.setHorizontalAlignment(JLabel.CENTER);
+        suggestLabel.setCursor(new Cursor(Cursor.HAND_CURSOR));
+        
+        emptyCartPanel.add(emptyLabel, BorderLayout.NORTH);
+        emptyCartPanel.add(Box.createRigidArea(new Dimension(0, 10)), BorderLayout.CENTER);
+        emptyCartPanel.add(suggestLabel, BorderLayout.SOUTH);
+        
+        return emptyCartPanel;
+    }
+    
+    // One cart line; built once when the product is first added and updated in place
+    @SuppressWarnings("serial")
+    private class CartRow extends JPanel {
+        private final JLabel priceLabel;
+        private final JLabel quantityLabel;
+        private final JLabel stockLabel;
+        private final Product product;
+        
+        public CartRow(final Product product) {
+            super(new BorderLayout(10, 0));
+            this.product = product;
+            JPanel panel = this;
+            // The outer border spaces the rows so each line is a single component
+            panel.setBorder(BorderFactory.createCompoundBorder(
+                BorderFactory.createEmptyBorder(0, 0, 10, 0),
+                BorderFactory.createCompoundBorder(
+                    new MatteBorder(0, 0, 1, 0, new Color(222, 222, 222)),
+                    BorderFactory.createEmptyBorder(10, 0, 10, 0)
+                )
+            ));
+            panel.setOpaque(false);
+            panel.setMaximumSize(new Dimension(Integer.MAX_VALUE, 110));
+            
+            // Product image (small thumbnail)
+            if (product.getImagePath() != null) {
                 // Create scaled image for thumbnail
-                Image scaledImage = originalImage.getScaledInstance(40, 40, Image.SCALE_SMOOTH);
-                ImageIcon imageIcon = new ImageIcon(scaledImage);
-                JLabel imageLabel = new JLabel(imageIcon);
-                
+                JLabel imageLabel = createImageLabel(product.getImagePath(), 40, 40, false, null);
                 panel.add(imageLabel, BorderLayout.WEST);
-                
-            } catch (IOException e) {
-                System.err.println("Error loading thumbnail image: " + product.getImagePath());
             }
+            
+            // Product info
+            JPanel infoPanel = new JPanel();
+            infoPanel.setLayout(new BoxLayout(infoPanel, BoxLayout.Y_AXIS));
+            infoPanel.setOpaque(false);
+            
+            JLabel nameLabel = new JLabel(product.getName());
+            nameLabel.setFont(new Font("Arial", Font.BOLD, 14));
+            
+            priceLabel = new JLabel();
+            priceLabel.setFont(new Font("Arial", Font.PLAIN, 14));
+            priceLabel.setForeground(new Color(177, 39, 4)); // Amazon red price
+            
+            quantityLabel = new JLabel();
+            quantityLabel.setFont(new Font("Arial", Font.PLAIN, 12));
+            
+            stockLabel = new JLabel();
+            stockLabel.setFont(new Font("Arial", Font.PLAIN, 12));
+            
+            JLabel eligibleLabel = new JLabel("Eligible for FREE Shipping");
+            eligibleLabel.setFont(new Font("Arial", Font.PLAIN, 12));
+            
+            infoPanel.add(nameLabel);
+            infoPanel.add(Box.createRigidArea(new Dimension(0, 3)));
+            infoPanel.add(priceLabel);
+            infoPanel.add(Box.createRigidArea(new Dimension(0, 3)));
+            infoPanel.add(quantityLabel);
+            infoPanel.add(Box.createRigidArea(new Dimension(0, 3)));
+            infoPanel.add(stockLabel);
+            infoPanel.add(Box.createRigidArea(new Dimension(0, 3)));
+            infoPanel.add(eligibleLabel);
+            
+            // Action panel
+            JPanel actionPanel = new JPanel();
+            actionPanel.setLayout(new BoxLayout(actionPanel, BoxLayout.Y_AXIS));
+            actionPanel.setOpaque(false);
+            
+            // Removes one unit; the row goes away with the last one
+            JButton removeButton = new JButton("Delete");
+            removeButton.setForeground(new Color(0, 113, 133)); // Amazon link blue
+            removeButton.setBorderPainted(false);
+            removeButton.setContentAreaFilled(false);
+            removeButton.setCursor(new Cursor(Cursor.HAND_CURSOR));
+            removeButton.setAlignmentX(Component.RIGHT_ALIGNMENT);
+            removeButton.addActionListener(new ActionListener() {
+                @Override
+                public void actionPerformed(ActionEvent e) {
+                    removeFromCart(product);
+                }
+            });
+            
+            actionPanel.add(removeButton);
+            
+            panel.add(infoPanel, BorderLayout.CENTER);
+            panel.add(actionPanel, BorderLayout.EAST);
         }
         
-        // Product info
-        JPanel infoPanel = new JPanel();
-        infoPanel.setLayout(new BoxLayout(infoPanel, BoxLayout.Y_AXIS));
-        infoPanel.setOpaque(false);
-        
-        JLabel nameLabel = new JLabel(product.getName());
-        nameLabel.setFont(new Font("Arial", Font.BOLD, 14));
-        
-        JLabel priceLabel = new JLabel(String.format("₹%.2f", product.getPrice()));
-        priceLabel.setFont(new Font("Arial", Font.PLAIN, 14));
-        priceLabel.setForeground(new Color(177, 39, 4)); // Amazon red price
-        
-        JLabel inStockLabel = new JLabel("In Stock");
-        inStockLabel.setFont(new Font("Arial", Font.PLAIN, 12));
-        inStockLabel.setForeground(new Color(0, 118, 0)); // Amazon green
-        
-        JLabel eligibleLabel = new JLabel("Eligible for FREE Shipping");
-        eligibleLabel.setFont(new Font("Arial", Font.PLAIN, 12));
-        
-        infoPanel.add(nameLabel);
-        infoPanel.add(Box.createRigidArea(new Dimension(0, 3)));
-        infoPanel.add(priceLabel);
-        infoPanel.add(Box.createRigidArea(new Dimension(0, 3)));
-        infoPanel.add(inStockLabel);
-        infoPanel.add(Box.createRigidArea(new Dimension(0, 3)));
-        infoPanel.add(eligibleLabel);
-        
-        // Action panel
-        JPanel actionPanel = new JPanel();
-        actionPanel.setLayout(new BoxLayout(actionPanel, BoxLayout.Y_AXIS));
-        actionPanel.setOpaque(false);
-        
-        JButton removeButton = new JButton("Delete");
-        removeButton.setForeground(new Color(0, 113, 133)); // Amazon link blue
-        removeButton.setBorderPainted(false);
-        removeButton.setContentAreaFilled(false);
-        removeButton.setCursor(new Cursor(Cursor.HAND_CURSOR));
-        removeButton.setAlignmentX(Component.RIGHT_ALIGNMENT);
-        removeButton.addActionListener(new ActionListener() {
-            @Override
-            public void actionPerformed(ActionEvent e) {
-                removeFromCart(product);
-            }
-        });
-        
-        actionPanel.add(removeButton);
-        
-        panel.add(infoPanel, BorderLayout.CENTER);
-        panel.add(actionPanel, BorderLayout.EAST);
+        public void update(Cart.Line line) {
+            priceLabel.setText(line.getFormattedLineTotal());
+            quantityLabel.setText("Qty: " + line.getQuantity());
+            updateStock();
+        }
         
-        return panel;
+        public void updateStock() {
+            showAvailability(stockLabel, product, new Color(0, 118, 0)); // Amazon green
+        }
     }
     
+    // Stock is only checked here; units are not held until checkout
     private void addToCart(Product product) {
+        EdtMonitor.tag("addToCart");
+        Cart.Line line = cart.getLine(product);
+        int available = inventory.getAvailable(product);
+        if ((line != null ? line.getQuantity() : 0) >= available) {
+            String message = available == 0 ? product.getName() + " is out of stock."
+                : "Only " + available + " of " + product.getName() + " are in stock, and they are all in your cart.";
+            JOptionPane.showMessageDialog(frame, message, "Add to Cart", JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
         cart.add(product);
-        totalAmount += product.getPrice();
-        updateCartPanel();
         
         // Show confirmation
         JOptionPane.showMessageDialog(
-            frame, 
-            "Added to your cart: " + product.getName(), 
-            "Added to Cart", 
+            frame,
+            "Added to your cart: " + product.getName(),
+            "Added to Cart",
             JOptionPane.INFORMATION_MESSAGE
         );
     }
     
     private void removeFromCart(Product product) {
         cart.remove(product);
-        totalAmount -= product.getPrice();
-        updateCartPanel();
     }
     
     private void checkout() {
@@ -885,33 +1717,317 @@ public class OnlineShopApp {
             return;
         }
         
+        if (orderJournal == null) {
+            JOptionPane.showMessageDialog(frame, "Orders cannot be placed because the order journal could not be opened.",
+                                          "Checkout", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        
+        // Holds the units until the order is saved, so no one else can buy them meanwhile
+        cart.reprice();
+        final Inventory.Reservation reservation = inventory.reserve(cart);
+        if (reservation == null) {
+            for (CartRow row : cartRows.values()) {
+                row.updateStock();
+            }
+            JOptionPane.showMessageDialog(frame, buildShortageMessage(cart), "Checkout", JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        
+        // From here the units stay reserved however long the order takes to write
+        if (!inventory.place(reservation)) {
+            JOptionPane.showMessageDialog(frame, "Your items could not be held for the order. Please check out again.",
+                                          "Checkout", JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        
+        // The cart is emptied straight away; the confirmation waits until the order is on disk
+        final Cart placedCart = new Cart(pricing);
+        placedCart.addAll(cart);
+        CompletableFuture<Order> placed = orderJournal.append(cart);
+        cart.clear();
+        
+        placed.whenComplete(new BiConsumer<Order, Throwable>() {
+            @Override
+            public void accept(final Order order, final Throwable error) {
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (error == null) {
+                            inventory.confirm(reservation);
+                            JOptionPane.showMessageDialog(frame, buildOrderSummary(placedCart) + "\n\nOrder number: " + order.getId(),
+                                                          "Order Confirmation", JOptionPane.INFORMATION_MESSAGE);
+                            return;
+                        }
+                        
+                        // Put the items back so the order can be placed again
+                        inventory.release(reservation);
+                        cart.addAll(placedCart);
+                        JOptionPane.showMessageDialog(frame, "Your order could not be saved, so the items are back in your cart.",
+                                                      "Checkout", JOptionPane.ERROR_MESSAGE);
+                    }
+                });
+            }
+        });
+    }
+    
+    // Lists past orders, newest first. Rows are a fixed size, so the list only asks
+    // the model for the rows in view, and the model only reads their pages from the
+    // journal; opening the history costs the same however many orders there are.
+    private void showOrderHistory() {
+        if (orderJournal == null) {
+            JOptionPane.showMessageDialog(frame, "Your orders cannot be shown because the order journal could not be opened.",
+                                          "Your Orders", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        
+        final OrderHistoryModel model = new OrderHistoryModel(orderJournal);
+        final JDialog dialog = new JDialog(frame, "Your Orders", true);
+        dialog.setSize(700, 600);
+        dialog.setLayout(new BorderLayout(10, 10));
+        dialog.getContentPane().setBackground(BACKGROUND_COLOR);
+        
+        // Header with the order count and a search by order number or date
+        JPanel headerPanel = new JPanel(new BorderLayout(10, 0));
+        headerPanel.setBackground(BACKGROUND_COLOR);
+        headerPanel.setBorder(BorderFactory.createEmptyBorder(15, 15, 0, 15));
+        
+        JLabel titleLabel = new JLabel("Your Orders");
+        titleLabel.setFont(new Font("Arial", Font.BOLD, 20));
+        JLabel countLabel = new JLabel(model.getSize() == 1 ? "1 order" : model.getSize() + " orders");
+        countLabel.setFont(new Font("Arial", Font.PLAIN, 13));
+        countLabel.setForeground(Color.GRAY);
+        
+        JPanel titlePanel = new JPanel();
+        titlePanel.setLayout(new BoxLayout(titlePanel, BoxLayout.Y_AXIS));
+        titlePanel.setOpaque(false);
+        titlePanel.add(titleLabel);
+        titlePanel.add(countLabel);
+        headerPanel.add(titlePanel, BorderLayout.WEST);
+        
+        if (model.getSize() == 0) {
+            JLabel emptyLabel = new JLabel("You have not placed any orders yet.");
+            emptyLabel.setFont(new Font("Arial", Font.PLAIN, 16));
+            emptyLabel.setHorizontalAlignment(JLabel.CENTER);
+            dialog.add(headerPanel, BorderLayout.NORTH);
+            dialog.add(emptyLabel, BorderLayout.CENTER);
+        } else {
+            final JList<Order> orderList = new JList<>(model);
+            orderList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+            orderList.setCellRenderer(new OrderRow());
+            orderList.setFixedCellHeight(OrderRow.HEIGHT);
+            orderList.setFixedCellWidth(600);
+            
+            final JTextField findField = new JTextField(14);
+            findField.setToolTipText("Order number, or a date as yyyy-mm-dd");
+            JButton findButton = new JButton("Find");
+            ActionListener find = new ActionListener() {
+                @Override
+                public void actionPerformed(ActionEvent e) {
+                    findOrder(findField.getText().trim(), model, orderList);
+                }
+            };
+            findField.addActionListener(find);
+            findButton.addActionListener(find);
+            
+            JPanel findPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT, 5, 0));
+            findPanel.setOpaque(false);
+            findPanel.add(new JLabel("Order # or date:"));
+            findPanel.add(findField);
+            findPanel.add(findButton);
+            headerPanel.add(findPanel, BorderLayout.EAST);
+            
+            JScrollPane scrollPane = new JScrollPane(orderList);
+            scrollPane.setBorder(BorderFactory.createEmptyBorder(0, 15, 15, 15));
+            scrollPane.getViewport().setBackground(BACKGROUND_COLOR);
+            scrollPane.getVerticalScrollBar().setUnitIncrement(OrderRow.HEIGHT / 2);
+            dialog.add(headerPanel, BorderLayout.NORTH);
+            dialog.add(scrollPane, BorderLayout.CENTER);
+        }
+        
+        dialog.setLocationRelativeTo(frame);
+        dialog.setVisible(true);
+        
+        // Modal, so the dialog has been closed by now
+        model.dispose();
+        dialog.dispose();
+    }
+    
+    // Selects the order with the number typed, or the newest order placed on the date
+    private void findOrder(String text, OrderHistoryModel model, JList<Order> orderList) {
+        int position;
+        if (text.matches("#?\\d{1,18}")) {
+            position = orderJournal.find(Long.parseLong(text.replace("#", "")));
+            if (position < 0 || position >= model.getSize()) {
+                JOptionPane.showMessageDialog(orderList, "There is no order number " + text + ".",
+                                              "Your Orders", JOptionPane.INFORMATION_MESSAGE);
+                return;
+            }
+        } else {
+            Calendar day = Calendar.getInstance();
+            SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd");
+            format.setLenient(false);
+            try {
+                day.setTime(format.parse(text));
+            } catch (ParseException e) {
+                JOptionPane.showMessageDialog(orderList, "Enter an order number, or a date as yyyy-mm-dd.",
+                                              "Your Orders", JOptionPane.INFORMATION_MESSAGE);
+                return;
+            }
+            int first = orderJournal.positionAt(day.getTimeInMillis());
+            day.add(Calendar.DAY_OF_MONTH, 1);
+            position = Math.min(orderJournal.positionAt(day.getTimeInMillis()), model.getSize()) - 1;
+            if (position < first) {
+                JOptionPane.showMessageDialog(orderList, "You placed no orders on " + text + ".",
+                                              "Your Orders", JOptionPane.INFORMATION_MESSAGE);
+                return;
+            }
+        }
+        
+        int index = model.indexOf(position);
+        orderList.setSelectedIndex(index);
+        orderList.ensureIndexIsVisible(index);
+    }
+    
+    // Which lines of the cart have fewer units in stock than the cart holds
+    private String buildShortageMessage(Cart cart) {
+        StringBuilder message = new StringBuilder("Sorry, some items in your cart are no longer available:\n");
+        for (Cart.Line line : cart.getLines()) {
+            int available = inventory.getAvailable(line.getProduct());
+            if (available < line.getQuantity()) {
+                message.append("\n- ").append(line.getProduct().getName()).append(": ");
+                message.append(available == 0 ? "out of stock" : "only " + available + " left");
+            }
+        }
+        message.append("\n\nPlease change the quantities and check out again.");
+        return message.toString();
+    }
+    
+    // Shows how many units of the product are left, in the label's colors
+    private void showAvailability(JLabel label, Product product, Color inStockColor) {
+        int available = inventory.getAvailable(product);
+        if (available == 0) {
+            label.setText("Currently unavailable");
+            label.setForeground(new Color(177, 39, 4));
+        } else if (available <= LOW_STOCK) {
+            label.setText("Only " + available + " left in stock");
+            label.setForeground(new Color(177, 39, 4));
+        } else {
+            label.setText("In Stock");
+            label.setForeground(inStockColor);
+        }
+    }
+    
+    static String buildOrderSummary(Cart cart) {
         StringBuilder message = new StringBuilder();
         message.append("Thank you for your purchase!\n\n");
         message.append("Order Summary:\n");
         
-        for (Product product : cart) {
-            message.append(String.format("- %s: ₹%.2f\n", product.getName(), product.getPrice()));
+        for (Cart.Line line : cart.getLines()) {
+            message.append("- ").append(line.getProduct().getName());
+            if (line.getQuantity() > 1) {
+                message.append(" x").append(line.getQuantity());
+            }
+            message.append(": ").append(line.getFormattedLineTotal()).append("\n");
         }
         
-        message.append(String.format("\nTotal Amount: ₹%.2f", totalAmount));
+        message.append("\nTotal Amount: ").append(Money.format(cart.getTotal()));
         message.append("\n\nYour order will be delivered by tomorrow!");
-        
-        JOptionPane.showMessageDialog(frame, message.toString(), "Order Confirmation", JOptionPane.INFORMATION_MESSAGE);
-        
-        // Clear cart after checkout
-        cart.clear();
-        totalAmount = 0.0;
-        updateCartPanel();
+        return message.toString();
     }
     
     private void showProductDetails(Product product) {
-        // Create a new dialog for product details
-        JDialog detailDialog = new JDialog(frame, product.getName(), true);
-        detailDialog.setSize(800, 600);
+        EdtMonitor.tag("openDetails");
+        long start = System.nanoTime();
+        
+        // One dialog is reused for every product; only its content is swapped
+        if (detailDialog == null) {
+            detailDialog = new JDialog(frame, true);
+            detailDialog.setSize(800, 600);
+            detailDialog.setLayout(new BorderLayout(20, 20));
+            detailDialog.getContentPane().setBackground(BACKGROUND_COLOR);
+        }
+        
+        DetailView view = getDetailView(product);
+        showAvailability(view.availabilityLabel, product, new Color(0, 128, 0)); // Green
+        detailDialog.setTitle(product.getName());
+        detailDialog.getContentPane().removeAll();
+        detailDialog.add(view.content, BorderLayout.CENTER);
+        detailDialog.getContentPane().validate();
         detailDialog.setLocationRelativeTo(frame);
-        detailDialog.setLayout(new BorderLayout(20, 20));
-        detailDialog.getContentPane().setBackground(BACKGROUND_COLOR);
         
+        // Show dialog; it is modal, so the time until it is closed is not counted
+        EdtMonitor.record("showProductDetails", start);
+        detailDialog.setVisible(true);
+    }
+    
+    // Rating in a detail view, with the star breakdown of reviews read since startup
+    private void showRating(DetailView view, Product product) {
+        double rating = reviews.getRating(product);
+        setStars(view.starLabels, rating);
+        view.ratingValueLabel.setText(String.format(" %.1f", rating));
+        view.reviewsLabel.setText(" (" + reviews.getReviewCount(product) + " reviews)");
+        
+        int[] histogram = reviews.getHistogram(product);
+        StringBuilder text = new StringBuilder("New reviews:");
+        int total = 0;
+        for (int stars = 5; stars >= 1; stars--) {
+            text.append("  ").append(stars).append("★ ").append(histogram[stars - 1]);
+            total += histogram[stars - 1];
+        }
+        view.histogramLabel.setText(text.toString());
+        view.histogramLabel.setVisible(total > 0);
+    }
+    
+    // The cached view of the product, built now if it is not cached
+    private DetailView getDetailView(Product product) {
+        DetailView view = detailViews.get(product);
+        if (view == null) {
+            view = createDetailView(product);
+            detailViews.put(product, view);
+            
+            // Evict the least recently shown view; its image stops loading if it still is
+            if (detailViews.size() > DETAIL_CACHE_SIZE) {
+                Iterator<DetailView> eldest = detailViews.values().iterator();
+                eldest.next().cancelImageLoads();
+                eldest.remove();
+            }
+        }
+        return view;
+    }
+    
+    // Builds the detail view of the product a moment after the pointer comes to rest
+    // on its card, so that opening it does not have to. Swing components can only be
+    // built on the EDT; the full-size image is decoded in the background.
+    private void prewarmDetails(Product product) {
+        if (product == null || detailViews.containsKey(product)) {
+            return;
+        }
+        
+        prewarmProduct = product;
+        if (prewarmTimer == null) {
+            prewarmTimer = new Timer(DETAIL_PREWARM_DELAY_MS, new ActionListener() {
+                @Override
+                public void actionPerformed(ActionEvent e) {
+                    if (prewarmProduct != null) {
+                        getDetailView(prewarmProduct);
+                        prewarmProduct = null;
+                    }
+                }
+            });
+            prewarmTimer.setRepeats(false);
+        }
+        prewarmTimer.restart();
+    }
+    
+    private void cancelPrewarm() {
+        prewarmProduct = null;
+        if (prewarmTimer != null) {
+            prewarmTimer.stop();
+        }
+    }
+    
+    private DetailView createDetailView(final Product product) {
         // Main content panel
         JPanel contentPanel = new JPanel(new BorderLayout(20, 20));
         contentPanel.setBorder(BorderFactory.createEmptyBorder(20, 20, 20, 20));
@@ -923,37 +2039,12 @@ public class OnlineShopApp {
         imagePanel.setBorder(new LineBorder(new Color(222, 222, 222), 1, true));
         
         // Product image
+        DetailView view = new DetailView(contentPanel);
         if (product.getImagePath() != null) {
-            try {
-                BufferedImage originalImage = ImageIO.read(new File(product.getImagePath()));
-                
-                // Resize image
-                int targetWidth = 300;
-                int targetHeight = 300;
-                
-                // Calculate dimensions while maintaining aspect ratio
-                double aspectRatio = (double) originalImage.getWidth() / originalImage.getHeight();
-                int width = targetWidth;
-                int height = (int) (targetWidth / aspectRatio);
-                
-                // If height is too large, scale based on height instead
-                if (height > targetHeight) {
-                    height = targetHeight;
-                    width = (int) (targetHeight * aspectRatio);
-                }
-                
-                // Create scaled image
-                Image scaledImage = originalImage.getScaledInstance(width, height, Image.SCALE_SMOOTH);
-                ImageIcon imageIcon = new ImageIcon(scaledImage);
-                
-                JLabel imageLabel = new JLabel(imageIcon);
-                imageLabel.setHorizontalAlignment(JLabel.CENTER);
-                imagePanel.add(imageLabel, BorderLayout.CENTER);
-                
-            } catch (IOException e) {
-                System.err.println("Error loading image: " + product.getImagePath());
-                e.printStackTrace();
-            }
+            // Resize image
+            JLabel imageLabel = createImageLabel(product.getImagePath(), 300, 300, true, view.imageLoads);
+            imageLabel.setHorizontalAlignment(JLabel.CENTER);
+            imagePanel.add(imageLabel, BorderLayout.CENTER);
         }
         
         // Right panel for details
@@ -974,33 +2065,32 @@ public class OnlineShopApp {
         JPanel ratingPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 2, 0));
         ratingPanel.setOpaque(false);
         
-        // Add stars based on rating
-        double rating = product.getRating();
-        for (int i = 1; i <= 5; i++) {
-            JLabel starLabel;
-            if (i <= Math.floor(rating)) {
-                starLabel = new JLabel("★"); // Full star
-            } else if (i - rating < 1 && i - rating > 0) {
-                starLabel = new JLabel("☆"); // Half star
-            } else {
-                starLabel = new JLabel("☆"); // Empty star
-            }
-            starLabel.setForeground(AMAZON_ORANGE);
-            starLabel.setFont(new Font("Arial", Font.BOLD, 16));
-            ratingPanel.add(starLabel);
+        // Stars and counts are filled in by showRating, again whenever reviews arrive
+        for (int i = 0; i < view.starLabels.length; i++) {
+            view.starLabels[i] = new JLabel("☆");
+            view.starLabels[i].setForeground(AMAZON_ORANGE);
+            view.starLabels[i].setFont(new Font("Arial", Font.BOLD, 16));
+            ratingPanel.add(view.starLabels[i]);
         }
         
-        JLabel ratingValueLabel = new JLabel(String.format(" %.1f", product.getRating()));
-        ratingValueLabel.setFont(new Font("Arial", Font.BOLD, 16));
-        ratingPanel.add(ratingValueLabel);
+        view.ratingValueLabel = new JLabel();
+        view.ratingValueLabel.setFont(new Font("Arial", Font.BOLD, 16));
+        ratingPanel.add(view.ratingValueLabel);
         
-        JLabel reviewsLabel = new JLabel(" (" + product.getReviewCount() + " reviews)");
-        reviewsLabel.setFont(new Font("Arial", Font.PLAIN, 14));
-        reviewsLabel.setForeground(new Color(0, 113, 133)); // Amazon link blue
-        ratingPanel.add(reviewsLabel);
+        view.reviewsLabel = new JLabel();
+        view.reviewsLabel.setFont(new Font("Arial", Font.PLAIN, 14));
+        view.reviewsLabel.setForeground(new Color(0, 113, 133)); // Amazon link blue
+        ratingPanel.add(view.reviewsLabel);
         
         ratingPanel.setAlignmentX(Component.LEFT_ALIGNMENT);
         
+        // Breakdown of the reviews received since the catalog was published
+        view.histogramLabel = new JLabel();
+        view.histogramLabel.setFont(new Font("Arial", Font.PLAIN, 12));
+        view.histogramLabel.setForeground(Color.GRAY);
+        view.histogramLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
+        showRating(view, product);
+        
         // Separator
         JSeparator separator = new JSeparator();
         separator.setMaximumSize(new Dimension(Integer.MAX_VALUE, 1));
@@ -1010,18 +2100,21 @@ public class OnlineShopApp {
         JPanel pricePanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 0));
         pricePanel.setOpaque(false);
         
-        JLabel priceLabel = new JLabel(String.format("₹%.2f", product.getPrice()));
+        // Views are dropped when prices change, so the offer stays current while cached
+        Pricing.Offer offer = pricing.getOffer(product);
+        JLabel priceLabel = new JLabel(offer.getFormattedPrice());
         priceLabel.setFont(new Font("Arial", Font.BOLD, 24));
         priceLabel.setForeground(new Color(177, 39, 4)); // Amazon red price
         
-        JLabel originalPriceLabel = new JLabel(String.format("₹%.2f", product.getPrice() * 1.2));
+        JLabel originalPriceLabel = new JLabel(offer.getFormattedListPrice());
         originalPriceLabel.setFont(new Font("Arial", Font.PLAIN, 18));
         originalPriceLabel.setForeground(Color.GRAY);
         
-        // Strike through the original price
+        // Strike through the list price when there is a discount
         StrikethroughLabel strikethroughLabel = new StrikethroughLabel(originalPriceLabel);
+        strikethroughLabel.setVisible(offer.isDiscounted());
         
-        JLabel discountLabel = new JLabel(" (20% off)");
+        JLabel discountLabel = new JLabel(offer.hasPromotion() ? " (" + offer.getBadge() + ")" : "");
         discountLabel.setFont(new Font("Arial", Font.BOLD, 16));
         discountLabel.setForeground(new Color(0, 128, 0)); // Green
         
@@ -1030,10 +2123,10 @@ public class OnlineShopApp {
         pricePanel.add(discountLabel);
         pricePanel.setAlignmentX(Component.LEFT_ALIGNMENT);
         
-        // Availability
-        JLabel availabilityLabel = new JLabel("In Stock");
+        // Availability, filled in each time the view is shown as stock changes while it is cached
+        JLabel availabilityLabel = new JLabel();
         availabilityLabel.setFont(new Font("Arial", Font.BOLD, 16));
-        availabilityLabel.setForeground(new Color(0, 128, 0)); // Green
+        view.availabilityLabel = availabilityLabel;
         availabilityLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
         
         // Delivery info
@@ -1061,8 +2154,8 @@ public class OnlineShopApp {
         featuresLabel.setFont(new Font("Arial", Font.BOLD, 16));
         featuresLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
         
-        // Generate some dummy features based on product type
-        String[] features = generateFeatures(product);
+        // Features of the product type, from features.txt
+        String[] features = product.getFeatures();
         JPanel featuresPanel = new JPanel();
         featuresPanel.setLayout(new BoxLayout(featuresPanel, BoxLayout.Y_AXIS));
         featuresPanel.setOpaque(false);
@@ -1090,7 +2183,7 @@ public class OnlineShopApp {
             @Override
             public void actionPerformed(ActionEvent e) {
                 addToCart(product);
-                detailDialog.dispose();
+                detailDialog.setVisible(false);
             }
         });
         
@@ -1109,6 +2202,7 @@ public class OnlineShopApp {
         detailsPanel.add(nameLabel);
         detailsPanel.add(Box.createRigidArea(new Dimension(0, 10)));
         detailsPanel.add(ratingPanel);
+        detailsPanel.add(view.histogramLabel);
         detailsPanel.add(Box.createRigidArea(new Dimension(0, 10)));
         detailsPanel.add(separator);
         detailsPanel.add(Box.createRigidArea(new Dimension(0, 10)));
@@ -1131,149 +2225,97 @@ public class OnlineShopApp {
         // Add panels to content panel
         contentPanel.add(imagePanel, BorderLayout.WEST);
         contentPanel.add(detailsPanel, BorderLayout.CENTER);
+        return view;
+    }
+    
+    // Content of the detail dialog for one product, and the image loads it started
+    private static class DetailView {
+        final JPanel content;
+        final ArrayList<Future<?>> imageLoads = new ArrayList<>();
+        final JLabel[] starLabels = new JLabel[5];
+        JLabel ratingValueLabel;
+        JLabel reviewsLabel;
+        JLabel histogramLabel;
+        JLabel availabilityLabel;
+        
+        DetailView(JPanel content) {
+            this.content = content;
+        }
         
-        // Add content to dialog
-        detailDialog.add(contentPanel, BorderLayout.CENTER);
-        
-        // Show dialog
-        detailDialog.setVisible(true);
+        void cancelImageLoads() {
+            for (Future<?> load : imageLoads) {
+                load.cancel(false);
+            }
+            imageLoads.clear();
+        }
     }
     
-    private String[] generateFeatures(Product product) {
-        String name = product.getName().toLowerCase();
+    // Renders a row of the order history. One set of components paints every row;
+    // rows whose page is still being read show a placeholder.
+    private class OrderRow implements ListCellRenderer<Order> {
+        static final int HEIGHT = 72;
+        
+        private final SimpleDateFormat dateFormat = new SimpleDateFormat("d MMM yyyy, HH:mm");
+        private final JPanel panel = new JPanel(new BorderLayout(10, 4));
+        private final JLabel titleLabel = new JLabel();
+        private final JLabel totalLabel = new JLabel();
+        private final JLabel itemsLabel = new JLabel();
+        
+        OrderRow() {
+            titleLabel.setFont(new Font("Arial", Font.BOLD, 14));
+            totalLabel.setFont(new Font("Arial", Font.BOLD, 14));
+            totalLabel.setForeground(AMAZON_ORANGE);
+            itemsLabel.setFont(new Font("Arial", Font.PLAIN, 13));
+            itemsLabel.setForeground(Color.DARK_GRAY);
+            
+            panel.setBorder(BorderFactory.createCompoundBorder(
+                BorderFactory.createMatteBorder(0, 0, 1, 0, new Color(222, 222, 222)),
+                BorderFactory.createEmptyBorder(10, 12, 10, 12)
+            ));
+            panel.add(titleLabel, BorderLayout.CENTER);
+            panel.add(totalLabel, BorderLayout.EAST);
+            panel.add(itemsLabel, BorderLayout.SOUTH);
+        }
         
-        if (name.contains("headphones")) {
-            return new String[] {
-                "Active noise cancellation with adaptive technology",
-                "Bluetooth 5.2 connectivity with multipoint pairing",
-                "30-hour battery life with quick charging",
-                "Premium 40mm drivers for studio-quality sound",
-                "Memory foam ear cushions for all-day comfort"
-            };
-        } else if (name.contains("earbuds")) {
-            return new String[] {
-                "Active noise cancellation with transparency mode",
-                "IPX7 water and sweat resistance",
-                "Touch controls for music and calls",
-                "24-hour total battery life with charging case",
-                "Custom EQ settings via companion app"
-            };
-        } else if (name.contains("laptop")) {
-            return new String[] {
-                "Intel Core i7-12700H processor (14 cores, up to 4.7GHz)",
-                "16GB DDR5 RAM (expandable to 64GB)",
-                "1TB NVMe PCIe 4.0 SSD",
-                "NVIDIA GeForce RTX 3070 Ti graphics (8GB GDDR6)",
-                "15.6\" QHD 165Hz display with 100% DCI-P3 color gamut"
-            };
-        } else if (name.contains("smartphone")) {
-            return new String[] {
-                "6.7\" Dynamic AMOLED display with 120Hz refresh rate",
-                "Triple camera system with 108MP main, 12MP ultrawide, and 10MP telephoto",
-                "5G connectivity with Wi-Fi 6E support",
-                "4500mAh battery with 45W fast charging and 15W wireless charging",
-                "IP68 water and dust resistance rating"
-            };
-        } else if (name.contains("speaker")) {
-            return new String[] {
-                "360° omnidirectional sound with dual passive radiators",
-                "IPX7 waterproof rating for complete submersion",
-                "24-hour battery life at moderate volume",
-                "Built-in microphone with noise cancellation for calls",
-                "Bluetooth 5.2 with 100ft wireless range"
-            };
-        } else if (name.contains("tv")) {
-            return new String[] {
-                "4K Ultra HD resolution (3840 x 2160) with HDR10+",
-                "Dolby Vision and Dolby Atmos support",
-                "Smart TV with voice control and AI-powered recommendations",
-                "4 HDMI 2.1 ports with eARC and VRR support",
-                "Quantum dot technology for 100% color volume"
-            };
-        } else if (name.contains("tracker") || name.contains("fitness")) {
-            return new String[] {
-                "24/7 heart rate and SpO2 monitoring",
-                "Built-in GPS with GLONASS support",
-                "Advanced sleep tracking with sleep stages analysis",
-                "Water resistant up to 50m for swimming",
-                "7-day battery life with always-on display"
-            };
-        } else if (name.contains("camera")) {
-            return new String[] {
-                "24.1MP APS-C CMOS sensor with DIGIC X processor",
-                "4K video recording at 60fps with 10-bit color",
-                "45-point all cross-type autofocus system",
-                "3.0\" vari-angle touchscreen with 1.04M dots",
-                "Built-in Wi-Fi, Bluetooth, and NFC connectivity"
-            };
-        } else if (name.contains("tablet")) {
-            return new String[] {
-                "10.9\" Liquid Retina display with P3 wide color",
-                "A14 Bionic chip with 6-core CPU and 4-core GPU",
-                "12MP wide back camera, 12MP ultra-wide front camera",
-                "Up to 10 hours of battery life on Wi-Fi",
-                "Support for Apple Pencil (2nd generation)"
-            };
-        } else if (name.contains("gaming")) {
-            return new String[] {
-                "AMD Ryzen 9 5900X processor (12 cores, up to 4.8GHz)",
-                "NVIDIA GeForce RTX 3080 graphics with 10GB GDDR6X",
-                "1TB NVMe SSD with 3500MB/s read speeds",
-                "32GB DDR4-3600MHz RAM with RGB lighting",
-                "Advanced cooling system with liquid cooling"
-            };
-        } else if (name.contains("keyboard")) {
-            return new String[] {
-                "Mechanical switches with 50 million keystroke lifespan",
-                "Per-key RGB lighting with 16.8 million colors",
-                "N-key rollover and 100% anti-ghosting",
-                "Programmable macro keys with onboard memory",
-                "Aircraft-grade aluminum frame for durability"
-            };
-        } else if (name.contains("mouse")) {
-            return new String[] {
-                "25,600 DPI optical sensor with 1ms response time",
-                "8 programmable buttons with onboard memory",
-                "Lightweight design (82g) with PTFE feet",
-                "Up to 70 hours battery life with fast charging",
-                "Ergonomic right-handed design with textured grips"
-            };
-        } else if (name.contains("charging")) {
-            return new String[] {
-                "15W fast wireless charging for compatible devices",
-                "Qi certification for universal compatibility",
-                "Foreign object detection for safety",
-                "LED indicator for charging status",
-                "Anti-slip surface with premium fabric finish"
-            };
-        } else if (name.contains("hub") || name.contains("smart home")) {
-            return new String[] {
-                "Compatible with over 10,000 smart home devices",
-                "Voice control with multiple assistant support",
-                "Advanced automation with customizable routines",
-                "Secure local processing for privacy protection",
-                "Zigbee, Z-Wave, and Bluetooth mesh connectivity"
-            };
-        } else if (name.contains("security")) {
-            return new String[] {
-                "4K Ultra HD video with HDR support",
-                "160° field of view with night vision up to 30ft",
-                "AI-powered person, vehicle, and package detection",
-                "Two-way audio with noise cancellation",
-                "Weatherproof design with IP66 rating"
-            };
-        } else {
-            return new String[] {
-                "Premium quality materials and construction",
-                "Energy efficient design with low power consumption",
-                "Smart features with app connectivity",
-                "Sleek, modern design that complements any space",
-                "2-year manufacturer warranty with extended options"
-            };
+        @Override
+        public Component getListCellRendererComponent(JList<? extends Order> list, Order order, int index,
+                                                      boolean isSelected, boolean cellHasFocus) {
+            panel.setBackground(isSelected ? new Color(255, 243, 224) : CARD_COLOR);
+            if (order == null) {
+                boolean unreadable = ((OrderHistoryModel) list.getModel()).isUnreadable(index);
+                titleLabel.setText(unreadable ? "This order could not be read" : "Loading...");
+                totalLabel.setText("");
+                itemsLabel.setText(" ");
+                return panel;
+            }
+            
+            titleLabel.setText("Order #" + order.getId() + "  \u00b7  " + dateFormat.format(new Date(order.getTime())));
+            totalLabel.setText(Money.format(order.getTotal()));
+            
+            StringBuilder items = new StringBuilder();
+            items.append(order.getItemCount() == 1 ? "1 item: " : order.getItemCount() + " items: ");
+            List<Order.Line> lines = order.getLines();
+            for (int i = 0; i < lines.size() && i < 3; i++) {
+                items.append(i > 0 ? ", " : "").append(lines.get(i).getName());
+            }
+            if (lines.size() > 3) {
+                items.append(" and ").append(lines.size() - 3).append(" more");
+            }
+            itemsLabel.setText(items.toString());
+            return panel;
         }
     }
     
     public static void main(String[] args) {
+        // "--server [port]" serves the shop over HTTP instead of opening the window
+        if (args.length > 0 && args[0].equals("--server")) {
+            ShopServer.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        
+        // Time every event on the EDT and report stalls
+        EdtMonitor.install();
+        
         // Use Event Dispatch Thread for Swing applications
         SwingUtilities.invokeLater(new Runnable() {
             @Override
@@ -0,0 +1,94 @@
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+// A placed order as recorded in the order journal. Lines keep the product's name
+// and price at the time of the order, so history reads the same after the
+// catalog changes.
+public class Order {
+    public static class Line {
+        private final int productId;
+        private final String name;
+        private final int quantity;
+        private final long unitPrice;
+        
+        public Line(int productId, String name, int quantity, long unitPrice) {
+            this.productId = productId;
+            this.name = name;
+            this.quantity = quantity;
+            this.unitPrice = unitPrice;
+        }
+        
+        // Catalog ID when the order was placed
+        public int getProductId() {
+            return productId;
+        }
+        
+        public String getName() {
+            return name;
+        }
+        
+        public int getQuantity() {
+            return quantity;
+        }
+        
+        // In paise, after discounts
+        public long getUnitPrice() {
+            return unitPrice;
+        }
+        
+        // Before any bundle's free units, which only the order total takes off
+        public long getLineTotal() {
+            return Money.multiply(unitPrice, quantity);
+        }
+    }
+    
+    private final long id;
+    private final long time;
+    private final long total;
+    private final Line[] lines;
+    
+    public Order(long id, long time, long total, Line[] lines) {
+        this.id = id;
+        this.time = time;
+        this.total = total;
+        this.lines = lines;
+    }
+    
+    // The lines of the cart as an order line array
+    public static Line[] linesOf(Cart cart) {
+        Line[] lines = new Line[cart.getLineCount()];
+        int i = 0;
+        for (Cart.Line line : cart.getLines()) {
+            Product product = line.getProduct();
+            lines[i++] = new Line(product.getId(), product.getName(), line.getQuantity(), line.getUnitPrice());
+        }
+        return lines;
+    }
+    
+    public long getId() {
+        return id;
+    }
+    
+    // Milliseconds since the epoch
+    public long getTime() {
+        return time;
+    }
+    
+    // In paise
+    public long getTotal() {
+        return total;
+    }
+    
+    public List<Line> getLines() {
+        return Collections.unmodifiableList(Arrays.asList(lines));
+    }
+    
+    public int getItemCount() {
+        int count = 0;
+        for (Line line : lines) {
+            count += line.quantity;
+        }
+        return count;
+    }
+}
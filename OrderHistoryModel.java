@@ -0,0 +1,159 @@
+import javax.swing.ListModel;
+import javax.swing.SwingUtilities;
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+// The orders in an order journal, newest first, as a list model that reads them a
+// page at a time. Only the pages a list actually renders are read, in the
+// background; until a page arrives its rows are null, and the list is told to
+// repaint them once it does. A bounded number of recently used pages is kept, so
+// scrolling through years of orders holds no more than a few hundred in memory.
+// The size is fixed when the model is created; orders placed later are not shown.
+public class OrderHistoryModel implements ListModel<Order> {
+    static final int PAGE_SIZE = 50;
+    private static final int CACHED_PAGES = 20;
+    
+    private final OrderJournal journal;
+    private final int size;
+    
+    // Pages by number, least recently used first; page 0 holds the oldest orders.
+    // Only touched on the EDT.
+    private final LinkedHashMap<Integer, List<Order>> pages = new LinkedHashMap<>(16, 0.75f, true);
+    private final HashSet<Integer> loadingPages = new HashSet<>();
+    private final HashSet<Integer> failedPages = new HashSet<>();
+    private volatile int lastRequestedPage = -1;
+    
+    private final ArrayList<ListDataListener> listeners = new ArrayList<>();
+    private final ExecutorService reader = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable task) {
+            Thread thread = new Thread(task, "order-history");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    
+    public OrderHistoryModel(OrderJournal journal) {
+        this.journal = journal;
+        this.size = journal.size();
+    }
+    
+    @Override
+    public int getSize() {
+        return size;
+    }
+    
+    // The order at the row, or null while its page is being read
+    @Override
+    public Order getElementAt(int index) {
+        int position = positionOf(index);
+        int page = position / PAGE_SIZE;
+        List<Order> orders = pages.get(page);
+        if (orders == null) {
+            requestPage(page);
+            return null;
+        }
+        return orders.get(position - page * PAGE_SIZE);
+    }
+    
+    // True if the row's page could not be read
+    public boolean isUnreadable(int index) {
+        return failedPages.contains(positionOf(index) / PAGE_SIZE);
+    }
+    
+    // Row of the order at a journal position, and back
+    public int indexOf(int position) {
+        return size - 1 - position;
+    }
+    
+    public int positionOf(int index) {
+        return size - 1 - index;
+    }
+    
+    private void requestPage(final int page) {
+        if (loadingPages.contains(page) || failedPages.contains(page) || reader.isShutdown()) {
+            return;
+        }
+        loadingPages.add(page);
+        lastRequestedPage = page;
+        
+        reader.execute(new Runnable() {
+            @Override
+            public void run() {
+                // Pages the list has scrolled far past are skipped; they are asked for
+                // again if they come back into view
+                List<Order> orders = null;
+                boolean failed = false;
+                if (Math.abs(page - lastRequestedPage) < CACHED_PAGES) {
+                    int start = page * PAGE_SIZE;
+                    try {
+                        orders = journal.read(start, Math.min(PAGE_SIZE, size - start));
+                    } catch (IOException e) {
+                        System.err.println("Error reading order history");
+                        e.printStackTrace();
+                        failed = true;
+                    }
+                }
+                
+                final List<Order> read = orders;
+                final boolean unreadable = failed;
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        pageRead(page, read, unreadable);
+                    }
+                });
+            }
+        });
+    }
+    
+    private void pageRead(int page, List<Order> orders, boolean failed) {
+        loadingPages.remove(page);
+        if (reader.isShutdown() || (orders == null && !failed)) {
+            return;
+        }
+        
+        if (failed) {
+            failedPages.add(page);
+        } else {
+            pages.put(page, orders);
+            if (pages.size() > CACHED_PAGES) {
+                Iterator<Integer> eldest = pages.keySet().iterator();
+                eldest.next();
+                eldest.remove();
+            }
+        }
+        
+        int first = page * PAGE_SIZE;
+        int last = Math.min(first + PAGE_SIZE, size) - 1;
+        ListDataEvent event = new ListDataEvent(this, ListDataEvent.CONTENTS_CHANGED, indexOf(last), indexOf(first));
+        for (ListDataListener listener : new ArrayList<>(listeners)) {
+            listener.contentsChanged(event);
+        }
+    }
+    
+    // Stops reading pages; call when the list is closed
+    public void dispose() {
+        reader.shutdownNow();
+        pages.clear();
+    }
+    
+    @Override
+    public void addListDataListener(ListDataListener listener) {
+        listeners.add(listener);
+    }
+    
+    @Override
+    public void removeListDataListener(ListDataListener listener) {
+        listeners.remove(listener);
+    }
+}
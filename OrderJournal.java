@@ -0,0 +1,420 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.zip.CRC32;
+
+// Append-only log of placed orders. An order counts as placed once its record has
+// been forced to disk. A single writer thread takes every order queued since its
+// last write, appends them together and forces the file once for the whole batch,
+// so concurrent checkouts share one fsync instead of queueing for one each.
+//
+// Layout (big-endian): an 8-byte header (magic, version), then one record per order:
+//   length and CRC-32 of the payload (ints), then the payload: order ID, time in
+//   milliseconds and total in paise (longs), line count (int), and per line the
+//   product ID and quantity (ints), unit price (long) and the name (unsigned
+//   short length + UTF-8)
+//
+// Opening the journal replays it to rebuild the order history index: the offset,
+// ID and time of every order, which are sorted alike because both IDs and times
+// only grow (see append). Orders themselves are read from disk a page at a time.
+// A record cut short by a crash fails its length or CRC check; it and anything
+// after it is dropped.
+public class OrderJournal implements Closeable {
+    private static final int MAGIC = 0x54544f4a; // "TTOJ"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int MAX_RECORD_SIZE = 16 * 1024 * 1024;
+    
+    // Order ID, time, total and line count at the start of every payload
+    private static final int ORDER_HEADER_SIZE = 8 + 8 + 8 + 4;
+    
+    // Orders written per force() at most
+    private static final int MAX_BATCH = 4096;
+    
+    // An order waiting for the writer; CLOSE stops it
+    private static class Pending {
+        final Order order;
+        final CompletableFuture<Order> written = new CompletableFuture<>();
+        
+        Pending(Order order) {
+            this.order = order;
+        }
+    }
+    
+    private static final Pending CLOSE = new Pending(null);
+    
+    private final String path;
+    private final FileChannel channel;
+    private final LinkedBlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    
+    // End of the last durable record; only the writer changes it after replay
+    private long end;
+    
+    // Index of the durable orders in journal order, so oldest first; the writer
+    // appends to it once a batch is on disk
+    private long[] offsets = new long[1024];
+    private long[] ids = new long[1024];
+    private long[] times = new long[1024];
+    private int size = 0;
+    
+    private long nextId = 1;
+    private long lastTime = 0;
+    private boolean closed = false;
+    
+    private OrderJournal(String path, FileChannel channel) {
+        this.path = path;
+        this.channel = channel;
+        this.writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeBatches();
+            }
+        }, "order-journal");
+        writer.setDaemon(true);
+    }
+    
+    // Opens the journal, creating it if needed, and replays it
+    public static OrderJournal open(String path) throws IOException {
+        FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE,
+                                               StandardOpenOption.READ, StandardOpenOption.WRITE);
+        OrderJournal journal = new OrderJournal(path, channel);
+        try {
+            journal.replay();
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        journal.writer.start();
+        return journal;
+    }
+    
+    private void replay() throws IOException {
+        long size = channel.size();
+        if (size == 0) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).flip();
+            writeFully(header, 0);
+            channel.force(true);
+            end = HEADER_SIZE;
+            return;
+        }
+        
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        if (size < HEADER_SIZE || !readFully(header, 0) || header.getInt(0) != MAGIC) {
+            throw new IOException("Not an order journal: " + path);
+        }
+        if (header.getInt(4) != VERSION) {
+            throw new IOException("Unsupported order journal version " + header.getInt(4));
+        }
+        
+        // Reads the file in large chunks and only builds the index, so a record's
+        // payload is checked but not decoded
+        ByteBuffer chunk = ByteBuffer.allocate(256 * 1024);
+        chunk.limit(0);
+        long chunkStart = HEADER_SIZE;
+        long position = HEADER_SIZE;
+        CRC32 crc = new CRC32();
+        while (position + RECORD_HEADER_SIZE <= size) {
+            int start = (int) (position - chunkStart);
+            if (start + RECORD_HEADER_SIZE > chunk.limit() || start + RECORD_HEADER_SIZE + chunk.getInt(start) > chunk.limit()) {
+                chunkStart = position;
+                chunk = readChunk(chunk, position, size);
+                start = 0;
+            }
+            int length = chunk.getInt(start);
+            if (length < ORDER_HEADER_SIZE || length > MAX_RECORD_SIZE || position + RECORD_HEADER_SIZE + length > size) {
+                break;
+            }
+            
+            crc.reset();
+            crc.update(chunk.array(), start + RECORD_HEADER_SIZE, length);
+            if ((int) crc.getValue() != chunk.getInt(start + 4)) {
+                break;
+            }
+            
+            long id = chunk.getLong(start + RECORD_HEADER_SIZE);
+            long time = chunk.getLong(start + RECORD_HEADER_SIZE + 8);
+            addToIndex(position, id, time);
+            nextId = Math.max(nextId, id + 1);
+            lastTime = Math.max(lastTime, time);
+            position += RECORD_HEADER_SIZE + length;
+        }
+        
+        if (position < size) {
+            System.err.println("Dropping damaged end of order journal " + path + " at byte " + position + " of " + size);
+            channel.truncate(position);
+            channel.force(true);
+        }
+        end = position;
+    }
+    
+    // Records an order for the cart's lines. Returns at once; the future completes
+    // once the order is on disk, or fails if it could not be written. Call with the
+    // cart locked.
+    public CompletableFuture<Order> append(Cart cart) {
+        Order.Line[] lines = Order.linesOf(cart);
+        synchronized (this) {
+            if (closed) {
+                CompletableFuture<Order> failed = new CompletableFuture<>();
+                failed.completeExceptionally(new IOException("Order journal is closed: " + path));
+                return failed;
+            }
+            
+            // IDs are taken in queue order, so the journal is sorted by ID. Times never go
+            // backwards either, even if the clock does, so it is sorted by time as well.
+            lastTime = Math.max(lastTime, System.currentTimeMillis());
+            Pending pending = new Pending(new Order(nextId++, lastTime, cart.getTotal(), lines));
+            queue.add(pending);
+            return pending.written;
+        }
+    }
+    
+    // Number of durable orders. Orders are addressed by position, from 0 for the
+    // oldest to size() - 1 for the newest.
+    public synchronized int size() {
+        return size;
+    }
+    
+    // Position of the order with this ID, or -1 if there is none
+    public synchronized int find(long id) {
+        int position = Arrays.binarySearch(ids, 0, size, id);
+        return position >= 0 ? position : -1;
+    }
+    
+    // Position of the first order placed at or after time (milliseconds since the
+    // epoch), or size() if there is none
+    public synchronized int positionAt(long time) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (times[mid] < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+    
+    // Reads count orders from position on, oldest first. Consecutive records are
+    // fetched with a single read, so a page costs one trip to the disk.
+    public List<Order> read(int position, int count) throws IOException {
+        long start;
+        long end;
+        synchronized (this) {
+            if (position < 0 || count < 0 || position + count > size) {
+                throw new IndexOutOfBoundsException("Orders " + position + "+" + count + " of " + size);
+            }
+            if (count == 0) {
+                return new ArrayList<>();
+            }
+            start = offsets[position];
+            end = position + count < size ? offsets[position + count] : this.end;
+        }
+        
+        ByteBuffer records = ByteBuffer.allocate((int) (end - start));
+        if (!readFully(records, start)) {
+            throw new IOException("Order journal is shorter than its index: " + path);
+        }
+        ArrayList<Order> orders = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int length = records.getInt();
+            records.getInt();
+            ByteBuffer payload = records.slice();
+            payload.limit(length);
+            orders.add(decode(payload));
+            records.position(records.position() + length);
+        }
+        return orders;
+    }
+    
+    private void addToIndex(long offset, long id, long time) {
+        if (size == offsets.length) {
+            int capacity = size + (size >> 1);
+            offsets = Arrays.copyOf(offsets, capacity);
+            ids = Arrays.copyOf(ids, capacity);
+            times = Arrays.copyOf(times, capacity);
+        }
+        offsets[size] = offset;
+        ids[size] = id;
+        times[size] = time;
+        size++;
+    }
+    
+    private void writeBatches() {
+        ArrayList<Pending> batch = new ArrayList<>();
+        long[] batchOffsets = new long[MAX_BATCH];
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        boolean closing = false;
+        while (!closing) {
+            batch.clear();
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(batch, MAX_BATCH - 1);
+            
+            buffer.clear();
+            for (int i = 0; i < batch.size(); i++) {
+                if (batch.get(i) == CLOSE) {
+                    closing = true;
+                    batch.remove(i--);
+                    continue;
+                }
+                batchOffsets[i] = end + buffer.position();
+                buffer = encode(buffer, batch.get(i).order);
+            }
+            if (batch.isEmpty()) {
+                continue;
+            }
+            
+            buffer.flip();
+            try {
+                writeFully(buffer, end);
+                channel.force(false);
+            } catch (IOException e) {
+                System.err.println("Error writing order journal: " + path);
+                e.printStackTrace();
+                for (Pending pending : batch) {
+                    pending.written.completeExceptionally(e);
+                }
+                
+                // Cut off whatever part of the batch was written, so later orders follow the last good one
+                try {
+                    channel.truncate(end);
+                } catch (IOException truncateError) {
+                    System.err.println("Error truncating order journal: " + path);
+                }
+                continue;
+            }
+            
+            synchronized (this) {
+                for (int i = 0; i < batch.size(); i++) {
+                    Order order = batch.get(i).order;
+                    addToIndex(batchOffsets[i], order.getId(), order.getTime());
+                }
+                end += buffer.limit();
+            }
+            for (Pending pending : batch) {
+                pending.written.complete(pending.order);
+            }
+        }
+    }
+    
+    // Appends the order's record, growing the buffer when it is full
+    private static ByteBuffer encode(ByteBuffer buffer, Order order) {
+        List<Order.Line> lines = order.getLines();
+        byte[][] names = new byte[lines.size()][];
+        int length = ORDER_HEADER_SIZE;
+        for (int i = 0; i < names.length; i++) {
+            names[i] = lines.get(i).getName().getBytes(StandardCharsets.UTF_8);
+            if (names[i].length > 0xFFFF) {
+                names[i] = Arrays.copyOf(names[i], 0xFFFF);
+            }
+            length += 4 + 4 + 8 + 2 + names[i].length;
+        }
+        
+        if (buffer.remaining() < RECORD_HEADER_SIZE + length) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + RECORD_HEADER_SIZE + length));
+            buffer.flip();
+            larger.put(buffer);
+            buffer = larger;
+        }
+        
+        int start = buffer.position();
+        buffer.putInt(length).putInt(0);
+        buffer.putLong(order.getId()).putLong(order.getTime()).putLong(order.getTotal()).putInt(names.length);
+        for (int i = 0; i < names.length; i++) {
+            Order.Line line = lines.get(i);
+            buffer.putInt(line.getProductId()).putInt(line.getQuantity()).putLong(line.getUnitPrice());
+            buffer.putShort((short) names[i].length).put(names[i]);
+        }
+        
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), start + RECORD_HEADER_SIZE, length);
+        buffer.putInt(start + 4, (int) crc.getValue());
+        return buffer;
+    }
+    
+    private static Order decode(ByteBuffer payload) {
+        long id = payload.getLong();
+        long time = payload.getLong();
+        long total = payload.getLong();
+        Order.Line[] lines = new Order.Line[payload.getInt()];
+        for (int i = 0; i < lines.length; i++) {
+            int productId = payload.getInt();
+            int quantity = payload.getInt();
+            long unitPrice = payload.getLong();
+            byte[] name = new byte[payload.getShort() & 0xFFFF];
+            payload.get(name);
+            lines[i] = new Order.Line(productId, new String(name, StandardCharsets.UTF_8), quantity, unitPrice);
+        }
+        return new Order(id, time, total, lines);
+    }
+    
+    // Reads the file from position on into the buffer, or into a larger one if the
+    // record there does not fit; returns the buffer read into
+    private ByteBuffer readChunk(ByteBuffer chunk, long position, long size) throws IOException {
+        chunk.clear();
+        chunk.limit((int) Math.min(chunk.capacity(), size - position));
+        readFully(chunk, position);
+        if (chunk.limit() >= RECORD_HEADER_SIZE) {
+            int length = chunk.getInt(0);
+            int needed = RECORD_HEADER_SIZE + Math.max(0, Math.min(length, MAX_RECORD_SIZE));
+            if (needed > chunk.limit() && needed <= size - position) {
+                return readChunk(ByteBuffer.allocate(needed), position, size);
+            }
+        }
+        return chunk;
+    }
+    
+    private boolean readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                return false;
+            }
+        }
+        buffer.flip();
+        return true;
+    }
+    
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+    
+    // Writes every order queued so far, then closes the file
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            queue.add(CLOSE);
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while closing order journal: " + path, e);
+        } finally {
+            channel.close();
+        }
+    }
+}
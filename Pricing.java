@@ -0,0 +1,445 @@
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Prices after promotions, read from promotions.txt. A promotion takes a
+// percentage or a fixed amount off, or gives units free when enough are bought,
+// for one product, a category or everything, optionally only between two times.
+// When several discounts apply the lowest price wins; a bundle applies on top.
+//
+// The promotions running now are compiled into lookups by product name and
+// category, so pricing a product costs a few hash and bit set lookups however
+// many promotions there are. Each product's offer is then cached by ID until a
+// promotion is changed or one starts or ends, so cards showing the same products
+// again only read an array.
+public class Pricing {
+    public enum Kind { PERCENT, AMOUNT, BUNDLE }
+    
+    public static final class Promotion {
+        private final String target;
+        private final Kind kind;
+        private final long value;
+        private final int buy;
+        private final int free;
+        private final long from;
+        private final long until;
+        
+        // target: "all", "category <name>" or "product <name>"; value is the percentage
+        // or the amount in paise; buy and free are for bundles; from and until are
+        // milliseconds since the epoch, or Long.MIN_VALUE and Long.MAX_VALUE
+        public Promotion(String target, Kind kind, long value, int buy, int free, long from, long until) {
+            this.target = target;
+            this.kind = kind;
+            this.value = value;
+            this.buy = buy;
+            this.free = free;
+            this.from = from;
+            this.until = until;
+        }
+        
+        boolean isRunning(long time) {
+            return time >= from && time < until;
+        }
+        
+        long apply(long price) {
+            if (kind == Kind.PERCENT) {
+                return Money.percent(price, (int) (100 - value));
+            }
+            return Math.max(0, Money.subtract(price, value));
+        }
+        
+        @Override
+        public String toString() {
+            if (kind == Kind.BUNDLE) {
+                return "Buy " + buy + ", get " + free + " free";
+            }
+            return kind == Kind.PERCENT ? value + "% off" : Money.format(value) + " off";
+        }
+    }
+    
+    // The price of one product under the promotions running when it was evaluated
+    public static final class Offer {
+        private final long listPrice;
+        private final long price;
+        private final Promotion bundle;
+        
+        // Built once per offer and reused while it is cached
+        private String formattedPrice;
+        private String formattedListPrice;
+        private String badge;
+        
+        Offer(long listPrice, long price, Promotion bundle) {
+            this.listPrice = listPrice;
+            this.price = price;
+            this.bundle = bundle;
+        }
+        
+        // In paise, before any promotion
+        public long getListPrice() {
+            return listPrice;
+        }
+        
+        // In paise, after the best discount
+        public long getPrice() {
+            return price;
+        }
+        
+        public boolean isDiscounted() {
+            return price < listPrice;
+        }
+        
+        public boolean hasPromotion() {
+            return isDiscounted() || bundle != null;
+        }
+        
+        // What quantity units cost, with every bundle's free units taken off
+        public long getTotal(int quantity) {
+            int paid = quantity;
+            if (bundle != null) {
+                paid -= quantity / (bundle.buy + bundle.free) * bundle.free;
+            }
+            return Money.multiply(price, paid);
+        }
+        
+        public String getFormattedPrice() {
+            if (formattedPrice == null) {
+                formattedPrice = Money.format(price);
+            }
+            return formattedPrice;
+        }
+        
+        public String getFormattedListPrice() {
+            if (formattedListPrice == null) {
+                formattedListPrice = Money.format(listPrice);
+            }
+            return formattedListPrice;
+        }
+        
+        // "Save 20%", "Buy 2, get 1 free" or both; null without a promotion
+        public String getBadge() {
+            if (badge == null && hasPromotion()) {
+                StringBuilder text = new StringBuilder();
+                if (isDiscounted()) {
+                    long percent = Math.multiplyExact(listPrice - price, 100L) / listPrice;
+                    text.append("Save ").append(percent > 0 ? percent + "%" : Money.format(listPrice - price));
+                }
+                if (bundle != null) {
+                    text.append(text.length() > 0 ? " + " : "").append(bundle);
+                }
+                badge = text.toString();
+            }
+            return badge;
+        }
+    }
+    
+    // The promotions running from one moment until validUntil, compiled for lookup
+    private static final class RuleSet {
+        final int version;
+        final long validUntil;
+        final HashMap<String, Promotion[]> byProduct = new HashMap<>();
+        final ArrayList<BitSet> categoryMembers = new ArrayList<>();
+        final ArrayList<Promotion> categoryPromotions = new ArrayList<>();
+        final ArrayList<Promotion> everywhere = new ArrayList<>();
+        
+        // Offers by product ID; may be replaced by a larger copy, losing a few
+        // entries written meanwhile, which are then just evaluated again
+        volatile Offer[] offers = new Offer[1024];
+        
+        RuleSet(int version, long validUntil) {
+            this.version = version;
+            this.validUntil = validUntil;
+        }
+    }
+    
+    private static final Pattern PERCENT = Pattern.compile("(\\d{1,2})\\s*%\\s*off");
+    private static final Pattern AMOUNT = Pattern.compile("(?:₹|rs\\.?)?\\s*(\\d+(?:\\.\\d{1,2})?)\\s*off");
+    private static final Pattern BUNDLE = Pattern.compile("buy\\s+(\\d+)\\s*,?\\s*get\\s+(\\d+)\\s+free");
+    
+    private final CategoryIndex categoryIndex;
+    private final boolean cachesOffers;
+    private final Clock clock;
+    private List<Promotion> promotions = Collections.emptyList();
+    private volatile RuleSet rules = new RuleSet(0, Long.MAX_VALUE);
+    
+    // Prices without any promotion, for carts that are not tied to a shop
+    public static final Pricing LIST_PRICES = new Pricing(null, false, Clock.systemUTC());
+    
+    public Pricing(CategoryIndex categoryIndex) {
+        this(categoryIndex, Clock.systemUTC());
+    }
+    
+    // Promotions start and end by the clock's time
+    Pricing(CategoryIndex categoryIndex, Clock clock) {
+        this(categoryIndex, true, clock);
+    }
+    
+    // LIST_PRICES prices products of any catalog, so its offers cannot be cached by ID
+    private Pricing(CategoryIndex categoryIndex, boolean cachesOffers, Clock clock) {
+        this.categoryIndex = categoryIndex;
+        this.cachesOffers = cachesOffers;
+        this.clock = clock;
+    }
+    
+    // Reads promotions in the format "Target | Discount | From | Until", one per line.
+    // Lines that cannot be read are reported and skipped.
+    public static Pricing load(String path, CategoryIndex categoryIndex) {
+        Pricing pricing = new Pricing(categoryIndex);
+        ArrayList<Promotion> promotions = new ArrayList<>();
+        
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(path), StandardCharsets.UTF_8))) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                
+                try {
+                    promotions.add(parse(line));
+                } catch (IllegalArgumentException e) {
+                    System.err.println("Ignoring promotion at " + path + ":" + lineNumber + ": " + e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error loading promotions: " + path);
+        }
+        
+        pricing.setPromotions(promotions);
+        return pricing;
+    }
+    
+    static Promotion parse(String line) {
+        String[] parts = line.split("\\|", -1);
+        if (parts.length < 2 || parts.length > 4) {
+            throw new IllegalArgumentException("expected Target | Discount | From | Until");
+        }
+        
+        String target = parts[0].trim().replaceAll("\\s+", " ");
+        String lowerTarget = target.toLowerCase(Locale.ROOT);
+        if (!lowerTarget.equals("all") && !lowerTarget.startsWith("category ") && !lowerTarget.startsWith("product ")) {
+            throw new IllegalArgumentException("unknown target " + target);
+        }
+        
+        long from = parts.length > 2 ? parseTime(parts[2].trim(), Long.MIN_VALUE) : Long.MIN_VALUE;
+        long until = parts.length > 3 ? parseTime(parts[3].trim(), Long.MAX_VALUE) : Long.MAX_VALUE;
+        
+        String discount = parts[1].trim().toLowerCase(Locale.ROOT);
+        Matcher matcher;
+        if ((matcher = PERCENT.matcher(discount)).matches()) {
+            int percent = Integer.parseInt(matcher.group(1));
+            if (percent == 0) {
+                throw new IllegalArgumentException("discount of 0%");
+            }
+            return new Promotion(target, Kind.PERCENT, percent, 0, 0, from, until);
+        }
+        if ((matcher = AMOUNT.matcher(discount)).matches()) {
+            return new Promotion(target, Kind.AMOUNT, Money.fromRupees(Double.parseDouble(matcher.group(1))), 0, 0, from, until);
+        }
+        if ((matcher = BUNDLE.matcher(discount)).matches()) {
+            int buy = Integer.parseInt(matcher.group(1));
+            int free = Integer.parseInt(matcher.group(2));
+            if (buy == 0 || free == 0) {
+                throw new IllegalArgumentException("bundle without units");
+            }
+            return new Promotion(target, Kind.BUNDLE, 0, buy, free, from, until);
+        }
+        throw new IllegalArgumentException("unknown discount " + parts[1].trim());
+    }
+    
+    // "2026-11-01" or "2026-11-01 18:00" in local time; blank for no limit
+    private static long parseTime(String text, long none) {
+        if (text.isEmpty()) {
+            return none;
+        }
+        SimpleDateFormat format = new SimpleDateFormat(text.length() > 10 ? "yyyy-MM-dd HH:mm" : "yyyy-MM-dd");
+        format.setLenient(false);
+        try {
+            return format.parse(text).getTime();
+        } catch (ParseException e) {
+            throw new IllegalArgumentException("invalid time " + text);
+        }
+    }
+    
+    // Replaces every promotion; prices are evaluated again when next asked for
+    public synchronized void setPromotions(List<Promotion> promotions) {
+        this.promotions = new ArrayList<>(promotions);
+        rules = compile(clock.millis());
+    }
+    
+    public synchronized List<Promotion> getPromotions() {
+        return Collections.unmodifiableList(promotions);
+    }
+    
+    // Changes whenever the prices may have; carts compare it to see if they must reprice
+    public int getVersion() {
+        return current().version;
+    }
+    
+    // When a promotion next starts or ends, in milliseconds since the epoch, or
+    // Long.MAX_VALUE if none will
+    public long getNextChange() {
+        return current().validUntil;
+    }
+    
+    // Drops every cached price; call when the catalog is replaced, as offers are
+    // cached by product ID
+    public synchronized void invalidate() {
+        rules = compile(clock.millis());
+    }
+    
+    public Offer getOffer(Product product) {
+        RuleSet rules = current();
+        int id = product.getId();
+        Offer[] offers = rules.offers;
+        if (id >= 0 && id < offers.length && offers[id] != null) {
+            return offers[id];
+        }
+        
+        Offer offer = evaluate(rules, product);
+        if (id >= 0 && cachesOffers) {
+            if (id >= offers.length) {
+                offers = grow(rules, id);
+            }
+            offers[id] = offer;
+        }
+        return offer;
+    }
+    
+    private static Offer[] grow(RuleSet rules, int id) {
+        synchronized (rules) {
+            Offer[] offers = rules.offers;
+            if (id >= offers.length) {
+                offers = Arrays.copyOf(offers, Math.max(id + 1, offers.length + (offers.length >> 1)));
+                rules.offers = offers;
+            }
+            return offers;
+        }
+    }
+    
+    private Offer evaluate(RuleSet rules, Product product) {
+        long listPrice = product.getPrice();
+        long price = listPrice;
+        Promotion bundle = null;
+        
+        if (!rules.byProduct.isEmpty()) {
+            Promotion[] promotions = rules.byProduct.get(product.getName().toLowerCase(Locale.ROOT));
+            if (promotions != null) {
+                for (Promotion promotion : promotions) {
+                    if (promotion.kind == Kind.BUNDLE) {
+                        bundle = bundle != null ? bundle : promotion;
+                    } else {
+                        price = Math.min(price, promotion.apply(listPrice));
+                    }
+                }
+            }
+        }
+        
+        int id = product.getId();
+        for (int i = 0; i < rules.categoryPromotions.size(); i++) {
+            if (id < 0 || !rules.categoryMembers.get(i).get(id)) {
+                continue;
+            }
+            Promotion promotion = rules.categoryPromotions.get(i);
+            if (promotion.kind == Kind.BUNDLE) {
+                bundle = bundle != null ? bundle : promotion;
+            } else {
+                price = Math.min(price, promotion.apply(listPrice));
+            }
+        }
+        
+        for (Promotion promotion : rules.everywhere) {
+            if (promotion.kind == Kind.BUNDLE) {
+                bundle = bundle != null ? bundle : promotion;
+            } else {
+                price = Math.min(price, promotion.apply(listPrice));
+            }
+        }
+        return new Offer(listPrice, price, bundle);
+    }
+    
+    private RuleSet current() {
+        RuleSet current = rules;
+        if (clock.millis() < current.validUntil) {
+            return current;
+        }
+        synchronized (this) {
+            long now = clock.millis();
+            if (now >= rules.validUntil) {
+                rules = compile(now);
+            }
+            return rules;
+        }
+    }
+    
+    // Only the promotions running at time are compiled; the rule set is valid
+    // until the first one starts or ends after that
+    private RuleSet compile(long time) {
+        long validUntil = Long.MAX_VALUE;
+        for (Promotion promotion : promotions) {
+            if (promotion.from > time) {
+                validUntil = Math.min(validUntil, promotion.from);
+            } else if (promotion.until > time) {
+                validUntil = Math.min(validUntil, promotion.until);
+            }
+        }
+        
+        RuleSet compiled = new RuleSet(rules.version + 1, validUntil);
+        HashMap<String, ArrayList<Promotion>> byProduct = new HashMap<>();
+        for (Promotion promotion : promotions) {
+            if (!promotion.isRunning(time)) {
+                continue;
+            }
+            
+            String target = promotion.target.toLowerCase(Locale.ROOT);
+            if (target.equals("all")) {
+                compiled.everywhere.add(promotion);
+            } else if (target.startsWith("product ")) {
+                String name = target.substring("product ".length());
+                if (!byProduct.containsKey(name)) {
+                    byProduct.put(name, new ArrayList<Promotion>());
+                }
+                byProduct.get(name).add(promotion);
+            } else {
+                BitSet members = findCategory(promotion.target.substring("category ".length()));
+                if (members == null) {
+                    System.err.println("Ignoring promotion for unknown " + promotion.target);
+                    continue;
+                }
+                compiled.categoryMembers.add(members);
+                compiled.categoryPromotions.add(promotion);
+            }
+        }
+        for (String name : byProduct.keySet()) {
+            compiled.byProduct.put(name, byProduct.get(name).toArray(new Promotion[0]));
+        }
+        return compiled;
+    }
+    
+    private BitSet findCategory(String name) {
+        if (categoryIndex == null) {
+            return null;
+        }
+        for (String category : categoryIndex.getCategories()) {
+            if (category.equalsIgnoreCase(name)) {
+                return categoryIndex.getProductIds(category);
+            }
+        }
+        return null;
+    }
+}
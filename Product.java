@@ -1,64 +1,151 @@
+// A view of one row in a ProductStore. Catalog products are created on demand
+// by Catalog.get, so two Product objects for the same row are equal.
 public class Product {
-    private String name;
-    private double price;
-    private String description;
-    private String imagePath;
-    private double rating;
-    private int reviewCount;
+    private final ProductStore store;
+    private final int row;
+    private final int id;
+    
+    // Shared with every product of the same type; see FeatureSpecs
+    private final String[] features;
+    
+    private static final String[] NO_FEATURES = new String[0];
+    
+    // The fields of a product outside a catalog, as plain fields rather than columns
+    private static final class Detached implements ProductStore {
+        private final String name;
+        private final long price;
+        private final String description;
+        private final String imagePath;
+        private final float rating;
+        private final int reviewCount;
+        
+        Detached(String name, long price, String description, String imagePath, float rating, int reviewCount) {
+            this.name = name;
+            this.price = price;
+            this.description = description;
+            this.imagePath = imagePath;
+            this.rating = rating;
+            this.reviewCount = reviewCount;
+        }
+        
+        @Override
+        public int size() {
+            return 1;
+        }
+        
+        @Override
+        public String getName(int row) {
+            return name;
+        }
+        
+        @Override
+        public long getPrice(int row) {
+            return price;
+        }
+        
+        @Override
+        public String getDescription(int row) {
+            return description;
+        }
+        
+        @Override
+        public String getImagePath(int row) {
+            return imagePath;
+        }
+        
+        @Override
+        public float getRating(int row) {
+            return rating;
+        }
+        
+        @Override
+        public int getReviewCount(int row) {
+            return reviewCount;
+        }
+    }
     
     public Product(String name, double price, String description) {
-        this.name = name;
-        this.price = price;
-        this.description = description;
-        this.imagePath = null;
-        this.rating = 0.0;
-        this.reviewCount = 0;
+        this(name, price, description, null, 0.0, 0);
     }
     
     public Product(String name, double price, String description, String imagePath) {
-        this.name = name;
-        this.price = price;
-        this.description = description;
-        this.imagePath = imagePath;
-        this.rating = 0.0;
-        this.reviewCount = 0;
+        this(name, price, description, imagePath, 0.0, 0);
     }
     
+    // A product that is not in a catalog yet; it keeps its fields in a one-row store
     public Product(String name, double price, String description, String imagePath, double rating, int reviewCount) {
-        this.name = name;
-        this.price = price;
-        this.description = description;
-        this.imagePath = imagePath;
-        this.rating = rating;
-        this.reviewCount = reviewCount;
+        this.store = new Detached(name, Money.fromRupees(price), description != null ? description : "",
+                                  imagePath, (float) rating, reviewCount);
+        this.row = 0;
+        this.id = -1;
+        this.features = NO_FEATURES;
+    }
+    
+    Product(ProductStore store, int row, int id, String[] features) {
+        this.store = store;
+        this.row = row;
+        this.id = id;
+        this.features = features;
+    }
+    
+    // Position in the catalog, or -1 for a product that has not been added
+    public int getId() {
+        return id;
     }
     
     public String getName() {
-        return name;
+        return store.getName(row);
+    }
+    
+    // List price in paise, before promotions; see Pricing
+    public long getPrice() {
+        return store.getPrice(row);
     }
     
-    public double getPrice() {
-        return price;
+    // Not cached, since Catalog.get creates a new view for every lookup; the prices
+    // on screen come from the offers Pricing caches per product
+    public String getFormattedPrice() {
+        return Money.format(getPrice());
     }
     
     public String getDescription() {
-        return description;
+        return store.getDescription(row);
     }
     
     public String getImagePath() {
-        return imagePath;
+        return store.getImagePath(row);
     }
     
     public double getRating() {
-        return rating;
+        return store.getRating(row);
     }
     
     public int getReviewCount() {
-        return reviewCount;
+        return store.getReviewCount(row);
+    }
+    
+    // Key features of the product's type, none until it is added to a catalog.
+    // The array is shared and must not be modified.
+    public String[] getFeatures() {
+        return features;
+    }
+    
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof Product)) {
+            return false;
+        }
+        Product product = (Product) other;
+        return store == product.store && row == product.row;
+    }
+    
+    @Override
+    public int hashCode() {
+        return System.identityHashCode(store) * 31 + row;
     }
     
     @Override
     public String toString() {
-        return name + " - ₹" + price;
+        return getName() + " - " + getFormattedPrice();
     }
 } 
\ No newline at end of file
@@ -0,0 +1,224 @@
+import javax.swing.*;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import java.awt.*;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Grid of product cards that only creates cards for the rows inside the scroll
+// pane's viewport (plus a few rows of overscan) and recycles them while scrolling.
+// The list can be a page of a longer listing; the near-end listener is told when the
+// viewport gets close to its last row so the next page can be appended.
+@SuppressWarnings("serial")
+public class ProductGrid extends JPanel {
+    // Creates and fills in the card components shown by the grid
+    public interface CardFactory {
+        JComponent createCard();
+        
+        void bindCard(JComponent card, Product product);
+        
+        // Called when a card scrolls out of view, before it is reused
+        void unbindCard(JComponent card);
+    }
+    
+    private static final int OVERSCAN_ROWS = 2;
+    
+    // Rows left below the viewport when the near-end listener is told
+    private static final int LOAD_AHEAD_ROWS = 4;
+    
+    private final CardFactory factory;
+    private final int columns;
+    private final int hgap;
+    private final int vgap;
+    
+    // Cards only grow as we measure them, so rows never overlap
+    private int cellWidth;
+    private int cellHeight;
+    
+    private List<Product> products = Collections.emptyList();
+    
+    // Cards currently showing a product, keyed by product ID so a card survives
+    // when its product is still in view after the list changes
+    private HashMap<Integer, JComponent> boundCards = new HashMap<>();
+    private final ArrayDeque<JComponent> recycledCards = new ArrayDeque<>();
+    
+    private Runnable nearEndListener;
+    
+    private JViewport viewport;
+    private final ChangeListener viewportListener = new ChangeListener() {
+        @Override
+        public void stateChanged(ChangeEvent e) {
+            updateVisibleCards();
+        }
+    };
+    
+    public ProductGrid(CardFactory factory, int columns, int hgap, int vgap, int estimatedCellWidth, int estimatedCellHeight) {
+        super(null);
+        this.factory = factory;
+        this.columns = columns;
+        this.hgap = hgap;
+        this.vgap = vgap;
+        this.cellWidth = estimatedCellWidth;
+        this.cellHeight = estimatedCellHeight;
+        setOpaque(false);
+    }
+    
+    // Replaces the list; cards of products that stay in view are only moved, not rebuilt
+    public void setProducts(List<Product> products) {
+        this.products = products;
+        revalidate();
+        repaint();
+        updateVisibleCards();
+    }
+    
+    // Run on the EDT whenever the viewport is within LOAD_AHEAD_ROWS of the last row
+    public void setNearEndListener(Runnable listener) {
+        this.nearEndListener = listener;
+    }
+    
+    public List<Product> getProducts() {
+        return products;
+    }
+    
+    // Unbinds every card so they stop loading images
+    public void releaseCards() {
+        for (JComponent card : boundCards.values()) {
+            recycle(card);
+        }
+        boundCards.clear();
+    }
+    
+    // Cards in view by the ID of the product bound to them; changes as the grid scrolls
+    public Map<Integer, JComponent> getBoundCards() {
+        return Collections.unmodifiableMap(boundCards);
+    }
+    
+    // Number of card components that exist, bound or not
+    public int getCardCount() {
+        return getComponentCount();
+    }
+    
+    private int getRowCount() {
+        return (products.size() + columns - 1) / columns;
+    }
+    
+    @Override
+    public Dimension getPreferredSize() {
+        int rows = getRowCount();
+        int height = rows == 0 ? 0 : rows * cellHeight + (rows - 1) * vgap;
+        return new Dimension(columns * cellWidth + (columns - 1) * hgap, height);
+    }
+    
+    @Override
+    public Dimension getMaximumSize() {
+        return new Dimension(Integer.MAX_VALUE, getPreferredSize().height);
+    }
+    
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        viewport = (JViewport) SwingUtilities.getAncestorOfClass(JViewport.class, this);
+        if (viewport != null) {
+            viewport.addChangeListener(viewportListener);
+        }
+    }
+    
+    @Override
+    public void removeNotify() {
+        if (viewport != null) {
+            viewport.removeChangeListener(viewportListener);
+            viewport = null;
+        }
+        super.removeNotify();
+    }
+    
+    @Override
+    public void doLayout() {
+        updateVisibleCards();
+    }
+    
+    private void updateVisibleCards() {
+        Rectangle visible = getVisibleRect();
+        int rows = getRowCount();
+        if (rows == 0 || visible.height <= 0) {
+            releaseCards();
+            return;
+        }
+        
+        int rowHeight = cellHeight + vgap;
+        int firstRow = Math.max(0, visible.y / rowHeight - OVERSCAN_ROWS);
+        int lastRow = Math.min(rows - 1, (visible.y + visible.height) / rowHeight + OVERSCAN_ROWS);
+        int firstIndex = firstRow * columns;
+        int lastIndex = Math.min(products.size() - 1, (lastRow + 1) * columns - 1);
+        
+        // Keep cards whose product is still in range
+        HashMap<Integer, JComponent> previousCards = boundCards;
+        HashMap<Integer, JComponent> keptCards = new HashMap<>();
+        for (int index = firstIndex; index <= lastIndex; index++) {
+            int id = products.get(index).getId();
+            JComponent card = previousCards.remove(id);
+            if (card != null) {
+                keptCards.put(id, card);
+            }
+        }
+        
+        // Recycle the rest before binding new cards so they can be reused right away
+        for (JComponent card : previousCards.values()) {
+            recycle(card);
+        }
+        boundCards = keptCards;
+        
+        int width = Math.max(cellWidth, (getWidth() - (columns - 1) * hgap) / columns);
+        boolean grew = false;
+        for (int index = firstIndex; index <= lastIndex; index++) {
+            Product product = products.get(index);
+            JComponent card = boundCards.get(product.getId());
+            if (card == null) {
+                card = obtainCard();
+                factory.bindCard(card, product);
+                card.setVisible(true);
+                boundCards.put(product.getId(), card);
+                
+                Dimension preferred = card.getPreferredSize();
+                if (preferred.height > cellHeight || preferred.width > cellWidth) {
+                    cellHeight = Math.max(cellHeight, preferred.height);
+                    cellWidth = Math.max(cellWidth, preferred.width);
+                    grew = true;
+                }
+            }
+            
+            int row = index / columns;
+            int column = index % columns;
+            card.setBounds(column * (width + hgap), row * (cellHeight + vgap), width, cellHeight);
+            card.validate();
+        }
+        
+        if (grew) {
+            // A taller card than expected; lay the rows out again with the new height
+            revalidate();
+            repaint();
+        }
+        
+        if (nearEndListener != null && lastRow >= rows - 1 - LOAD_AHEAD_ROWS) {
+            nearEndListener.run();
+        }
+    }
+    
+    private JComponent obtainCard() {
+        JComponent card = recycledCards.poll();
+        if (card == null) {
+            card = factory.createCard();
+            add(card);
+        }
+        return card;
+    }
+    
+    private void recycle(JComponent card) {
+        factory.unbindCard(card);
+        card.setVisible(false);
+        recycledCards.push(card);
+    }
+}
@@ -0,0 +1,20 @@
+// Product fields kept column by column and addressed by row number.
+// Product objects are only views of a row, so a catalog does not need one
+// object per SKU. Stores that can grow implement AppendableProductStore.
+public interface ProductStore {
+    int size();
+    
+    String getName(int row);
+    
+    // In paise
+    long getPrice(int row);
+    
+    String getDescription(int row);
+    
+    // Null when the product has no image
+    String getImagePath(int row);
+    
+    float getRating(int row);
+    
+    int getReviewCount(int row);
+}
@@ -0,0 +1,280 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// Customer reviews arriving as a stream: lines of "productId,stars" appended to a
+// file, such as one a review service writes, and reviews submitted in-process. A
+// single reader thread follows the file like tail -f and keeps a count per star
+// for every product, so each review updates the product's average in place and
+// the history is never read again. The catalog's rating and review count are the
+// starting point of every average.
+//
+// Products whose rating changed are reported to the listener as one set at most
+// every BATCH_MS, so a view updates once per batch however many reviews arrived.
+public class Reviews implements AutoCloseable {
+    // Called on the reader thread; the set is not used by the reader afterwards
+    public interface Listener {
+        void ratingsChanged(BitSet productIds);
+    }
+    
+    private static final int BATCH_MS = 250;
+    private static final int POLL_MS = 200;
+    
+    // Product IDs beyond this are rejected rather than growing the counts without bound
+    private static final int MAX_PRODUCT_ID = 1 << 24;
+    
+    private final String path;
+    private final Listener listener;
+    private final LinkedBlockingQueue<Long> submitted = new LinkedBlockingQueue<>();
+    private final Thread reader;
+    
+    // Reviews with 1 to 5 stars at [5 * productId] to [5 * productId + 4]. Only the
+    // reader thread writes; it publishes the counts by writing ingested afterwards.
+    private volatile int[] starCounts = new int[5 * 1024];
+    private volatile long ingested = 0;
+    private volatile long rejected = 0;
+    private long added = 0;
+    
+    private BitSet changed = new BitSet();
+    private long lastBatch = System.nanoTime();
+    
+    // Reads from the end of the last full line; only the reader thread uses these
+    private FileChannel channel;
+    private long position = 0;
+    private final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+    
+    public Reviews(String path, Listener listener) {
+        this.path = path;
+        this.listener = listener;
+        this.reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                readReviews();
+            }
+        }, "review-reader");
+        reader.setDaemon(true);
+    }
+    
+    // Starts following the file from its beginning; it does not need to exist yet
+    public void start() {
+        reader.start();
+    }
+    
+    // Stops the reader thread; reviews arriving afterwards are not counted
+    @Override
+    public void close() {
+        reader.interrupt();
+    }
+    
+    // Queues a review for the reader thread; false if the stars or product are invalid
+    public boolean submit(int productId, int stars) {
+        if (productId < 0 || productId >= MAX_PRODUCT_ID || stars < 1 || stars > 5) {
+            return false;
+        }
+        submitted.add(((long) productId << 3) | stars);
+        return true;
+    }
+    
+    // Average stars, including the reviews the catalog started with
+    public double getRating(Product product) {
+        return getRating(product.getId(), product.getRating(), product.getReviewCount());
+    }
+    
+    // Like getRating(Product), for the product with this ID and catalog rating and
+    // review count, so no Product is needed
+    public double getRating(int productId, double rating, int reviewCount) {
+        int[] counts = counts(productId);
+        long reviews = reviewCount;
+        double stars = rating * reviews;
+        for (int i = 0; i < 5; i++) {
+            reviews += counts[i];
+            stars += (double) (i + 1) * counts[i];
+        }
+        return reviews > 0 ? stars / reviews : 0;
+    }
+    
+    public int getReviewCount(Product product) {
+        return getReviewCount(product.getId(), product.getReviewCount());
+    }
+    
+    public int getReviewCount(int productId, int reviewCount) {
+        long reviews = reviewCount;
+        for (int count : counts(productId)) {
+            reviews += count;
+        }
+        return (int) Math.min(reviews, Integer.MAX_VALUE);
+    }
+    
+    // Reviews received per star, 1 star first; the catalog's reviews have no breakdown
+    public int[] getHistogram(Product product) {
+        return counts(product.getId());
+    }
+    
+    private int[] counts(int productId) {
+        if (ingested == 0 || productId < 0) {
+            return new int[5];
+        }
+        int[] counts = starCounts;
+        int start = 5 * productId;
+        return start < counts.length ? Arrays.copyOfRange(counts, start, start + 5) : new int[5];
+    }
+    
+    // Reviews read so far, and lines that were not valid reviews
+    public long getIngestedCount() {
+        return ingested;
+    }
+    
+    public long getRejectedCount() {
+        return rejected;
+    }
+    
+    private void readReviews() {
+        while (!Thread.currentThread().isInterrupted()) {
+            boolean read = false;
+            try {
+                read = readFile();
+            } catch (ClosedByInterruptException e) {
+                closeFile();
+                return;
+            } catch (IOException e) {
+                System.err.println("Error reading reviews: " + path);
+                e.printStackTrace();
+                closeFile();
+            }
+            
+            Long review;
+            while ((review = submitted.poll()) != null) {
+                add((int) (review >>> 3), (int) (review & 7));
+                read = true;
+            }
+            
+            // A batch goes out every BATCH_MS while reviews keep coming, and at once
+            // when they stop
+            if (!changed.isEmpty() && (!read || System.nanoTime() - lastBatch >= TimeUnit.MILLISECONDS.toNanos(BATCH_MS))) {
+                publish();
+            }
+            
+            if (!read) {
+                try {
+                    review = submitted.poll(POLL_MS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (review != null) {
+                    add((int) (review >>> 3), (int) (review & 7));
+                }
+            }
+        }
+    }
+    
+    // Reads whatever has been appended since the last call; returns false if nothing was
+    private boolean readFile() throws IOException {
+        if (channel == null) {
+            try {
+                channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+            } catch (NoSuchFileException e) {
+                return false;
+            }
+        }
+        
+        long size = channel.size();
+        if (size < position) {
+            System.err.println(path + " was truncated; reading reviews from its start again");
+            position = 0;
+            buffer.clear();
+        }
+        
+        int read = channel.read(buffer, position + buffer.position());
+        if (read <= 0) {
+            return false;
+        }
+        
+        // Parse the complete lines and keep a partial last line for the next read
+        buffer.flip();
+        int lineStart = 0;
+        for (int i = 0; i < buffer.limit(); i++) {
+            if (buffer.get(i) == '\n') {
+                parseLine(lineStart, i);
+                lineStart = i + 1;
+            }
+        }
+        position += lineStart;
+        buffer.position(lineStart);
+        buffer.compact();
+        
+        // A line longer than the buffer cannot be a review; skip past it
+        if (!buffer.hasRemaining()) {
+            rejected++;
+            position += buffer.position();
+            buffer.clear();
+        }
+        return true;
+    }
+    
+    private void parseLine(int start, int end) {
+        if (end > start && buffer.get(end - 1) == '\r') {
+            end--;
+        }
+        
+        int productId = 0;
+        int i = start;
+        while (i < end && buffer.get(i) >= '0' && buffer.get(i) <= '9' && productId < MAX_PRODUCT_ID) {
+            productId = productId * 10 + (buffer.get(i++) - '0');
+        }
+        if (i == start || i >= end || buffer.get(i) != ',' || productId >= MAX_PRODUCT_ID) {
+            if (end > start && buffer.get(start) != '#') {
+                rejected++;
+            }
+            return;
+        }
+        
+        int stars = i + 1 < end ? buffer.get(i + 1) - '0' : 0;
+        if (stars < 1 || stars > 5 || (i + 2 < end && buffer.get(i + 2) != ',')) {
+            rejected++;
+            return;
+        }
+        add(productId, stars);
+    }
+    
+    private void add(int productId, int stars) {
+        int index = 5 * productId + stars - 1;
+        int[] counts = starCounts;
+        if (index >= counts.length) {
+            counts = Arrays.copyOf(counts, Math.max(index + 1, counts.length + (counts.length >> 1)));
+            starCounts = counts;
+        }
+        counts[index]++;
+        added++;
+        changed.set(productId);
+    }
+    
+    private void publish() {
+        ingested = added;
+        
+        BitSet batch = changed;
+        changed = new BitSet();
+        lastBatch = System.nanoTime();
+        if (listener != null) {
+            listener.ratingsChanged(batch);
+        }
+    }
+    
+    private void closeFile() {
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException e) {
+            // Reopened on the next read
+        }
+        channel = null;
+    }
+}
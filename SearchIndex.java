@@ -0,0 +1,617 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+
+public class SearchIndex {
+    // Field weights: a hit in the name counts more than one in the description
+    private static final float NAME_WEIGHT = 3.0f;
+    private static final float FEATURE_WEIGHT = 1.5f;
+    private static final float DESCRIPTION_WEIGHT = 1.0f;
+    
+    // BM25-style term frequency saturation
+    private static final float K1 = 1.2f;
+    
+    // How much a query token is trusted depending on how it matched a term
+    private static final float EXACT_MATCH = 1.0f;
+    private static final float PREFIX_MATCH = 0.7f;
+    private static final float FUZZY_MATCH = 0.4f;
+    
+    // Tokens shorter than this only match exactly or by prefix
+    private static final int MIN_FUZZY_LENGTH = 4;
+    
+    private static final String ALPHABET = "abcdefghijklmnopqrstuvwxyz0123456789";
+    
+    // Documents containing a term, with the term's weight in each document
+    private static class Postings {
+        int[] docs = new int[4];
+        float[] weights = new float[4];
+        int size = 0;
+        
+        void add(int doc, float weight) {
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+                weights = Arrays.copyOf(weights, size * 2);
+            }
+            docs[size] = doc;
+            weights[size] = weight;
+            size++;
+        }
+    }
+    
+    // Result of a query: the ranked top documents plus the full set of matches,
+    // which a longer query typed on top of this one can refine instead of starting over
+    public static class Result {
+        private final ArrayList<String> tokens;
+        private final int[] productIds;
+        private final int[] matches;
+        private final int matchCount;
+        private final int indexedCount;
+        
+        Result(ArrayList<String> tokens, int[] productIds, int[] matches, int matchCount, int indexedCount) {
+            this.tokens = tokens;
+            this.productIds = productIds;
+            this.matches = matches;
+            this.matchCount = matchCount;
+            this.indexedCount = indexedCount;
+        }
+        
+        // Product IDs in relevance order
+        public int[] getProductIds() {
+            return productIds;
+        }
+        
+        public int getMatchCount() {
+            return matchCount;
+        }
+    }
+    
+    // Term dictionary
+    private final HashMap<String, Integer> termIds = new HashMap<>();
+    private final ArrayList<String> terms = new ArrayList<>();
+    private final ArrayList<Postings> postings = new ArrayList<>();
+    
+    // Forward index: term IDs of each document and their weights, used to refine results
+    private int[][] docTerms = new int[16][];
+    private float[][] docWeights = new float[16][];
+    private long forwardTermCount = 0;
+    
+    // Per-document popularity used to break ties between similar text matches
+    private float[] docQuality = new float[16];
+    private int docCount = 0;
+    
+    // Per-document scratch of search, shared by every query since searches are
+    // synchronized. Entries are all zero between queries: search clears the ones it set.
+    private float[] scores = new float[0];
+    private float[] tokenScores = new float[0];
+    private int[] matchedTokens = new int[0];
+    
+    // Sorted view of the dictionary for prefix lookups, rebuilt lazily after adds
+    private String[] sortedTerms;
+    private int[] sortedTermIds;
+    
+    // Indexes a product under its catalog ID
+    public void add(Product product, String[] features) {
+        add(product.getId(), product.getName(), product.getDescription(), features,
+            product.getRating(), product.getReviewCount());
+    }
+    
+    // Indexes a product from its fields, so the catalog's store is not read
+    public synchronized void add(int doc, String name, String description, String[] features,
+                                 double rating, int reviewCount) {
+        TermCounter counter = new TermCounter();
+        addField(counter, name, NAME_WEIGHT);
+        addField(counter, description, DESCRIPTION_WEIGHT);
+        if (features != null) {
+            for (String feature : features) {
+                addField(counter, feature, FEATURE_WEIGHT);
+            }
+        }
+        
+        ensureDocCapacity(doc + 1);
+        
+        int[] ids = Arrays.copyOf(counter.termIds, counter.size);
+        float[] weights = new float[counter.size];
+        for (int i = 0; i < counter.size; i++) {
+            float frequency = counter.frequencies[i];
+            weights[i] = frequency * (K1 + 1) / (frequency + K1);
+            postings.get(ids[i]).add(doc, weights[i]);
+        }
+        
+        docTerms[doc] = ids;
+        docWeights[doc] = weights;
+        forwardTermCount += ids.length;
+        docQuality[doc] = quality(rating, reviewCount);
+        docCount = Math.max(docCount, doc + 1);
+    }
+    
+    // Weighted term frequencies of one document; documents are short so a linear scan is fine
+    private static class TermCounter {
+        int[] termIds = new int[32];
+        float[] frequencies = new float[32];
+        int size = 0;
+        
+        void add(int termId, float weight) {
+            for (int i = 0; i < size; i++) {
+                if (termIds[i] == termId) {
+                    frequencies[i] += weight;
+                    return;
+                }
+            }
+            if (size == termIds.length) {
+                termIds = Arrays.copyOf(termIds, size * 2);
+                frequencies = Arrays.copyOf(frequencies, size * 2);
+            }
+            termIds[size] = termId;
+            frequencies[size] = weight;
+            size++;
+        }
+    }
+    
+    private void addField(TermCounter counter, String text, float weight) {
+        for (String token : tokenize(text)) {
+            Integer termId = termIds.get(token);
+            if (termId == null) {
+                termId = terms.size();
+                termIds.put(token, termId);
+                terms.add(token);
+                postings.add(new Postings());
+                sortedTerms = null;
+            }
+            counter.add(termId, weight);
+        }
+    }
+    
+    private void ensureDocCapacity(int capacity) {
+        if (capacity > docQuality.length) {
+            int newCapacity = Math.max(capacity, docQuality.length * 2);
+            docTerms = Arrays.copyOf(docTerms, newCapacity);
+            docWeights = Arrays.copyOf(docWeights, newCapacity);
+            docQuality = Arrays.copyOf(docQuality, newCapacity);
+        }
+    }
+    
+    // Popularity signal between 0 and 1 from rating and review count
+    private static float quality(double rating, int reviewCount) {
+        double ratingScore = rating / 5.0;
+        double reviewScore = Math.min(1.0, Math.log1p(reviewCount) / Math.log1p(1000));
+        return (float) (ratingScore * (0.5 + 0.5 * reviewScore));
+    }
+    
+    public static ArrayList<String> tokenize(String text) {
+        ArrayList<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        
+        StringBuilder token = new StringBuilder();
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? Character.toLowerCase(text.charAt(i)) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                token.append(c);
+            } else if (token.length() > 0) {
+                tokens.add(token.toString());
+                token.setLength(0);
+            }
+        }
+        return tokens;
+    }
+    
+    // Returns up to limit product IDs ranked by text relevance blended with rating and reviews
+    public Result search(String query, int limit) {
+        return search(query, limit, null);
+    }
+    
+    // Like search(query, limit), but reuses the matches of a previous query when the new
+    // query only got longer. Throws CancellationException if the calling thread is interrupted.
+    public synchronized Result search(String query, int limit, Result previous) {
+        ArrayList<String> tokens = tokenize(query);
+        if (tokens.isEmpty() || docCount == 0) {
+            return emptyResult(tokens);
+        }
+        
+        // Expand every token into the dictionary terms it matches
+        Expansion[] expansions = new Expansion[tokens.size()];
+        long postingCount = 0;
+        for (int i = 0; i < tokens.size(); i++) {
+            expansions[i] = expand(tokens.get(i));
+            if (expansions[i].termIds.length == 0) {
+                return emptyResult(tokens);
+            }
+            postingCount += expansions[i].postingCount;
+        }
+        
+        // Most selective tokens first so the candidate set shrinks quickly
+        Arrays.sort(expansions, new Comparator<Expansion>() {
+            @Override
+            public int compare(Expansion a, Expansion b) {
+                return Integer.compare(a.postingCount, b.postingCount);
+            }
+        });
+        
+        // Re-checking the previous matches is only worth it when they are cheaper to visit than the postings
+        if (previous != null && canRefine(previous, tokens)) {
+            long refineCost = (long) previous.matchCount * expansions.length * forwardTermCount / docCount;
+            if (refineCost < postingCount) {
+                return refine(previous, tokens, expansions, limit);
+            }
+        }
+        
+        if (scores.length < docCount) {
+            scores = new float[docQuality.length];
+            tokenScores = new float[docQuality.length];
+            matchedTokens = new int[docQuality.length];
+        }
+        
+        // Every later candidate matched the first token, so the first token's matches
+        // are all the scratch entries that need clearing afterwards
+        int[] firstMatches = null;
+        int firstMatchCount = 0;
+        int[] touched = null;
+        int touchedCount = 0;
+        try {
+            int[] candidates = new int[0];
+            int candidateCount = docCount;
+            
+            for (int i = 0; i < expansions.length; i++) {
+                Expansion expansion = expansions[i];
+                touched = new int[Math.min(candidateCount, expansion.postingCount)];
+                touchedCount = 0;
+                
+                // A document stays a candidate only if it matched every earlier token
+                for (int t = 0; t < expansion.termIds.length; t++) {
+                    checkCancelled();
+                    Postings list = postings.get(expansion.termIds[t]);
+                    float factor = expansion.factors[t];
+                    for (int p = 0; p < list.size; p++) {
+                        int doc = list.docs[p];
+                        if (matchedTokens[doc] != i) {
+                            continue;
+                        }
+                        float score = factor * list.weights[p];
+                        if (tokenScores[doc] == 0) {
+                            touched[touchedCount++] = doc;
+                            tokenScores[doc] = score;
+                        } else if (score > tokenScores[doc]) {
+                            tokenScores[doc] = score;
+                        }
+                    }
+                }
+                
+                // Each token contributes its best matching term
+                for (int c = 0; c < touchedCount; c++) {
+                    int doc = touched[c];
+                    scores[doc] += tokenScores[doc];
+                    tokenScores[doc] = 0;
+                    matchedTokens[doc] = i + 1;
+                }
+                
+                if (i == 0) {
+                    firstMatches = touched;
+                    firstMatchCount = touchedCount;
+                }
+                candidates = touched;
+                candidateCount = touchedCount;
+                if (candidateCount == 0) {
+                    return emptyResult(tokens);
+                }
+            }
+            
+            float[] candidateScores = new float[candidateCount];
+            for (int c = 0; c < candidateCount; c++) {
+                candidateScores[c] = scores[candidates[c]];
+            }
+            return rank(tokens, candidates, candidateCount, candidateScores, limit);
+        } finally {
+            // A cancelled first pass only set the entries of the matches it had found
+            if (firstMatches != null) {
+                clearScratch(firstMatches, firstMatchCount);
+            } else if (touched != null) {
+                clearScratch(touched, touchedCount);
+            }
+        }
+    }
+    
+    private void clearScratch(int[] docs, int count) {
+        for (int c = 0; c < count; c++) {
+            int doc = docs[c];
+            scores[doc] = 0;
+            tokenScores[doc] = 0;
+            matchedTokens[doc] = 0;
+        }
+    }
+    
+    // Scores only the previous matches against the new query using the forward index
+    private Result refine(Result previous, ArrayList<String> tokens, Expansion[] expansions, int limit) {
+        float[] scores = new float[previous.matchCount];
+        int[] candidates = new int[previous.matchCount];
+        int candidateCount = 0;
+        
+        for (int c = 0; c < previous.matchCount; c++) {
+            if ((c & 1023) == 0) {
+                checkCancelled();
+            }
+            
+            int doc = previous.matches[c];
+            float score = 0;
+            for (int i = 0; i < expansions.length; i++) {
+                float tokenScore = expansions[i].score(docTerms[doc], docWeights[doc]);
+                if (tokenScore == 0) {
+                    score = 0;
+                    break;
+                }
+                score += tokenScore;
+            }
+            
+            if (score > 0) {
+                scores[candidateCount] = score;
+                candidates[candidateCount++] = doc;
+            }
+        }
+        
+        return rank(tokens, candidates, candidateCount, scores, limit);
+    }
+    
+    // The new query can only match a subset of the previous matches if it keeps every earlier token,
+    // only extends the last one, and may add more tokens after it
+    private boolean canRefine(Result previous, ArrayList<String> tokens) {
+        ArrayList<String> previousTokens = previous.tokens;
+        if (previous.indexedCount != docCount || previousTokens.isEmpty() || tokens.size() < previousTokens.size()) {
+            return false;
+        }
+        
+        int last = previousTokens.size() - 1;
+        for (int i = 0; i < last; i++) {
+            if (!previousTokens.get(i).equals(tokens.get(i))) {
+                return false;
+            }
+        }
+        
+        String previousToken = previousTokens.get(last);
+        String token = tokens.get(last);
+        if (!token.startsWith(previousToken)) {
+            return false;
+        }
+        
+        // A token that just became long enough for typo matching can match terms the shorter one did not
+        return token.length() == previousToken.length()
+            || previousToken.length() >= MIN_FUZZY_LENGTH
+            || token.length() < MIN_FUZZY_LENGTH;
+    }
+    
+    // scores[i] is the text score of candidates[i]
+    private Result rank(ArrayList<String> tokens, int[] candidates, int candidateCount, float[] scores, int limit) {
+        // Blend text relevance with rating and review count
+        for (int c = 0; c < candidateCount; c++) {
+            scores[c] *= 1.0f + docQuality[candidates[c]];
+        }
+        
+        int[] top = topK(candidates, candidateCount, scores, limit);
+        return new Result(tokens, top, candidates, candidateCount, docCount);
+    }
+    
+    private Result emptyResult(ArrayList<String> tokens) {
+        return new Result(tokens, new int[0], new int[0], 0, docCount);
+    }
+    
+    private static void checkCancelled() {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new CancellationException("Search cancelled");
+        }
+    }
+    
+    // Dictionary terms matched by one query token, sorted by term ID
+    private class Expansion {
+        final int[] termIds;
+        final float[] factors;
+        final BitSet termSet = new BitSet();
+        final int postingCount;
+        
+        Expansion(Map<Integer, Float> matches) {
+            termIds = new int[matches.size()];
+            int i = 0;
+            for (Integer termId : matches.keySet()) {
+                termIds[i++] = termId;
+            }
+            Arrays.sort(termIds);
+            
+            factors = new float[termIds.length];
+            int count = 0;
+            for (i = 0; i < termIds.length; i++) {
+                Postings list = postings.get(termIds[i]);
+                factors[i] = matches.get(termIds[i]) * idf(list.size);
+                termSet.set(termIds[i]);
+                count += list.size;
+            }
+            postingCount = count;
+        }
+        
+        // Best weighted match between this token and a document's terms
+        float score(int[] docTermIds, float[] weights) {
+            float best = 0;
+            for (int i = 0; i < docTermIds.length; i++) {
+                if (termSet.get(docTermIds[i])) {
+                    int index = Arrays.binarySearch(termIds, docTermIds[i]);
+                    best = Math.max(best, factors[index] * weights[i]);
+                }
+            }
+            return best;
+        }
+    }
+    
+    private float idf(int documentFrequency) {
+        return (float) Math.log(1 + (docCount - documentFrequency + 0.5) / (documentFrequency + 0.5));
+    }
+    
+    private Expansion expand(String token) {
+        ensureSorted();
+        HashMap<Integer, Float> matches = new HashMap<>();
+        
+        // Typo tolerance: terms starting with anything one edit away from the token
+        if (token.length() >= MIN_FUZZY_LENGTH) {
+            for (String variant : edits(token)) {
+                addPrefixMatches(matches, variant, FUZZY_MATCH);
+            }
+        }
+        
+        addPrefixMatches(matches, token, PREFIX_MATCH);
+        
+        Integer exact = termIds.get(token);
+        if (exact != null) {
+            matches.put(exact, EXACT_MATCH);
+        }
+        
+        return new Expansion(matches);
+    }
+    
+    private void addPrefixMatches(HashMap<Integer, Float> matches, String prefix, float factor) {
+        int index = lowerBound(prefix);
+        while (index < sortedTerms.length && sortedTerms[index].startsWith(prefix)) {
+            Float previous = matches.get(sortedTermIds[index]);
+            if (previous == null || previous < factor) {
+                matches.put(sortedTermIds[index], factor);
+            }
+            index++;
+        }
+    }
+    
+    private int lowerBound(String key) {
+        int low = 0;
+        int high = sortedTerms.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sortedTerms[mid].compareTo(key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+    
+    private void ensureSorted() {
+        if (sortedTerms != null) {
+            return;
+        }
+        
+        Integer[] order = new Integer[terms.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return terms.get(a).compareTo(terms.get(b));
+            }
+        });
+        
+        sortedTerms = new String[order.length];
+        sortedTermIds = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            sortedTermIds[i] = order[i];
+            sortedTerms[i] = terms.get(order[i]);
+        }
+    }
+    
+    // All strings one deletion, substitution, insertion or swap of neighbouring
+    // characters away from the token
+    private static ArrayList<String> edits(String token) {
+        ArrayList<String> variants = new ArrayList<>();
+        for (int i = 0; i < token.length(); i++) {
+            variants.add(token.substring(0, i) + token.substring(i + 1));
+        }
+        for (int i = 0; i + 1 < token.length(); i++) {
+            if (token.charAt(i) != token.charAt(i + 1)) {
+                variants.add(token.substring(0, i) + token.charAt(i + 1) + token.charAt(i) + token.substring(i + 2));
+            }
+        }
+        for (int i = 0; i < token.length(); i++) {
+            for (int a = 0; a < ALPHABET.length(); a++) {
+                char c = ALPHABET.charAt(a);
+                if (c != token.charAt(i)) {
+                    variants.add(token.substring(0, i) + c + token.substring(i + 1));
+                }
+            }
+        }
+        for (int i = 0; i <= token.length(); i++) {
+            for (int a = 0; a < ALPHABET.length(); a++) {
+                variants.add(token.substring(0, i) + ALPHABET.charAt(a) + token.substring(i));
+            }
+        }
+        return variants;
+    }
+    
+    // Picks the highest scoring documents without sorting every match.
+    // The heap holds positions into docs/scores.
+    private static int[] topK(int[] docs, int count, float[] scores, int limit) {
+        int k = Math.min(limit, count);
+        int[] heap = new int[k];
+        int size = 0;
+        
+        for (int i = 0; i < count; i++) {
+            if (size < k) {
+                heap[size] = i;
+                siftUp(heap, size++, docs, scores);
+            } else if (k > 0 && better(i, heap[0], docs, scores)) {
+                heap[0] = i;
+                siftDown(heap, size, docs, scores);
+            }
+        }
+        
+        // Drain the min-heap from the back to get descending order
+        int[] result = new int[size];
+        for (int i = size - 1; i >= 0; i--) {
+            result[i] = docs[heap[0]];
+            heap[0] = heap[i];
+            siftDown(heap, i, docs, scores);
+        }
+        return result;
+    }
+    
+    // Higher score wins; ties go to the earlier product
+    private static boolean better(int a, int b, int[] docs, float[] scores) {
+        return scores[a] > scores[b] || (scores[a] == scores[b] && docs[a] < docs[b]);
+    }
+    
+    private static void siftUp(int[] heap, int index, int[] docs, float[] scores) {
+        while (index > 0) {
+            int parent = (index - 1) / 2;
+            if (!better(heap[parent], heap[index], docs, scores)) {
+                break;
+            }
+            int tmp = heap[parent];
+            heap[parent] = heap[index];
+            heap[index] = tmp;
+            index = parent;
+        }
+    }
+    
+    private static void siftDown(int[] heap, int size, int[] docs, float[] scores) {
+        int index = 0;
+        while (true) {
+            int left = index * 2 + 1;
+            int right = left + 1;
+            int smallest = index;
+            if (left < size && better(heap[smallest], heap[left], docs, scores)) {
+                smallest = left;
+            }
+            if (right < size && better(heap[smallest], heap[right], docs, scores)) {
+                smallest = right;
+            }
+            if (smallest == index) {
+                break;
+            }
+            int tmp = heap[smallest];
+            heap[smallest] = heap[index];
+            heap[index] = tmp;
+            index = smallest;
+        }
+    }
+    
+    public synchronized int getTermCount() {
+        return terms.size();
+    }
+}
@@ -0,0 +1,653 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Headless shop: the catalog, search, per-session carts and checkout served as
+// JSON over HTTP on the loopback interface, using the same Catalog, FacetEngine
+// and Cart as the window. Start it with
+//   java OnlineShopApp --server [port]
+//
+// Endpoints (prices are in paise):
+//   GET  /api/categories                   category names with product counts
+//   GET  /api/products?category=&sort=&price=&rating=&offset=&limit=
+//   GET  /api/products/<id>                one product with its description and features
+//   GET  /api/facets?category=&price=&rating=
+//   GET  /api/search?q=&limit=
+//   GET  /api/cart                         the session's cart
+//   POST /api/cart/add?id=&quantity=
+//   POST /api/cart/remove?id=&quantity=
+//   POST /api/cart/quantity?id=&quantity=   sets the quantity, 0 removes the product
+//   POST /api/checkout                     places the order once it is on disk and empties the cart
+//   POST /api/reviews?id=&stars=           adds a review of 1 to 5 stars; ratings include it shortly after
+//
+// POST parameters may also be sent as a form body. Carts belong to the session
+// named by the "session" cookie, which is set when the first product is added.
+public class ShopServer implements HttpHandler {
+    private static final int DEFAULT_PORT = 8080;
+    private static final int DEFAULT_PAGE_SIZE = 20;
+    private static final int MAX_PAGE_SIZE = 100;
+    private static final String SESSION_COOKIE = "session";
+    
+    private final Catalog catalog;
+    
+    // Only read once loaded, except for the facet engine, whose queries must not
+    // overlap; the cursors they return can be read concurrently
+    private final FacetEngine facets;
+    private volatile String categoriesJson;
+    
+    private final Pricing pricing;
+    private final CartStore carts;
+    private final Inventory inventory = new Inventory();
+    private final Reviews reviews;
+    
+    // Carts are repriced first in case a promotion started or ended since
+    private final CartStore.Action<String> CART_JSON = new CartStore.Action<String>() {
+        @Override
+        public String apply(Cart cart) {
+            cart.reprice();
+            return cartJson(cart);
+        }
+    };
+    
+    private final OrderJournal orders;
+    
+    public ShopServer(Catalog catalog, Pricing pricing, Reviews reviews, OrderJournal orders) {
+        this.catalog = catalog;
+        this.pricing = pricing;
+        this.reviews = reviews;
+        this.carts = new CartStore(pricing);
+        this.orders = orders;
+        this.facets = catalog.getFacets();
+        facets.setReviews(reviews);
+    }
+    
+    public static void main(String[] args) {
+        int port = DEFAULT_PORT;
+        if (args.length > 0) {
+            try {
+                port = Integer.parseInt(args[0]);
+            } catch (NumberFormatException e) {
+                System.err.println("Usage: java OnlineShopApp --server [port]");
+                System.exit(1);
+            }
+        }
+        
+        try {
+            Catalog catalog = loadCatalog(OnlineShopApp.CATALOG_FILE);
+            Pricing pricing = Pricing.load("promotions.txt", catalog.getCategoryIndex());
+            OrderJournal orders = OrderJournal.open(OnlineShopApp.ORDERS_FILE);
+            System.out.println("Read " + orders.size() + " orders from " + OnlineShopApp.ORDERS_FILE);
+            // Facet queries hold the engine's lock, so rating updates take it too
+            final FacetEngine facets = catalog.getFacets();
+            Reviews reviews = new Reviews(OnlineShopApp.REVIEWS_FILE, new Reviews.Listener() {
+                @Override
+                public void ratingsChanged(BitSet productIds) {
+                    synchronized (facets) {
+                        facets.ratingsChanged(productIds);
+                    }
+                }
+            });
+            reviews.start();
+            new ShopServer(catalog, pricing, reviews, orders).start(port);
+        } catch (IOException e) {
+            System.err.println("Error starting shop server on port " + port);
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+    
+    // Loads the whole catalog before any request is served, from the snapshot when
+    // there is an up-to-date one
+    static Catalog loadCatalog(String path) throws IOException {
+        long start = System.nanoTime();
+        CategoryIndex categoryIndex = CategoryIndex.load("categories.txt");
+        FeatureSpecs featureSpecs = FeatureSpecs.load("features.txt");
+        
+        String snapshotPath = OnlineShopApp.findSnapshot(path);
+        if (snapshotPath != null) {
+            try {
+                CatalogSnapshot snapshot = CatalogSnapshot.open(snapshotPath);
+                int[] masks = snapshot.readCategoryMasks(categoryIndex);
+                if (masks != null) {
+                    Catalog catalog = new Catalog(categoryIndex, featureSpecs, snapshot);
+                    catalog.setCategoryMasks(masks);
+                    for (int id = 0; id < snapshot.size(); id++) {
+                        catalog.indexForSearch(catalog.get(id));
+                    }
+                    System.out.println("Opened " + snapshot.size() + " products from " + snapshotPath + " in "
+                        + (System.nanoTime() - start) / 1000000 + " ms");
+                    return catalog;
+                }
+            } catch (IOException e) {
+                System.err.println("Error loading catalog snapshot: " + snapshotPath);
+                e.printStackTrace();
+            }
+        }
+        
+        Catalog catalog = new Catalog(categoryIndex, featureSpecs);
+        try (CatalogLoader loader = new CatalogLoader(path)) {
+            while (loader.next()) {
+                catalog.add(loader.getName(), loader.getPrice(), loader.getDescription(),
+                            loader.getImagePath(), loader.getRating(), loader.getReviewCount());
+            }
+            System.out.println(loader.getThroughputSummary());
+        }
+        return catalog;
+    }
+    
+    public HttpServer start(int port) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port),
+                                              Integer.getInteger("techtrove.serverBacklog", 1024));
+        server.createContext("/api/", this);
+        server.setExecutor(createExecutor());
+        server.start();
+        System.out.println("Serving " + catalog.size() + " products on http://localhost:" + port + "/api/");
+        return server;
+    }
+    
+    // Virtual threads when the JVM has them (Java 21 and later), otherwise a fixed
+    // pool of -Dtechtrove.serverThreads threads. Requests only wait on locks, so
+    // a few threads per core keep the CPUs busy.
+    private static ExecutorService createExecutor() {
+        try {
+            Method virtualThreads = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) virtualThreads.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            int threads = Integer.getInteger("techtrove.serverThreads", Runtime.getRuntime().availableProcessors() * 4);
+            return Executors.newFixedThreadPool(threads);
+        }
+    }
+    
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getPath();
+            HashMap<String, String> params = readParams(exchange);
+            boolean post = exchange.getRequestMethod().equals("POST");
+            
+            if (path.equals("/api/categories")) {
+                send(exchange, 200, getCategoriesJson());
+            } else if (path.equals("/api/products")) {
+                send(exchange, 200, listProducts(params));
+            } else if (path.startsWith("/api/products/")) {
+                Product product = findProduct(path.substring("/api/products/".length()));
+                if (product == null) {
+                    sendError(exchange, 404, "No such product");
+                } else {
+                    StringBuilder json = new StringBuilder();
+                    appendProduct(json, product, pricing.getOffer(product), true);
+                    send(exchange, 200, json.toString());
+                }
+            } else if (path.equals("/api/facets")) {
+                send(exchange, 200, countFacets(params));
+            } else if (path.equals("/api/search")) {
+                send(exchange, 200, search(params));
+            } else if (path.equals("/api/cart")) {
+                // Reading a cart does not start a session
+                CartStore.Session session = carts.get(readSession(exchange));
+                send(exchange, 200, session != null ? carts.withCart(session, CART_JSON) : cartJson(new Cart()));
+            } else if (path.equals("/api/cart/add") || path.equals("/api/cart/remove") || path.equals("/api/cart/quantity")) {
+                if (!post) {
+                    sendError(exchange, 405, "Use POST");
+                    return;
+                }
+                Product product = findProduct(params.get("id"));
+                if (product == null) {
+                    sendError(exchange, 404, "No such product");
+                    return;
+                }
+                
+                boolean setQuantity = path.endsWith("/quantity");
+                int quantity = intParam(params, "quantity", setQuantity ? -1 : 1);
+                if (quantity < (setQuantity ? 0 : 1)) {
+                    sendError(exchange, 400, setQuantity ? "Quantity must be 0 or more" : "Quantity must be at least 1");
+                    return;
+                }
+                
+                // Stock is only checked here; units are not held until checkout
+                CartStore.Session session = getSession(exchange);
+                if (!path.endsWith("/remove")) {
+                    int current = carts.getQuantity(session, product);
+                    long wanted = setQuantity ? quantity : (long) current + quantity;
+                    int available = inventory.getAvailable(product);
+                    if (wanted > current && wanted > available) {
+                        sendError(exchange, 409, available == 0 ? "Out of stock" : "Only " + available + " left in stock");
+                        return;
+                    }
+                }
+                if (setQuantity) {
+                    carts.setQuantity(session, product, quantity);
+                } else if (path.endsWith("/add")) {
+                    carts.add(session, product, quantity);
+                } else {
+                    carts.remove(session, product, quantity);
+                }
+                send(exchange, 200, carts.withCart(session, CART_JSON));
+            } else if (path.equals("/api/checkout")) {
+                if (!post) {
+                    sendError(exchange, 405, "Use POST");
+                    return;
+                }
+                checkout(exchange);
+            } else if (path.equals("/api/reviews")) {
+                if (!post) {
+                    sendError(exchange, 405, "Use POST");
+                    return;
+                }
+                Product product = findProduct(params.get("id"));
+                if (product == null) {
+                    sendError(exchange, 404, "No such product");
+                } else if (!reviews.submit(product.getId(), intParam(params, "stars", 0))) {
+                    sendError(exchange, 400, "Stars must be 1 to 5");
+                } else {
+                    send(exchange, 202, "{\"accepted\":true}");
+                }
+            } else {
+                sendError(exchange, 404, "Unknown endpoint");
+            }
+        } catch (IllegalArgumentException e) {
+            sendError(exchange, 400, e.getMessage());
+        } catch (RuntimeException e) {
+            System.err.println("Error handling request: " + exchange.getRequestURI());
+            e.printStackTrace();
+            sendError(exchange, 500, "Internal error");
+        } finally {
+            exchange.close();
+        }
+    }
+    
+    private String getCategoriesJson() {
+        // The catalog does not change while serving, so the counts are taken once
+        String json = categoriesJson;
+        if (json == null) {
+            FacetEngine.Cursor cursor;
+            synchronized (facets) {
+                cursor = facets.query(null, new FacetEngine.Filter());
+            }
+            int[] counts = cursor.count().getCategoryCounts();
+            List<String> categories = catalog.getCategoryIndex().getCategories();
+            
+            StringBuilder builder = new StringBuilder("[");
+            for (int i = 0; i < categories.size(); i++) {
+                if (i > 0) {
+                    builder.append(',');
+                }
+                builder.append("{\"name\":");
+                appendString(builder, categories.get(i));
+                builder.append(",\"count\":").append(counts[i]).append('}');
+            }
+            json = builder.append(']').toString();
+            categoriesJson = json;
+        }
+        return json;
+    }
+    
+    private FacetEngine.Cursor query(HashMap<String, String> params) {
+        FacetEngine.Filter filter = new FacetEngine.Filter();
+        String category = params.get("category");
+        if (category != null) {
+            if (!catalog.getCategoryIndex().getCategories().contains(category)) {
+                throw new IllegalArgumentException("Unknown category: " + category);
+            }
+            filter.category = category;
+        }
+        String sort = params.get("sort");
+        if (sort != null) {
+            try {
+                filter.sort = FacetEngine.Sort.valueOf(sort.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown sort: " + sort);
+            }
+        }
+        filter.priceRange = intParam(params, "price", FacetEngine.ANY_PRICE);
+        if (filter.priceRange < FacetEngine.ANY_PRICE || filter.priceRange >= FacetEngine.getPriceRangeCount()) {
+            throw new IllegalArgumentException("Unknown price range: " + filter.priceRange);
+        }
+        filter.minRating = Math.max(0, Math.min(FacetEngine.MAX_RATING, intParam(params, "rating", 0)));
+        
+        synchronized (facets) {
+            return facets.query(null, filter);
+        }
+    }
+    
+    private String listProducts(HashMap<String, String> params) {
+        int offset = Math.max(0, intParam(params, "offset", 0));
+        int limit = Math.max(1, Math.min(MAX_PAGE_SIZE, intParam(params, "limit", DEFAULT_PAGE_SIZE)));
+        
+        FacetEngine.Cursor cursor = query(params);
+        if (offset > 0) {
+            cursor.next(offset);
+        }
+        int[] ids = cursor.next(limit);
+        
+        StringBuilder json = new StringBuilder("{\"offset\":").append(offset).append(",\"products\":[");
+        for (int i = 0; i < ids.length; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            Product product = catalog.get(ids[i]);
+            appendProduct(json, product, pricing.getOffer(product), false);
+        }
+        return json.append("],\"more\":").append(cursor.hasMore()).append('}').toString();
+    }
+    
+    private String countFacets(HashMap<String, String> params) {
+        FacetEngine.Result result = query(params).count();
+        StringBuilder json = new StringBuilder("{\"matchCount\":").append(result.getMatchCount());
+        json.append(",\"categoryCounts\":");
+        appendInts(json, result.getCategoryCounts());
+        json.append(",\"priceRangeCounts\":");
+        appendInts(json, result.getPriceRangeCounts());
+        json.append(",\"ratingCounts\":");
+        appendInts(json, result.getRatingCounts());
+        return json.append('}').toString();
+    }
+    
+    private String search(HashMap<String, String> params) {
+        String query = params.get("q");
+        if (query == null || query.trim().isEmpty()) {
+            throw new IllegalArgumentException("Missing q");
+        }
+        int limit = Math.max(1, Math.min(MAX_PAGE_SIZE, intParam(params, "limit", DEFAULT_PAGE_SIZE)));
+        
+        SearchIndex.Result result = catalog.getSearchIndex().search(query, limit);
+        StringBuilder json = new StringBuilder("{\"matchCount\":").append(result.getMatchCount()).append(",\"products\":[");
+        int[] ids = result.getProductIds();
+        for (int i = 0; i < ids.length; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            Product product = catalog.get(ids[i]);
+            appendProduct(json, product, pricing.getOffer(product), false);
+        }
+        return json.append("]}").toString();
+    }
+    
+    // The request's session, or a new one, whose cookie is sent with the response
+    private CartStore.Session getSession(HttpExchange exchange) {
+        CartStore.Session session = carts.get(readSession(exchange));
+        if (session == null) {
+            session = carts.create();
+            exchange.getResponseHeaders().add("Set-Cookie", SESSION_COOKIE + "=" + session.getId() + "; Path=/; HttpOnly");
+        }
+        return session;
+    }
+    
+    private static String readSession(HttpExchange exchange) {
+        List<String> headers = exchange.getRequestHeaders().get("Cookie");
+        if (headers == null) {
+            return null;
+        }
+        for (String header : headers) {
+            for (String cookie : header.split(";")) {
+                int equals = cookie.indexOf('=');
+                if (equals > 0 && cookie.substring(0, equals).trim().equals(SESSION_COOKIE)) {
+                    return cookie.substring(equals + 1).trim();
+                }
+            }
+        }
+        return null;
+    }
+    
+    // The cart's units are reserved and the cart emptied while it is locked; the
+    // response then waits, without the lock, until the order is on disk, together
+    // with any other checkouts under way
+    private void checkout(HttpExchange exchange) throws IOException {
+        CartStore.Session session = carts.get(readSession(exchange));
+        final Cart placedCart = new Cart(pricing);
+        final Inventory.Reservation[] reservation = new Inventory.Reservation[1];
+        final String[] shortage = new String[1];
+        CompletableFuture<Order> placed = null;
+        if (session != null) {
+            placed = carts.withCart(session, new CartStore.Action<CompletableFuture<Order>>() {
+                @Override
+                public CompletableFuture<Order> apply(Cart cart) {
+                    if (cart.isEmpty()) {
+                        return null;
+                    }
+                    cart.reprice();
+                    reservation[0] = inventory.reserve(cart);
+                    if (reservation[0] == null) {
+                        shortage[0] = shortageMessage(cart);
+                        return null;
+                    }
+                    // From here the units stay reserved however long the write takes
+                    if (!inventory.place(reservation[0])) {
+                        shortage[0] = "The items could not be held for the order; check out again";
+                        return null;
+                    }
+                    placedCart.addAll(cart);
+                    CompletableFuture<Order> written = orders.append(cart);
+                    cart.clear();
+                    return written;
+                }
+            });
+        }
+        if (placed == null) {
+            sendError(exchange, 409, shortage[0] != null ? shortage[0] : "The cart is empty");
+            return;
+        }
+        
+        Order order;
+        try {
+            order = placed.get();
+        } catch (InterruptedException | ExecutionException e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            // Put the items back so the order can be placed again
+            inventory.release(reservation[0]);
+            carts.withCart(session, new CartStore.Action<Void>() {
+                @Override
+                public Void apply(Cart cart) {
+                    cart.addAll(placedCart);
+                    return null;
+                }
+            });
+            sendError(exchange, 503, "The order could not be saved");
+            return;
+        }
+        
+        inventory.confirm(reservation[0]);
+        
+        StringBuilder json = new StringBuilder("{\"orderId\":").append(order.getId());
+        json.append(",\"time\":").append(order.getTime());
+        json.append(",\"total\":").append(order.getTotal());
+        json.append(",\"formattedTotal\":");
+        appendString(json, Money.format(order.getTotal()));
+        json.append(",\"summary\":");
+        appendString(json, OnlineShopApp.buildOrderSummary(placedCart));
+        send(exchange, 200, json.append('}').toString());
+    }
+    
+    // Names the products the cart holds more units of than are left; call with the cart locked
+    private String shortageMessage(Cart cart) {
+        StringBuilder message = new StringBuilder("Not enough stock:");
+        String separator = " ";
+        for (Cart.Line line : cart.getLines()) {
+            int available = inventory.getAvailable(line.getProduct());
+            if (available < line.getQuantity()) {
+                message.append(separator).append(line.getProduct().getName()).append(" (").append(available).append(" left)");
+                separator = ", ";
+            }
+        }
+        return message.toString();
+    }
+    
+    // Call with the cart locked
+    private String cartJson(Cart cart) {
+        StringBuilder json = new StringBuilder("{\"lines\":[");
+        boolean first = true;
+        for (Cart.Line line : cart.getLines()) {
+            if (!first) {
+                json.append(',');
+            }
+            first = false;
+            json.append("{\"product\":");
+            appendProduct(json, line.getProduct(), line.getOffer(), false);
+            json.append(",\"quantity\":").append(line.getQuantity());
+            json.append(",\"lineTotal\":").append(line.getLineTotal()).append('}');
+        }
+        json.append("],\"itemCount\":").append(cart.getItemCount());
+        json.append(",\"total\":").append(cart.getTotal());
+        json.append(",\"formattedTotal\":");
+        appendString(json, Money.format(cart.getTotal()));
+        return json.append('}').toString();
+    }
+    
+    private Product findProduct(String id) {
+        if (id == null) {
+            throw new IllegalArgumentException("Missing id");
+        }
+        try {
+            int productId = Integer.parseInt(id);
+            return productId >= 0 && productId < catalog.size() ? catalog.get(productId) : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+    
+    // The price is the one after promotions; the list price and the promotion are
+    // only included when there is one
+    private void appendProduct(StringBuilder json, Product product, Pricing.Offer offer, boolean details) {
+        json.append("{\"id\":").append(product.getId());
+        json.append(",\"name\":");
+        appendString(json, product.getName());
+        json.append(",\"price\":").append(offer.getPrice());
+        json.append(",\"formattedPrice\":");
+        appendString(json, offer.getFormattedPrice());
+        if (offer.hasPromotion()) {
+            json.append(",\"listPrice\":").append(offer.getListPrice());
+            json.append(",\"formattedListPrice\":");
+            appendString(json, offer.getFormattedListPrice());
+            json.append(",\"promotion\":");
+            appendString(json, offer.getBadge());
+        }
+        json.append(",\"rating\":").append((float) reviews.getRating(product));
+        json.append(",\"reviews\":").append(reviews.getReviewCount(product));
+        json.append(",\"image\":");
+        appendString(json, product.getImagePath());
+        if (details) {
+            json.append(",\"description\":");
+            appendString(json, product.getDescription());
+            json.append(",\"features\":[");
+            String[] features = product.getFeatures();
+            for (int i = 0; i < features.length; i++) {
+                if (i > 0) {
+                    json.append(',');
+                }
+                appendString(json, features[i]);
+            }
+            json.append(']');
+        }
+        json.append('}');
+    }
+    
+    private static void appendInts(StringBuilder json, int[] values) {
+        json.append('[');
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append(values[i]);
+        }
+        json.append(']');
+    }
+    
+    private static void appendString(StringBuilder json, String text) {
+        if (text == null) {
+            json.append("null");
+            return;
+        }
+        json.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c == '\n') {
+                json.append("\\n");
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+    
+    private static int intParam(HashMap<String, String> params, String name, int defaultValue) {
+        String value = params.get(name);
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a number: " + name + "=" + value);
+        }
+    }
+    
+    // Query string parameters, plus the form body of a POST
+    private static HashMap<String, String> readParams(HttpExchange exchange) throws IOException {
+        HashMap<String, String> params = new HashMap<>();
+        parseParams(exchange.getRequestURI().getRawQuery(), params);
+        if (exchange.getRequestMethod().equals("POST")) {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            try (InputStream in = exchange.getRequestBody()) {
+                byte[] buffer = new byte[4096];
+                int read;
+                while ((read = in.read(buffer)) > 0) {
+                    body.write(buffer, 0, read);
+                }
+            }
+            parseParams(new String(body.toByteArray(), StandardCharsets.UTF_8), params);
+        }
+        return params;
+    }
+    
+    private static void parseParams(String text, HashMap<String, String> params) throws UnsupportedEncodingException {
+        if (text == null || text.isEmpty()) {
+            return;
+        }
+        for (String pair : text.split("&")) {
+            int equals = pair.indexOf('=');
+            String name = equals >= 0 ? pair.substring(0, equals) : pair;
+            String value = equals >= 0 ? pair.substring(equals + 1) : "";
+            params.put(URLDecoder.decode(name, "UTF-8"), URLDecoder.decode(value, "UTF-8"));
+        }
+    }
+    
+    private static void send(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+    
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        StringBuilder json = new StringBuilder("{\"error\":");
+        appendString(json, message);
+        send(exchange, status, json.append('}').toString());
+    }
+}
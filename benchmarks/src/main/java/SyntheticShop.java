@@ -0,0 +1,166 @@
+import techtrove.bench.Shop;
+
+import javax.swing.JComponent;
+import java.io.IOException;
+import java.util.Random;
+
+// Synthetic catalog for the benchmarks: the products of products.csv repeated
+// with varied prices, ratings and review counts until there are productCount of
+// them. Run the benchmarks from the project root so products.csv, categories.txt,
+// features.txt and images/ are found.
+public class SyntheticShop implements Shop {
+    private final Catalog catalog;
+    private final OnlineShopApp app;
+    private final ProductGrid.CardFactory cards;
+    private final Cart cart = new Cart();
+    private final CartStore carts = new CartStore(Pricing.LIST_PRICES);
+    private final Inventory inventory = new Inventory();
+    
+    // One cache that is cleared before every decode, one that is kept warm
+    private final ImageCache uncachedImages = new ImageCache();
+    private final ImageCache imageCache = new ImageCache();
+    
+    public SyntheticShop(int productCount) throws IOException {
+        CategoryIndex categoryIndex = CategoryIndex.load("categories.txt");
+        ColumnarProductStore templates = new ColumnarProductStore(16);
+        try (CatalogLoader loader = new CatalogLoader("products.csv")) {
+            while (loader.next()) {
+                loader.addTo(templates);
+            }
+        }
+        if (templates.size() == 0) {
+            throw new IOException("No products in products.csv");
+        }
+        
+        int[] masks = new int[templates.size()];
+        for (int i = 0; i < masks.length; i++) {
+            masks[i] = categoryIndex.getMask(templates.getName(i), templates.getDescription(i));
+        }
+        
+        // Filled in directly, like a snapshot, so a million products load in seconds
+        ColumnarProductStore store = new ColumnarProductStore(productCount);
+        Random random = new Random(42);
+        for (int i = 0; i < productCount; i++) {
+            int template = i % templates.size();
+            long price = Math.max(100, (long) (templates.getPrice(template) * (0.5 + random.nextDouble())));
+            float rating = Math.round(10 + random.nextFloat() * 40) / 10f;
+            store.add(templates.getName(template) + " " + (i / templates.size() + 1), price, templates.getDescription(template),
+                      templates.getImagePath(template), rating, random.nextInt(5000));
+        }
+        
+        catalog = new Catalog(categoryIndex, FeatureSpecs.load("features.txt"), store);
+        for (int id = 0; id < productCount; id++) {
+            catalog.setCategoryMask(id, masks[id % masks.length]);
+        }
+        app = new OnlineShopApp(catalog);
+        cards = app.getCardFactory();
+    }
+    
+    @Override
+    public int getProductCount() {
+        return catalog.size();
+    }
+    
+    @Override
+    public int[] firstPage(String category, String sort, int pageSize) {
+        return catalog.getFacets().query(null, filter(category, sort)).next(pageSize);
+    }
+    
+    @Override
+    public Object countFacets(String category) {
+        return catalog.getFacets().query(null, filter(category, "RELEVANCE")).count();
+    }
+    
+    private static FacetEngine.Filter filter(String category, String sort) {
+        FacetEngine.Filter filter = new FacetEngine.Filter();
+        filter.category = category;
+        filter.sort = FacetEngine.Sort.valueOf(sort);
+        return filter;
+    }
+    
+    @Override
+    public int addAndRemove(int productId) {
+        Product product = catalog.get(productId);
+        cart.add(product);
+        cart.remove(product);
+        return cart.getLineCount();
+    }
+    
+    @Override
+    public void fillCart(int lineCount) {
+        cart.clear();
+        for (int id = 0; id < lineCount && id < catalog.size(); id++) {
+            cart.add(catalog.get(id));
+        }
+    }
+    
+    @Override
+    public String buildOrderSummary() {
+        return OnlineShopApp.buildOrderSummary(cart);
+    }
+    
+    @Override
+    public Object openSession() {
+        return carts.create();
+    }
+    
+    @Override
+    public int addAndRemove(Object session, int productId) {
+        CartStore.Session cartSession = (CartStore.Session) session;
+        Product product = catalog.get(productId);
+        carts.add(cartSession, product, 1);
+        return carts.remove(cartSession, product, 1);
+    }
+    
+    @Override
+    public void setStock(int productId, int units) {
+        inventory.setStock(catalog.get(productId), units);
+    }
+    
+    @Override
+    public boolean reserveAndRelease(int productId) {
+        Inventory.Reservation reservation = inventory.reserve(catalog.get(productId), 1);
+        if (reservation == null) {
+            return false;
+        }
+        inventory.release(reservation);
+        return true;
+    }
+    
+    @Override
+    public String[] getFeatures(int productId) {
+        return catalog.get(productId).getFeatures();
+    }
+    
+    @Override
+    public Object createCard(int productId) {
+        return bindCard(cards.createCard(), productId);
+    }
+    
+    @Override
+    public Object bindCard(Object card, int productId) {
+        // Unbound again right away so no image loads pile up behind the benchmark
+        JComponent component = (JComponent) card;
+        cards.bindCard(component, catalog.get(productId));
+        cards.unbindCard(component);
+        return component;
+    }
+    
+    @Override
+    public Object decodeImage(int productId) throws IOException {
+        uncachedImages.clear();
+        return uncachedImages.getFitted(catalog.get(productId).getImagePath(), 150, 150);
+    }
+    
+    @Override
+    public Object cachedImage(int productId) throws IOException {
+        return imageCache.getFitted(catalog.get(productId).getImagePath(), 150, 150);
+    }
+    
+    @Override
+    public void close() {
+        carts.close();
+        inventory.close();
+        app.close();
+    }
+}
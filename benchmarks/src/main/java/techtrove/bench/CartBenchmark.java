@@ -0,0 +1,38 @@
+package techtrove.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Cart updates and the order summary built at checkout, with 20 lines in the cart
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CartBenchmark {
+    @Setup
+    public void fillCart(ShopState state) {
+        state.shop.fillCart(20);
+    }
+    
+    @Benchmark
+    public int addAndRemove(ShopState state) {
+        return state.shop.addAndRemove(state.nextProduct());
+    }
+    
+    @Benchmark
+    public String buildOrderSummary(ShopState state) {
+        return state.shop.buildOrderSummary();
+    }
+}
@@ -0,0 +1,55 @@
+package techtrove.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Many shoppers adding and removing the same hot product at once, each in their
+// own cart, and the worst case of all of them sharing one cart
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(16)
+@Fork(1)
+public class CartStoreBenchmark {
+    private static final int HOT_PRODUCT = 0;
+    
+    private Object sharedSession;
+    
+    @State(Scope.Thread)
+    public static class Shopper {
+        Object session;
+        
+        @Setup
+        public void openSession(ShopState state) {
+            session = state.shop.openSession();
+        }
+    }
+    
+    @Setup
+    public void openSharedSession(ShopState state) {
+        sharedSession = state.shop.openSession();
+    }
+    
+    @Benchmark
+    public int hotProduct(ShopState state, Shopper shopper) {
+        return state.shop.addAndRemove(shopper.session, HOT_PRODUCT);
+    }
+    
+    @Benchmark
+    public int hotProductSharedCart(ShopState state) {
+        return state.shop.addAndRemove(sharedSession, HOT_PRODUCT);
+    }
+}
@@ -0,0 +1,45 @@
+package techtrove.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Opening a category: the first page of the sorted, filtered listing, and the
+// background pass that counts the facet options
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CatalogBenchmark {
+    @Param({ "All Electronics", "Headphones" })
+    public String category;
+    
+    @Param({ "RELEVANCE", "PRICE_LOW_TO_HIGH" })
+    public String sort;
+    
+    @Benchmark
+    public int[] firstPage(ShopState state) {
+        return state.shop.firstPage(category, sort, 20);
+    }
+    
+    @Benchmark
+    public Object countFacets(ShopState state) {
+        return state.shop.countFacets(category);
+    }
+    
+    @Benchmark
+    public String[] getFeatures(ShopState state) {
+        return state.shop.getFeatures(state.nextProduct());
+    }
+}
@@ -0,0 +1,61 @@
+package techtrove.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Many buyers reserving stock at once: all of them the same hot product in a
+// flash sale, each a different product, and a product that has sold out
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(16)
+@Fork(1)
+public class InventoryBenchmark {
+    private static final int HOT_PRODUCT = 0;
+    private static final int SOLD_OUT_PRODUCT = 1;
+    
+    @State(Scope.Thread)
+    public static class Buyer {
+        int productId;
+        
+        @Setup
+        public void pickProduct(ShopState state) {
+            productId = state.nextProduct();
+        }
+    }
+    
+    @Setup
+    public void stockProducts(ShopState state) {
+        // Enough units of the hot product that the buyers never run it out
+        state.shop.setStock(HOT_PRODUCT, 1000);
+        state.shop.setStock(SOLD_OUT_PRODUCT, 0);
+    }
+    
+    @Benchmark
+    public boolean hotProduct(ShopState state) {
+        return state.shop.reserveAndRelease(HOT_PRODUCT);
+    }
+    
+    @Benchmark
+    public boolean ownProduct(ShopState state, Buyer buyer) {
+        return state.shop.reserveAndRelease(buyer.productId);
+    }
+    
+    @Benchmark
+    public boolean soldOut(ShopState state) {
+        return state.shop.reserveAndRelease(SOLD_OUT_PRODUCT);
+    }
+}
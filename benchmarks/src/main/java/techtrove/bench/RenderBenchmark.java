@@ -0,0 +1,50 @@
+package techtrove.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Product cards and their images, built headless
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class RenderBenchmark {
+    private Object card;
+    
+    @Setup
+    public void prepareCard(ShopState state) {
+        card = state.shop.createCard(0);
+    }
+    
+    @Benchmark
+    public Object createCard(ShopState state) {
+        return state.shop.createCard(state.nextProduct());
+    }
+    
+    @Benchmark
+    public Object bindCard(ShopState state) {
+        return state.shop.bindCard(card, state.nextProduct());
+    }
+    
+    @Benchmark
+    public Object decodeImage(ShopState state) throws Exception {
+        return state.shop.decodeImage(state.nextProduct());
+    }
+    
+    @Benchmark
+    public Object cachedImage(ShopState state) throws Exception {
+        return state.shop.cachedImage(state.nextProduct());
+    }
+}
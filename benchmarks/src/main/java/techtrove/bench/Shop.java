@@ -0,0 +1,58 @@
+package techtrove.bench;
+
+// The operations the benchmarks measure. The application classes are in the
+// default package, which JMH does not allow benchmarks in and which named packages
+// cannot import, so SyntheticShop (default package, in this module) implements
+// this interface and is loaded by name.
+public interface Shop extends AutoCloseable {
+    static Shop create(int productCount) throws ReflectiveOperationException {
+        return (Shop) Class.forName("SyntheticShop").getConstructor(int.class).newInstance(productCount);
+    }
+    
+    int getProductCount();
+    
+    // First page of a category listing, as shown when the category is opened
+    int[] firstPage(String category, String sort, int pageSize);
+    
+    // The full pass behind the facet counts of a category listing
+    Object countFacets(String category);
+    
+    // Adds one unit of the product to the cart and removes it again
+    int addAndRemove(int productId);
+    
+    // Empties the cart and adds one unit of each of the first lineCount products
+    void fillCart(int lineCount);
+    
+    String buildOrderSummary();
+    
+    // A new session in the shop's cart store
+    Object openSession();
+    
+    // Adds one unit of the product to the session's cart and removes it again
+    int addAndRemove(Object session, int productId);
+    
+    // Sets the units of the product in stock
+    void setStock(int productId, int units);
+    
+    // Reserves one unit of the product and releases it again; false if none is left
+    boolean reserveAndRelease(int productId);
+    
+    // Key features of the product, looked up through the catalog
+    String[] getFeatures(int productId);
+    
+    // A new product card bound to the product
+    Object createCard(int productId);
+    
+    // Binds an existing card to another product, as the grid does while scrolling
+    Object bindCard(Object card, int productId);
+    
+    // Decodes and scales the product's image without the image cache
+    Object decodeImage(int productId) throws Exception;
+    
+    // The product's image from a warm image cache
+    Object cachedImage(int productId) throws Exception;
+    
+    // Stops the shop's background threads
+    @Override
+    void close();
+}
@@ -0,0 +1,34 @@
+package techtrove.bench;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+// One synthetic catalog per catalog size, shared by every benchmark in a trial
+@State(Scope.Benchmark)
+public class ShopState {
+    @Param({ "1000", "100000", "1000000" })
+    public int products;
+    
+    public Shop shop;
+    
+    // Walks the catalog with a stride so consecutive calls touch different products
+    private int next = 0;
+    
+    @Setup
+    public void setUp() throws ReflectiveOperationException {
+        shop = Shop.create(products);
+    }
+    
+    @TearDown
+    public void tearDown() {
+        shop.close();
+    }
+    
+    public int nextProduct() {
+        next = (next + 7919) % products;
+        return next;
+    }
+}
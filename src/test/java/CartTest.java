@@ -0,0 +1,42 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Collections;
+
+import org.junit.Test;
+
+public class CartTest {
+    @Test
+    public void productsOutsideACatalogGetALineEach() {
+        Product phone = new Product("Phone", 100, "", null, 4, 1);
+        Product cable = new Product("Cable", 2.5, "", null, 4, 1);
+        
+        Cart cart = new Cart();
+        cart.add(phone);
+        cart.add(cable);
+        cart.add(cable);
+        
+        assertEquals(2, cart.getLineCount());
+        assertSame(phone, cart.getLine(phone).getProduct());
+        assertEquals(2, cart.getLine(cable).getQuantity());
+        assertEquals(10500, cart.getTotal());
+        
+        cart.setQuantity(phone, 0);
+        assertEquals(1, cart.getLineCount());
+        assertEquals(500, cart.getTotal());
+    }
+    
+    @Test
+    public void catalogProductsAreMatchedById() {
+        Catalog catalog = new Catalog(new CategoryIndex(Collections.<CategoryIndex.Rule>emptyList()), new FeatureSpecs());
+        catalog.add(new Product("Phone", 100, "", null, 4, 1));
+        
+        Cart cart = new Cart();
+        cart.add(catalog.get(0));
+        cart.add(catalog.get(0));
+        
+        assertEquals(1, cart.getLineCount());
+        assertEquals(2, cart.getItemCount());
+        assertEquals(20000, cart.getTotal());
+    }
+}
@@ -0,0 +1,73 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CatalogLoaderTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    private CatalogLoader open(String fileName, String... lines) throws IOException {
+        File file = folder.newFile(fileName);
+        Files.write(file.toPath(), Arrays.asList(lines), StandardCharsets.UTF_8);
+        return new CatalogLoader(file.getPath());
+    }
+    
+    @Test
+    public void readsCsvAndJsonLines() throws IOException {
+        try (CatalogLoader loader = open("catalog.csv",
+                "name,price,rating,reviews,image",
+                "\"Phone, X\",12999.99,4.5,120,images/phone.jpg",
+                "Cable,99,,,")) {
+            assertTrue(loader.next());
+            assertEquals("Phone, X", loader.getName());
+            assertEquals(1299999, loader.getPrice());
+            assertEquals(4.5f, loader.getRating(), 0);
+            assertEquals(120, loader.getReviewCount());
+            assertTrue(loader.next());
+            assertNull(loader.getImagePath());
+            assertEquals("", loader.getDescription());
+            assertFalse(loader.next());
+        }
+        
+        try (CatalogLoader loader = open("catalog.jsonl",
+                "{\"name\": \"Speaker \\u20b9\", \"price\": 499.5, \"rating\": null}")) {
+            assertTrue(loader.next());
+            assertEquals("Speaker ₹", loader.getName());
+            assertEquals(49950, loader.getPrice());
+            assertEquals(0f, loader.getRating(), 0);
+        }
+    }
+    
+    @Test
+    public void skipsRowsWithNumbersOutOfRange() throws IOException {
+        try (CatalogLoader loader = open("catalog.csv",
+                "name,price,rating,reviews",
+                "Negative,-1,4,1",
+                "Not a number,NaN,4,1",
+                "Endless,Infinity,4,1",
+                "Huge,1e300,4,1",
+                "Too many stars,10,5.5,1",
+                "No stars,10,NaN,1",
+                "Negative reviews,10,4,-3",
+                "Free,0,0,0")) {
+            assertTrue(loader.next());
+            assertEquals("Free", loader.getName());
+            assertFalse(loader.next());
+            
+            assertEquals(1, loader.getProductCount());
+            assertEquals(7, loader.getSkippedCount());
+            assertTrue(loader.getThroughputSummary().endsWith(", 7 invalid rows skipped"));
+        }
+    }
+}
@@ -0,0 +1,98 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CatalogSnapshotTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    private final CategoryIndex categories = new CategoryIndex(Arrays.asList(
+        new CategoryIndex.Rule("Phones", new String[] { "phone" }, new String[0]),
+        new CategoryIndex.Rule("Audio", new String[] { "speaker" }, new String[] { "sound" })));
+    
+    @Test
+    public void readsBackEveryField() throws IOException {
+        CatalogSnapshot snapshot = writeSnapshot(
+            "name,price,description,image,rating,reviews",
+            "Phone X,12999.99,\"Fast, \"\"smart\"\" phone\",images/phone.jpg,4.5,120",
+            "Speaker ₹ Edition,499.5,Big sound,images/phone.jpg,3.8,7",
+            "Cable,99,,,,");
+        
+        assertEquals(3, snapshot.size());
+        
+        assertEquals("Phone X", snapshot.getName(0));
+        assertEquals(1299999, snapshot.getPrice(0));
+        assertEquals("Fast, \"smart\" phone", snapshot.getDescription(0));
+        assertEquals("images/phone.jpg", snapshot.getImagePath(0));
+        assertEquals(4.5f, snapshot.getRating(0), 0);
+        assertEquals(120, snapshot.getReviewCount(0));
+        
+        assertEquals("Speaker ₹ Edition", snapshot.getName(1));
+        assertEquals(49950, snapshot.getPrice(1));
+        assertEquals("images/phone.jpg", snapshot.getImagePath(1));
+        assertEquals(3.8f, snapshot.getRating(1), 1e-6);
+        
+        assertEquals("", snapshot.getDescription(2));
+        assertNull(snapshot.getImagePath(2));
+        assertEquals(0, snapshot.getReviewCount(2));
+    }
+    
+    @Test
+    public void storesCategoryMasksWithTheRulesSignature() throws IOException {
+        CatalogSnapshot snapshot = writeSnapshot(
+            "name,price,description",
+            "Phone X,100,Loud sound",
+            "Speaker,100,Portable",
+            "Cable,100,Plain");
+        
+        assertEquals(categories.getSignature(), snapshot.getCategorySignature());
+        assertEquals(0b11, snapshot.getCategoryMask(0));
+        assertEquals(0b10, snapshot.getCategoryMask(1));
+        assertEquals(0, snapshot.getCategoryMask(2));
+    }
+    
+    @Test
+    public void recomputesCategoryMasksWhenTheRulesChange() throws IOException {
+        CatalogSnapshot snapshot = writeSnapshot(
+            "name,price,description",
+            "Phone X,100,Loud sound",
+            "Speaker,100,Portable",
+            "Cable,100,Plain");
+        
+        assertArrayEquals(new int[] { 0b11, 0b10, 0 }, snapshot.readCategoryMasks(categories));
+        
+        CategoryIndex changed = new CategoryIndex(Arrays.asList(
+            new CategoryIndex.Rule("Cables", new String[] { "cable" }, new String[0])));
+        assertArrayEquals(new int[] { 0, 0, 0b1 }, snapshot.readCategoryMasks(changed));
+        
+        Catalog catalog = new Catalog(changed, new FeatureSpecs(), snapshot);
+        catalog.setCategoryMasks(snapshot.readCategoryMasks(changed));
+        assertEquals(1, catalog.getProductsInCategory("Cables").size());
+        assertEquals("Cable", catalog.getProductsInCategory("Cables").get(0).getName());
+    }
+    
+    @Test(expected = UnsupportedOperationException.class)
+    public void catalogOfASnapshotIsReadOnly() throws IOException {
+        CatalogSnapshot snapshot = writeSnapshot("name,price", "Cable,100");
+        new Catalog(categories, new FeatureSpecs(), snapshot).add(new Product("Phone", 100, ""));
+    }
+    
+    private CatalogSnapshot writeSnapshot(String... lines) throws IOException {
+        File csv = folder.newFile("catalog.csv");
+        Files.write(csv.toPath(), Arrays.asList(lines), StandardCharsets.UTF_8);
+        String snapshotPath = new File(folder.getRoot(), "catalog.snapshot").getPath();
+        
+        assertEquals(lines.length - 1, CatalogSnapshot.write(csv.getPath(), snapshotPath, categories));
+        return CatalogSnapshot.open(snapshotPath);
+    }
+}
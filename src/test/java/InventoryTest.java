@@ -0,0 +1,135 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class InventoryTest {
+    private static final long LONG_TIMEOUT_MS = 60000;
+    private static final long SHORT_TIMEOUT_MS = 20;
+    
+    private final Catalog catalog = new Catalog(new CategoryIndex(Collections.<CategoryIndex.Rule>emptyList()), new FeatureSpecs());
+    
+    private final List<Inventory> inventories = new ArrayList<>();
+    
+    private Inventory inventory(int stock, long timeoutMillis) {
+        Inventory inventory = new Inventory(stock, timeoutMillis);
+        inventories.add(inventory);
+        return inventory;
+    }
+    
+    @After
+    public void closeInventories() {
+        for (Inventory inventory : inventories) {
+            inventory.close();
+        }
+    }
+    
+    private Product product(String name) {
+        catalog.add(new Product(name, 100, "", null, 4, 1));
+        return catalog.get(catalog.size() - 1);
+    }
+    
+    @Test
+    public void reserveTakesUnitsAndReleaseGivesThemBack() {
+        Inventory inventory = inventory(5, LONG_TIMEOUT_MS);
+        Product phone = product("Phone");
+        
+        Inventory.Reservation reservation = inventory.reserve(phone, 3);
+        assertNotNull(reservation);
+        assertEquals(2, inventory.getAvailable(phone));
+        assertNull(inventory.reserve(phone, 3));
+        
+        inventory.release(reservation);
+        assertFalse(reservation.isHeld());
+        assertEquals(5, inventory.getAvailable(phone));
+        assertEquals(0, inventory.getHeldCount());
+    }
+    
+    @Test
+    public void cartIsReservedWhollyOrNotAtAll() {
+        Inventory inventory = inventory(5, LONG_TIMEOUT_MS);
+        Product phone = product("Phone");
+        Product cable = product("Cable");
+        inventory.setStock(cable, 1);
+        
+        Cart cart = new Cart();
+        cart.add(phone);
+        cart.setQuantity(cable, 2);
+        assertNull(inventory.reserve(cart));
+        assertEquals(5, inventory.getAvailable(phone));
+        assertEquals(1, inventory.getAvailable(cable));
+        
+        cart.setQuantity(cable, 1);
+        assertNotNull(inventory.reserve(cart));
+        assertEquals(4, inventory.getAvailable(phone));
+        assertEquals(0, inventory.getAvailable(cable));
+    }
+    
+    @Test
+    public void confirmedUnitsStaySold() {
+        Inventory inventory = inventory(5, LONG_TIMEOUT_MS);
+        Product phone = product("Phone");
+        
+        Inventory.Reservation reservation = inventory.reserve(phone, 2);
+        assertTrue(inventory.place(reservation));
+        assertTrue(inventory.confirm(reservation));
+        inventory.release(reservation);
+        assertEquals(3, inventory.getAvailable(phone));
+        assertEquals(0, inventory.getHeldCount());
+    }
+    
+    @Test
+    public void expiredReservationGoesBackOnSaleAndCannotBePlaced() throws InterruptedException {
+        Inventory inventory = inventory(5, SHORT_TIMEOUT_MS);
+        Product phone = product("Phone");
+        
+        Inventory.Reservation reservation = inventory.reserve(phone, 5);
+        Thread.sleep(SHORT_TIMEOUT_MS * 3);
+        inventory.expireReservations();
+        
+        assertFalse(reservation.isHeld());
+        assertEquals(5, inventory.getAvailable(phone));
+        assertFalse(inventory.place(reservation));
+        assertFalse(inventory.confirm(reservation));
+    }
+    
+    // The order is only written once the reservation is being placed, so it must
+    // outlive the timeout however long the write takes
+    @Test
+    public void reservationBeingPlacedDoesNotExpireDuringSlowAppend() throws InterruptedException {
+        Inventory inventory = inventory(1, SHORT_TIMEOUT_MS);
+        Product phone = product("Phone");
+        
+        Inventory.Reservation reservation = inventory.reserve(phone, 1);
+        assertTrue(inventory.place(reservation));
+        
+        // The order is still being written well past the timeout
+        Thread.sleep(SHORT_TIMEOUT_MS * 3);
+        inventory.expireReservations();
+        assertTrue(reservation.isHeld());
+        assertNull("the last unit was sold twice", inventory.reserve(phone, 1));
+        
+        assertTrue(inventory.confirm(reservation));
+        assertEquals(0, inventory.getAvailable(phone));
+    }
+    
+    @Test
+    public void failedAppendReleasesReservationBeingPlaced() {
+        Inventory inventory = inventory(1, LONG_TIMEOUT_MS);
+        Product phone = product("Phone");
+        
+        Inventory.Reservation reservation = inventory.reserve(phone, 1);
+        assertTrue(inventory.place(reservation));
+        inventory.release(reservation);
+        assertEquals(1, inventory.getAvailable(phone));
+        assertNotNull(inventory.reserve(phone, 1));
+    }
+}
@@ -0,0 +1,132 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class OrderJournalTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    private final Catalog catalog = new Catalog(new CategoryIndex(Collections.<CategoryIndex.Rule>emptyList()), new FeatureSpecs());
+    
+    private Product product(String name, double price) {
+        catalog.add(new Product(name, price, "", null, 4, 1));
+        return catalog.get(catalog.size() - 1);
+    }
+    
+    private static Order place(OrderJournal journal, Product product, int quantity)
+            throws InterruptedException, ExecutionException {
+        Cart cart = new Cart();
+        cart.setQuantity(product, quantity);
+        return journal.append(cart).get();
+    }
+    
+    private String journalPath() {
+        return new File(folder.getRoot(), "orders.journal").getPath();
+    }
+    
+    @Test
+    public void replaysOrdersWhenReopened() throws Exception {
+        Product phone = product("Phone", 12999.99);
+        Product cable = product("Cable", 99);
+        
+        Order first;
+        Order second;
+        try (OrderJournal journal = OrderJournal.open(journalPath())) {
+            first = place(journal, phone, 1);
+            second = place(journal, cable, 3);
+            assertEquals(2, journal.size());
+        }
+        
+        try (OrderJournal journal = OrderJournal.open(journalPath())) {
+            assertEquals(2, journal.size());
+            assertEquals(1, journal.find(second.getId()));
+            assertEquals(0, journal.positionAt(first.getTime()));
+            
+            List<Order> orders = journal.read(0, 2);
+            assertEquals(first.getId(), orders.get(0).getId());
+            assertEquals(1299999, orders.get(0).getTotal());
+            assertEquals("Phone", orders.get(0).getLines().get(0).getName());
+            
+            Order.Line line = orders.get(1).getLines().get(0);
+            assertEquals(cable.getId(), line.getProductId());
+            assertEquals(3, line.getQuantity());
+            assertEquals(9900, line.getUnitPrice());
+            assertEquals(29700, orders.get(1).getTotal());
+            
+            // IDs carry on after the replayed orders
+            assertTrue(place(journal, phone, 2).getId() > second.getId());
+        }
+    }
+    
+    @Test
+    public void dropsRecordCutShortByACrash() throws Exception {
+        Product phone = product("Phone", 100);
+        long goodEnd;
+        Order kept;
+        try (OrderJournal journal = OrderJournal.open(journalPath())) {
+            kept = place(journal, phone, 1);
+            goodEnd = new File(journalPath()).length();
+            place(journal, phone, 2);
+        }
+        
+        try (RandomAccessFile file = new RandomAccessFile(journalPath(), "rw")) {
+            file.setLength(file.length() - 5);
+        }
+        
+        try (OrderJournal journal = OrderJournal.open(journalPath())) {
+            assertEquals(1, journal.size());
+            assertEquals(goodEnd, new File(journalPath()).length());
+            assertEquals(kept.getId(), journal.read(0, 1).get(0).getId());
+            
+            // New orders follow the last good record
+            place(journal, phone, 3);
+        }
+        
+        try (OrderJournal journal = OrderJournal.open(journalPath())) {
+            assertEquals(2, journal.size());
+            assertEquals(3, journal.read(1, 1).get(0).getLines().get(0).getQuantity());
+        }
+    }
+    
+    @Test
+    public void dropsRecordThatFailsItsChecksum() throws Exception {
+        Product phone = product("Phone", 100);
+        long goodEnd;
+        try (OrderJournal journal = OrderJournal.open(journalPath())) {
+            place(journal, phone, 1);
+            goodEnd = new File(journalPath()).length();
+            place(journal, phone, 2);
+        }
+        
+        try (RandomAccessFile file = new RandomAccessFile(journalPath(), "rw")) {
+            file.seek(file.length() - 1);
+            int last = file.read();
+            file.seek(file.length() - 1);
+            file.write(last ^ 0xFF);
+        }
+        
+        try (OrderJournal journal = OrderJournal.open(journalPath())) {
+            assertEquals(1, journal.size());
+            assertEquals(goodEnd, new File(journalPath()).length());
+        }
+    }
+    
+    @Test(expected = IOException.class)
+    public void refusesFileThatIsNotAJournal() throws IOException {
+        File file = folder.newFile("orders.journal");
+        Files.write(file.toPath(), "not a journal".getBytes(StandardCharsets.UTF_8));
+        OrderJournal.open(file.getPath()).close();
+    }
+}
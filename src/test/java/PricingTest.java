@@ -0,0 +1,158 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.text.SimpleDateFormat;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+public class PricingTest {
+    // A clock that only moves when the test sets it
+    private static final class ManualClock extends Clock {
+        long millis;
+        
+        ManualClock(long millis) {
+            this.millis = millis;
+        }
+        
+        @Override
+        public long millis() {
+            return millis;
+        }
+        
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+        
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+        
+        @Override
+        public Clock withZone(ZoneId zone) {
+            throw new UnsupportedOperationException();
+        }
+    }
+    
+    private final ManualClock clock = new ManualClock(System.currentTimeMillis());
+    private final CategoryIndex categories = new CategoryIndex(Arrays.asList(
+        new CategoryIndex.Rule("Phones", new String[] { "phone" }, new String[0])));
+    private final Catalog catalog = new Catalog(categories, new FeatureSpecs());
+    private final Pricing pricing = new Pricing(categories, clock);
+    
+    private Product product(String name, double price) {
+        catalog.add(new Product(name, price, "", null, 4, 1));
+        return catalog.get(catalog.size() - 1);
+    }
+    
+    private static Pricing.Promotion percentOff(String target, int percent, long from, long until) {
+        return new Pricing.Promotion(target, Pricing.Kind.PERCENT, percent, 0, 0, from, until);
+    }
+    
+    @Test
+    public void parsesEveryDiscountKind() throws Exception {
+        assertEquals("20% off", Pricing.parse("category Phones | 20% off").toString());
+        assertEquals("₹5000.00 off", Pricing.parse("product TV | Rs. 5000 off | |").toString());
+        assertEquals("Buy 2, get 1 free", Pricing.parse("all | buy 2, get 1 free").toString());
+        
+        // Dates are local time; the clock is set around them, so the test does not age
+        long from = new SimpleDateFormat("yyyy-MM-dd").parse("2026-11-01").getTime();
+        long until = new SimpleDateFormat("yyyy-MM-dd HH:mm").parse("2026-11-15 18:00").getTime();
+        clock.millis = from - 1;
+        pricing.setPromotions(Collections.singletonList(Pricing.parse("all | 10% off | 2026-11-01 | 2026-11-15 18:00")));
+        assertEquals(from, pricing.getNextChange());
+        
+        clock.millis = from;
+        assertEquals(until, pricing.getNextChange());
+        
+        clock.millis = until;
+        assertEquals(Long.MAX_VALUE, pricing.getNextChange());
+    }
+    
+    @Test
+    public void rejectsUnreadableLines() {
+        for (String line : new String[] { "all", "shelf Phones | 10% off", "all | 0% off", "all | half off",
+                                          "all | buy 0 get 1 free", "all | 10% off | 2026-13-01", "a | b | c | d | e" }) {
+            try {
+                Pricing.parse(line);
+                throw new AssertionError("Parsed " + line);
+            } catch (IllegalArgumentException e) {
+                // Expected
+            }
+        }
+    }
+    
+    @Test
+    public void lowestDiscountedPriceWinsAndBundleAppliesOnTop() {
+        Product phone = product("Phone X", 1000);
+        pricing.setPromotions(Arrays.asList(
+            percentOff("category Phones", 10, Long.MIN_VALUE, Long.MAX_VALUE),
+            new Pricing.Promotion("product phone x", Pricing.Kind.AMOUNT, 20000, 0, 0, Long.MIN_VALUE, Long.MAX_VALUE),
+            new Pricing.Promotion("all", Pricing.Kind.BUNDLE, 0, 2, 1, Long.MIN_VALUE, Long.MAX_VALUE)));
+        
+        Pricing.Offer offer = pricing.getOffer(phone);
+        assertEquals(100000, offer.getListPrice());
+        assertEquals(80000, offer.getPrice());
+        assertTrue(offer.isDiscounted());
+        // Every third unit is free
+        assertEquals(4 * 80000, offer.getTotal(6));
+        assertEquals(4 * 80000, offer.getTotal(5));
+    }
+    
+    @Test
+    public void promotionsOnlyRunInsideTheirWindow() {
+        Product phone = product("Phone X", 1000);
+        Product cable = product("Cable", 100);
+        long now = clock.millis;
+        long start = now + 300;
+        pricing.setPromotions(Arrays.asList(
+            percentOff("all", 50, Long.MIN_VALUE, now - 1000),
+            percentOff("category Phones", 20, start, Long.MAX_VALUE)));
+        
+        assertFalse(pricing.getOffer(phone).isDiscounted());
+        assertFalse(pricing.getOffer(cable).isDiscounted());
+        assertEquals(start, pricing.getNextChange());
+        int version = pricing.getVersion();
+        
+        clock.millis = start - 1;
+        assertFalse(pricing.getOffer(phone).isDiscounted());
+        assertEquals(version, pricing.getVersion());
+        
+        clock.millis = start;
+        assertEquals(80000, pricing.getOffer(phone).getPrice());
+        assertFalse(pricing.getOffer(cable).isDiscounted());
+        assertTrue(pricing.getVersion() != version);
+        assertEquals(Long.MAX_VALUE, pricing.getNextChange());
+    }
+    
+    @Test
+    public void offersAreCachedUntilThePromotionsChange() {
+        Product phone = product("Phone X", 1000);
+        Pricing.Offer offer = pricing.getOffer(phone);
+        assertSame(offer, pricing.getOffer(phone));
+        
+        pricing.setPromotions(Collections.singletonList(percentOff("all", 10, Long.MIN_VALUE, Long.MAX_VALUE)));
+        assertNotSame(offer, pricing.getOffer(phone));
+        assertEquals(90000, pricing.getOffer(phone).getPrice());
+    }
+    
+    @Test
+    public void listPricesAreNotSharedBetweenCatalogs() {
+        Product phone = product("Phone X", 1000);
+        Catalog other = new Catalog(new CategoryIndex(Collections.<CategoryIndex.Rule>emptyList()), new FeatureSpecs());
+        other.add(new Product("Cable", 100, ""));
+        
+        assertEquals(100000, Pricing.LIST_PRICES.getOffer(phone).getPrice());
+        assertEquals(10000, Pricing.LIST_PRICES.getOffer(other.get(0)).getPrice());
+    }
+}
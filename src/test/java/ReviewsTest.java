@@ -0,0 +1,123 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+import java.util.Collections;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ReviewsTest {
+    private static final long WAIT_MS = 5000;
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    private final Catalog catalog = new Catalog(new CategoryIndex(Collections.<CategoryIndex.Rule>emptyList()), new FeatureSpecs());
+    
+    private Product product(String name, double rating, int reviewCount) {
+        catalog.add(new Product(name, 100, "", null, rating, reviewCount));
+        return catalog.get(catalog.size() - 1);
+    }
+    
+    private static void append(File file, String text) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+    
+    // Waits for the reader thread to publish the given number of reviews
+    private static void awaitIngested(Reviews reviews, long count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + WAIT_MS;
+        while (reviews.getIngestedCount() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, reviews.getIngestedCount());
+    }
+    
+    @Test
+    public void countsValidLinesAndRejectsTheRest() throws Exception {
+        Product phone = product("Phone", 4, 1);
+        Product cable = product("Cable", 0, 0);
+        File log = folder.newFile("reviews.log");
+        append(log, "0,5\n"
+            + "1,4\r\n"
+            + "# a comment\n"
+            + "\n"
+            + "1,3,great cable\n"
+            + "2,6\n"
+            + "x,3\n"
+            + "1,35\n"
+            + "99999999999,5\n"
+            + "0,2");
+        
+        try (Reviews reviews = new Reviews(log.getPath(), null)) {
+            reviews.start();
+            awaitIngested(reviews, 3);
+            assertEquals(4, reviews.getRejectedCount());
+            assertArrayEquals(new int[] { 0, 0, 1, 1, 0 }, reviews.getHistogram(cable));
+            assertEquals(3.5, reviews.getRating(cable), 1e-9);
+            
+            // The partial last line is only counted once it is finished
+            assertArrayEquals(new int[] { 0, 0, 0, 0, 1 }, reviews.getHistogram(phone));
+            append(log, "\n");
+            awaitIngested(reviews, 4);
+            assertArrayEquals(new int[] { 0, 1, 0, 0, 1 }, reviews.getHistogram(phone));
+            assertEquals(3, reviews.getReviewCount(phone));
+            assertEquals((4 + 5 + 2) / 3.0, reviews.getRating(phone), 1e-9);
+        }
+    }
+    
+    @Test
+    public void submittedReviewsAreCountedWithoutAFile() throws Exception {
+        Product phone = product("Phone", 0, 0);
+        try (Reviews reviews = new Reviews(new File(folder.getRoot(), "missing.log").getPath(), null)) {
+            reviews.start();
+            assertFalse(reviews.submit(phone.getId(), 0));
+            assertFalse(reviews.submit(-1, 5));
+            assertTrue(reviews.submit(phone.getId(), 4));
+            
+            awaitIngested(reviews, 1);
+            assertEquals(1, reviews.getReviewCount(phone));
+            assertEquals(4.0, reviews.getRating(phone), 1e-9);
+        }
+    }
+    
+    @Test
+    public void facetsRateAndSortByNewReviews() throws Exception {
+        Product mouse = product("Mouse", 3, 1);
+        Product keyboard = product("Keyboard", 4, 1);
+        FacetEngine facets = catalog.getFacets();
+        FacetEngine.Filter filter = new FacetEngine.Filter();
+        filter.sort = FacetEngine.Sort.RATING;
+        
+        try (Reviews reviews = new Reviews(new File(folder.getRoot(), "missing.log").getPath(), null)) {
+            reviews.start();
+            facets.setReviews(reviews);
+            FacetEngine.Cursor before = facets.query(null, filter);
+            
+            for (int i = 0; i < 3; i++) {
+                assertTrue(reviews.submit(mouse.getId(), 5));
+            }
+            awaitIngested(reviews, 3);
+            BitSet changed = new BitSet();
+            changed.set(mouse.getId());
+            facets.ratingsChanged(changed);
+            
+            FacetEngine.Cursor after = facets.query(null, filter);
+            assertArrayEquals(new int[] { mouse.getId(), keyboard.getId() }, after.next(10));
+            assertEquals(2, after.count().getRatingCounts()[4]);
+            
+            // A cursor keeps the ratings it was created with
+            assertArrayEquals(new int[] { keyboard.getId(), mouse.getId() }, before.next(10));
+            assertEquals(1, before.count().getRatingCounts()[4]);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Collections;
+import java.util.concurrent.CancellationException;
+
+import org.junit.Test;
+
+public class SearchIndexTest {
+    private final Catalog catalog = new Catalog(new CategoryIndex(Collections.<CategoryIndex.Rule>emptyList()), new FeatureSpecs());
+    
+    private SearchIndex index(String... names) {
+        for (String name : names) {
+            catalog.add(new Product(name, 100, "", null, 4, 10));
+        }
+        return catalog.getSearchIndex();
+    }
+    
+    @Test
+    public void everyQueryTokenMustMatch() {
+        SearchIndex index = index("Wireless Headphones", "Wireless Speaker", "Wired Headphones");
+        
+        SearchIndex.Result result = index.search("wireless headphones", 10);
+        assertEquals(1, result.getMatchCount());
+        assertArrayEquals(new int[] { 0 }, result.getProductIds());
+    }
+    
+    @Test
+    public void queriesDoNotSeeScoresOfEarlierOnes() {
+        SearchIndex index = index("Wireless Headphones", "Wireless Speaker", "Wired Headphones", "Speaker Stand");
+        int[] wireless = index.search("wireless", 10).getProductIds();
+        int[] speaker = index.search("speaker", 10).getProductIds();
+        
+        // Products that matched only the first token are left out part way through
+        assertEquals(1, index.search("wireless speaker", 10).getMatchCount());
+        assertEquals(0, index.search("wireless stand", 10).getMatchCount());
+        
+        assertArrayEquals(wireless, index.search("wireless", 10).getProductIds());
+        assertArrayEquals(speaker, index.search("speaker", 10).getProductIds());
+    }
+    
+    @Test
+    public void cancelledSearchLeavesTheIndexUsable() {
+        SearchIndex index = index("Wireless Headphones", "Wireless Speaker");
+        int[] expected = index.search("wireless", 10).getProductIds();
+        
+        Thread.currentThread().interrupt();
+        try {
+            index.search("wireless", 10);
+        } catch (CancellationException e) {
+            // Expected
+        } finally {
+            Thread.interrupted();
+        }
+        
+        assertArrayEquals(expected, index.search("wireless", 10).getProductIds());
+    }
+    
+    @Test
+    public void tokensMatchByPrefix() {
+        SearchIndex index = index("Mechanical Keyboard", "Key Finder", "Wireless Mouse");
+        
+        assertArrayEquals(new int[] { 0 }, index.search("mech", 10).getProductIds());
+        assertEquals(2, index.search("key", 10).getMatchCount());
+        assertArrayEquals(new int[] { 2 }, index.search("mo", 10).getProductIds());
+        
+        // An exact match ranks above a product the token is only a prefix of
+        assertArrayEquals(new int[] { 1, 0 }, index.search("key", 10).getProductIds());
+    }
+    
+    @Test
+    public void toleratesOneTypoInLongerTokens() {
+        SearchIndex index = index("Mechanical Keyboard", "Key Finder", "Wireless Mouse");
+        
+        assertArrayEquals(new int[] { 0 }, index.search("keybaord", 10).getProductIds());
+        assertArrayEquals(new int[] { 0 }, index.search("keybord", 10).getProductIds());
+        assertArrayEquals(new int[] { 2 }, index.search("wireles mouse", 10).getProductIds());
+        
+        // Short tokens only match exactly or by prefix
+        assertEquals(0, index.search("kex", 10).getMatchCount());
+    }
+    
+    @Test
+    public void refiningAPreviousResultMatchesAFreshSearch() {
+        SearchIndex index = index("Mechanical Keyboard", "Key Finder", "Keyboard Cover", "Wireless Mouse", "Monitor");
+        
+        SearchIndex.Result key = index.search("key", 10, null);
+        SearchIndex.Result keyb = index.search("keyb", 10, key);
+        assertArrayEquals(index.search("keyb", 10).getProductIds(), keyb.getProductIds());
+        assertEquals(index.search("keyb", 10).getMatchCount(), keyb.getMatchCount());
+        
+        // Once the token is long enough for typos, typing on only narrows the matches
+        SearchIndex.Result keybo = index.search("keybo", 10, keyb);
+        assertArrayEquals(index.search("keybo", 10).getProductIds(), keybo.getProductIds());
+        SearchIndex.Result cover = index.search("keybo cover", 10, keybo);
+        assertArrayEquals(new int[] { 2 }, cover.getProductIds());
+        assertArrayEquals(index.search("keybo cover", 10).getProductIds(), cover.getProductIds());
+    }
+    
+    @Test
+    public void consecutiveSearchesRankLikeTheFirstSearchOfAnIndex() {
+        String[] names = { "Wireless Headphones", "Wireless Speaker", "Wired Headphones", "Speaker Stand",
+                           "Mechanical Keyboard", "Keyboard Cover", "Wireless Keyboard" };
+        String[] queries = { "wireless", "keyboard", "speaker", "wireless keyboard", "headphnes", "stand", "w" };
+        SearchIndex index = index(names);
+        
+        // Every query runs on a reused index, after all the others, and on a new one
+        for (String first : queries) {
+            index.search(first, 2);
+        }
+        for (String query : queries) {
+            SearchIndex fresh = new SearchIndexTest().index(names);
+            SearchIndex.Result expected = fresh.search(query, 3);
+            SearchIndex.Result actual = index.search(query, 3);
+            assertEquals(query, expected.getMatchCount(), actual.getMatchCount());
+            assertArrayEquals(query, expected.getProductIds(), actual.getProductIds());
+        }
+    }
+}